@@ -26,10 +26,16 @@ package com.apporiented.hermesftp.cmd;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.MessageFormat;
+import java.net.Socket;
+import java.util.Map;
 
 import com.apporiented.hermesftp.common.FtpConstants;
 import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.server.BandwidthShaper;
+import com.apporiented.hermesftp.server.ListingCache;
+import com.apporiented.hermesftp.streams.BufferPool;
+import com.apporiented.hermesftp.utils.HashedWheelTimer;
+import com.apporiented.hermesftp.utils.TransferRateLimiter;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.logging.Log;
@@ -43,7 +49,9 @@ import org.apache.commons.logging.LogFactory;
  */
 public abstract class AbstractFtpCmd implements FtpCmd, FtpConstants {
 
-    private static Log        log = LogFactory.getLog(AbstractFtpCmd.class);
+    private static final int  DEFAULT_DATA_IDLE_SECONDS = 30;
+
+    private static Log        log                       = LogFactory.getLog(AbstractFtpCmd.class);
 
     private String            token;
 
@@ -53,6 +61,8 @@ public abstract class AbstractFtpCmd implements FtpCmd, FtpConstants {
 
     private boolean           responded;
 
+    private boolean           keepDataConnection;
+
     /**
      * Returns a message resource string.
      * 
@@ -61,11 +71,7 @@ public abstract class AbstractFtpCmd implements FtpCmd, FtpConstants {
      * @return The message.
      */
     protected String msg(String msgKey, Object[] args) {
-        String msg = msg(msgKey);
-        if (args != null) {
-            msg = MessageFormat.format(msg, args);
-        }
-        return msg;
+        return getCtx().getRes(msgKey, args);
     }
 
     /**
@@ -171,6 +177,116 @@ public abstract class AbstractFtpCmd implements FtpCmd, FtpConstants {
         return fileOffsetObj == null ? 0 : fileOffsetObj;
     }
 
+    /**
+     * Chooses the size of the buffer used for a data transfer, based on the file size and the
+     * transfer rate previously observed in the session.
+     * 
+     * @param fileSize The number of bytes to transfer, or a negative value if unknown.
+     * @param rateStatKey The key of the session statistic holding the average transfer rate.
+     * @return The buffer size.
+     */
+    protected int getTransferBufferSize(long fileSize, String rateStatKey) {
+        Map<String, Long> stats = getCtx().getSessionStatistics();
+        Long rate = stats == null ? null : stats.get(rateStatKey);
+        return BufferPool.suggestSize(fileSize, rate == null ? 0 : rate, getCtx().getOptions().getBufferSize());
+    }
+
+    /**
+     * Prepares the rate limiter of a data transfer. If the server provides a bandwidth shaper, the
+     * transfer is paced by the session's token bucket, which it shares with the other transfers of
+     * the user and the user's group. Otherwise the transfer is limited on its own.
+     * 
+     * @param limiter The rate limiter of the transfer.
+     * @param upload True for uploads, false for downloads.
+     */
+    protected void initTransferRateLimiter(TransferRateLimiter limiter, boolean upload) {
+        BandwidthShaper shaper = (BandwidthShaper) getCtx().getAttribute(ATTR_BANDWIDTH_SHAPER);
+        if (shaper != null) {
+            limiter.init(shaper.getSessionBucket(getCtx(), upload));
+        } else {
+            limiter.init(upload ? getCtx().getMaxUploadRate() : getCtx().getMaxDownloadRate());
+        }
+    }
+
+    /**
+     * Provides the data connection for a transfer. A connection kept open by a previous transfer
+     * in block mode is reused; its idle timeout is cancelled.
+     * 
+     * @return The data socket.
+     * @throws IOException Thrown if the data connection cannot be established.
+     */
+    protected Socket openDataConnection() throws IOException {
+        SocketProvider provider = getCtx().getDataSocketProvider();
+        synchronized (provider) {
+            HashedWheelTimer.Timeout timeout = (HashedWheelTimer.Timeout) getCtx().getAttribute(
+                ATTR_DATA_IDLE_TIMEOUT);
+            if (timeout != null) {
+                timeout.cancel();
+                getCtx().setAttribute(ATTR_DATA_IDLE_TIMEOUT, null);
+            }
+        }
+        return provider.provideSocket();
+    }
+
+    /**
+     * Sends the final reply of a successful transfer. In block mode the end of file is marked in
+     * the data stream, so the data connection is kept open for further transfers and the reply is
+     * 250 instead of 226 (RFC 959).
+     */
+    protected void msgOutTransferComplete() {
+        keepDataConnection = getCtx().getTransmissionMode() == MODE_BLOCK && getDataIdleSeconds() > 0
+            && getCtx().getAttribute(ATTR_TIMER) != null;
+        msgOut(keepDataConnection ? MSG250 : MSG226);
+    }
+
+    /**
+     * Ends a transfer. The data connection is closed, unless it is kept open after a successful
+     * transfer in block mode. A connection kept open is closed when it stays unused for the
+     * configured number of seconds.
+     */
+    protected void closeDataConnection() {
+        if (!keepDataConnection) {
+            getCtx().closeSockets();
+            return;
+        }
+        keepDataConnection = false;
+        SocketProvider provider = getCtx().getDataSocketProvider();
+        HashedWheelTimer timer = (HashedWheelTimer) getCtx().getAttribute(ATTR_TIMER);
+        synchronized (provider) {
+            DataIdleTask task = new DataIdleTask(getCtx(), provider);
+            task.timeout = timer.schedule(task, getDataIdleSeconds() * MILLI);
+            getCtx().setAttribute(ATTR_DATA_IDLE_TIMEOUT, task.timeout);
+        }
+    }
+
+    /**
+     * Returns the facts shown by MLST and MLSD, as selected by OPTS MLST.
+     * 
+     * @return The names of the facts in lower case.
+     */
+    protected String[] getMlstFacts() {
+        String[] facts = (String[]) getCtx().getAttribute(ATTR_MLST_FACTS);
+        return facts == null ? MLST_DEFAULT_FACTS : facts;
+    }
+
+    /**
+     * Drops the cached listings of the directory that contains the passed file. Called by commands
+     * that modify the file before they reply, so that a subsequent listing shows the change.
+     * 
+     * @param file The modified file or directory.
+     */
+    protected void invalidateListings(File file) {
+        ListingCache cache = (ListingCache) getCtx().getAttribute(ATTR_LISTING_CACHE);
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (cache != null && dir != null) {
+            cache.invalidate(dir.toPath().normalize());
+        }
+    }
+
+    private int getDataIdleSeconds() {
+        return getCtx().getOptions().getInt(OPT_DATA_IDLE_SECONDS, DEFAULT_DATA_IDLE_SECONDS);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -244,4 +360,32 @@ public abstract class AbstractFtpCmd implements FtpCmd, FtpConstants {
     public boolean handleAsyncCmd(String req) {
         return false;
     }
+
+    /**
+     * Closes a data connection that has been kept open, unless a transfer has claimed it in the
+     * meantime.
+     */
+    private static class DataIdleTask implements Runnable {
+
+        private FtpSessionContext                 ctx;
+
+        private SocketProvider                    provider;
+
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        public DataIdleTask(FtpSessionContext ctx, SocketProvider provider) {
+            this.ctx = ctx;
+            this.provider = provider;
+        }
+
+        public void run() {
+            synchronized (provider) {
+                if (ctx.getAttribute(ATTR_DATA_IDLE_TIMEOUT) == timeout) {
+                    ctx.setAttribute(ATTR_DATA_IDLE_TIMEOUT, null);
+                    log.debug("Idle data connection closed.");
+                    provider.closeSocket();
+                }
+            }
+        }
+    }
 }
@@ -26,16 +26,20 @@ package com.apporiented.hermesftp.cmd;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
-import com.apporiented.hermesftp.common.FtpSessionContext;
 import com.apporiented.hermesftp.exception.FtpCmdException;
+import com.apporiented.hermesftp.server.ListingCache;
+import com.apporiented.hermesftp.streams.ListingWriter;
+import com.apporiented.hermesftp.utils.GlobFilter;
 import com.apporiented.hermesftp.utils.IOUtils;
 
 /**
- * Abstract precursor for commands that handle LIST or NLST.
+ * Abstract precursor for commands that handle LIST, NLST or MLSD.
  * 
  * @author Lars Behnke
  */
@@ -48,47 +52,47 @@ public abstract class AbstractFtpCmdList extends AbstractFtpCmd {
      */
     public void execute() throws FtpCmdException {
         msgOut(MSG150);
-        String charset = getCtx().getCharset();
-        PrintWriter dataOut = null;
+        String charset = getListingCharset();
+        ListingWriter dataOut = null;
         Socket dataSocket;
         try {
-            dataSocket = getCtx().getDataSocketProvider().provideSocket();
-            dataOut = new PrintWriter(new OutputStreamWriter(dataSocket.getOutputStream(), charset));
+            dataSocket = openDataConnection();
+            dataOut = new ListingWriter(dataSocket.getOutputStream(), charset, getCtx().getOptions()
+                .getBufferSize());
 
-            String args = getArguments();
-            String[] argParts = args.split(" ");
+            File dir = new File(getAbsPath(stripOptions(getArguments())));
 
-            /* Ignore server specific extension to RFC 959 such as LIST -la */
-            File dir;
-            if (argParts[0].trim().startsWith("-")) {
-                dir = new File(getAbsPath(""));
-            } else {
-                dir = new File(getPathArg());
+            /* A last path segment with wildcards filters the entries of its parent directory */
+            GlobFilter filter = null;
+            if (!dir.exists() && GlobFilter.isPattern(dir.getName())) {
+                try {
+                    filter = new GlobFilter(dir.getName());
+                } catch (IllegalArgumentException e) {
+                    msgOut(MSG501);
+                    return;
+                }
+                dir = dir.getParentFile();
             }
 
-            // TODO Allow filtering with wildcards *, ?
-
-            if (!dir.exists()) {
+            if (dir == null || !dir.exists() || (filter != null && !dir.isDirectory())) {
                 msgOut(MSG550);
                 return;
             }
+            if (!dir.isDirectory() && isDirectoryRequired()) {
+                msgOut(MSG501_PATH);
+                return;
+            }
 
-            if (dir.isDirectory()) {
-                File[] files = dir.listFiles();
-                dataOut.println("total " + (files != null ? files.length : 0));
-                if (files != null) {
-                    for (File file : files) {
-                        doPrintFileInfo(dataOut, file, getCtx());
-                    }
-                }
-
+            Path path = dir.toPath();
+            ListingCache cache = (ListingCache) getCtx().getAttribute(ATTR_LISTING_CACHE);
+            if (dir.isDirectory() && cache != null && cache.isEnabled()) {
+                printCachedDirectory(dataOut, path.normalize(), filter, cache);
+            } else if (dir.isDirectory()) {
+                printDirectory(dataOut, path, filter);
             } else {
-                doPrintFileInfo(dataOut, dir, getCtx());
+                doPrintFileInfo(dataOut, path, readAttributes(path));
             }
-
-            // lab
             dataOut.flush();
-            //dataSocket.shutdownOutput();
 
             msgOut(MSG226);
         } catch (IOException e) {
@@ -101,14 +105,148 @@ public abstract class AbstractFtpCmdList extends AbstractFtpCmd {
         }
     }
 
+    /**
+     * Removes server specific extensions to RFC 959 such as <code>LIST -la</code> from the
+     * arguments.
+     * 
+     * @param args The arguments.
+     * @return The path argument, empty if none was passed.
+     */
+    private String stripOptions(String args) {
+        String result = args.trim();
+        while (result.startsWith("-")) {
+            int idx = result.indexOf(' ');
+            result = idx < 0 ? "" : result.substring(idx + 1).trim();
+        }
+        return result;
+    }
+
+    /**
+     * Prints the entries of a directory while it is read, so that directories of any size are
+     * listed in constant memory. The attributes of an entry are fetched in a single call, if
+     * required at all. Entries rejected by the filter are neither read nor printed. Entries
+     * deleted while the directory is read are skipped.
+     * 
+     * @param out The listing writer.
+     * @param dir The directory.
+     * @param filter The filter on the entry names, null if all entries are listed.
+     * @throws IOException Error on reading the directory or on data transfer.
+     */
+    private void printDirectory(ListingWriter out, Path dir, GlobFilter filter) throws IOException {
+        DirectoryStream<Path> entries = filter == null ? Files.newDirectoryStream(dir) : Files
+            .newDirectoryStream(dir, filter);
+        try {
+            for (Path entry : entries) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = readAttributes(entry);
+                } catch (IOException e) {
+                    continue;
+                }
+                doPrintFileInfo(out, entry, attrs);
+            }
+        } finally {
+            entries.close();
+        }
+    }
+
+    /**
+     * Prints a directory from the listing cache. On a miss the directory is read and the output is
+     * cached, unless it is too large. Listings are cached per format, character set, user and
+     * version of the user configuration, since the permissions of the user are part of the
+     * output, and per listing variant and filter.
+     * 
+     * @param out The listing writer.
+     * @param dir The directory.
+     * @param filter The filter on the entry names, null if all entries are listed.
+     * @param cache The listing cache.
+     * @throws IOException Error on reading the directory or on data transfer.
+     */
+    private void printCachedDirectory(ListingWriter out, Path dir, GlobFilter filter, ListingCache cache)
+            throws IOException {
+        String variant = getClass().getName() + ":" + getListingCharset() + ":" + getCtx().getUser() + ":"
+            + getCtx().getUserManager().getConfigVersion() + ":" + getListingVariant()
+            + (filter == null ? "" : ":" + filter.getPattern());
+        byte[] listing = cache.get(dir, variant);
+        if (listing != null) {
+            out.write(listing);
+            return;
+        }
+        ListingCache.Snapshot snapshot = cache.prepare(dir);
+        try {
+            out.flush();
+            out.startCapture(cache.getMaxListingSize());
+            printDirectory(out, dir, filter);
+            out.flush();
+            listing = out.stopCapture();
+            if (listing != null) {
+                cache.put(snapshot, variant, listing);
+            }
+        } finally {
+            cache.release(snapshot);
+        }
+    }
+
+    private BasicFileAttributes readAttributes(Path path) throws IOException {
+        return isAttributesRequired() ? Files.readAttributes(path, BasicFileAttributes.class) : null;
+    }
+
+    /**
+     * Checks if the listing shows file attributes. If not, the attributes are not read.
+     * 
+     * @return True, if the attributes are passed to {@link #doPrintFileInfo}.
+     */
+    protected boolean isAttributesRequired() {
+        return true;
+    }
+
+    /**
+     * Checks if the command lists directories only. If so, a path that denotes a file is rejected.
+     * 
+     * @return True, if the path argument must be a directory.
+     */
+    protected boolean isDirectoryRequired() {
+        return false;
+    }
+
+    /**
+     * Returns the character set the listing is encoded in.
+     * 
+     * @return The character set of the current data type by default.
+     */
+    protected String getListingCharset() {
+        return getCtx().getCharset();
+    }
+
+    /**
+     * Returns a key for session settings that change the output, such as the facts selected for
+     * MLSD. The key is part of the cache key of listings.
+     * 
+     * @return The key, empty by default.
+     */
+    protected String getListingVariant() {
+        return "";
+    }
+
     /**
      * Prints information about a single file or directory.
      * 
-     * @param out The output stream.
-     * @param file The file.
-     * @param ctx The FTP context.
+     * @param out The listing writer.
+     * @param path The file.
+     * @param attrs The attributes of the file, null if not required.
      * @throws IOException Error on data transfer.
      */
-    protected abstract void doPrintFileInfo(PrintWriter out, File file, FtpSessionContext ctx)
+    protected abstract void doPrintFileInfo(ListingWriter out, Path path, BasicFileAttributes attrs)
             throws IOException;
+
+    /**
+     * Returns the name of the passed file as printed in the listing.
+     * 
+     * @param path The file.
+     * @return The name.
+     */
+    protected String getFileName(Path path) {
+        Path name = path.getFileName();
+        return name == null ? path.toString() : name.toString();
+    }
 }
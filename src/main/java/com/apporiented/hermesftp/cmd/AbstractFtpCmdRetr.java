@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.zip.DeflaterOutputStream;
 
 import com.apporiented.hermesftp.common.FtpConstants;
@@ -36,6 +38,7 @@ import com.apporiented.hermesftp.exception.FtpCmdException;
 import com.apporiented.hermesftp.exception.FtpPermissionException;
 import com.apporiented.hermesftp.exception.FtpQuotaException;
 import com.apporiented.hermesftp.streams.BlockModeOutputStream;
+import com.apporiented.hermesftp.streams.DataChannelOutputStream;
 import com.apporiented.hermesftp.streams.RecordOutputStream;
 import com.apporiented.hermesftp.streams.RecordWriteSupport;
 import com.apporiented.hermesftp.streams.TextOutputStream;
@@ -51,15 +54,19 @@ import org.apache.commons.logging.LogFactory;
  */
 public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpConstants {
 
-    private static Log          log                 = LogFactory.getLog(AbstractFtpCmdRetr.class);
+    private static Log            log                 = LogFactory.getLog(AbstractFtpCmdRetr.class);
 
-    private TransferRateLimiter transferRateLimiter = new TransferRateLimiter();
+    private TransferRateLimiter   transferRateLimiter = new TransferRateLimiter();
 
-    private long                fileSize;
+    private long                  fileSize;
 
-    private long                completed;
+    private long                  completed;
 
-    private boolean             abortRequested;
+    private volatile boolean      abortRequested;
+
+    private volatile boolean      flushRequested;
+
+    private BlockModeOutputStream blockOut;
 
     /**
      * Checks availability and access rights for the current folder and passed file. The methods
@@ -99,6 +106,23 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
     protected abstract void doRetrieveFileData(OutputStream out, File file, long fileOffset)
             throws IOException;
 
+    /**
+     * Retrieves file based data without any transformation (binary type, stream mode, no data
+     * protection). The method acts as a primitive operation that is called by the template method
+     * <code>execute()</code>. Implementations may transfer the file directly to the channel,
+     * avoiding any copies in user space. The default implementation delegates to the stream
+     * based method.
+     * 
+     * @param out The data channel.
+     * @param file The source file.
+     * @param fileOffset The file offset.
+     * @throws IOException Thrown if IO fails or if a resource limit has been reached.
+     */
+    protected void doRetrieveFileData(WritableByteChannel out, File file, long fileOffset)
+            throws IOException {
+        doRetrieveFileData(Channels.newOutputStream(out), file, fileOffset);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -110,6 +134,7 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
             String stat = "STAT: " + getCompleted() + " from " + getFileSize() + " completed";
             log.info(stat);
             // TODO Return statistics response.
+            flushRequested = true;
             result = true;
         } else if (req.toUpperCase().startsWith("ABOR")) {
             abortRequested = true;
@@ -132,7 +157,7 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
         int type = getCtx().getDataType();
         String charset = type == DT_ASCII || type == DT_EBCDIC ? getCtx().getCharset() : null;
         long fileOffset = getAndResetFileOffset();
-        getTransferRateLimiter().init(getCtx().getMaxDownloadRate());
+        initTransferRateLimiter(getTransferRateLimiter(), false);
         try {
 
             /* Check availability and access rights */
@@ -141,8 +166,13 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
             msgOut(MSG150);
 
             /* Wrap outbound data stream and call handler method */
-            Socket dataSocket = getCtx().getDataSocketProvider().provideSocket();
-            OutputStream dataOut = dataSocket.getOutputStream();
+            Socket dataSocket = openDataConnection();
+            if (struct == STRUCT_FILE && mode == MODE_STREAM && charset == null
+                && dataSocket.getChannel() != null) {
+                doRetrieveFileData(dataSocket.getChannel(), file, fileOffset);
+                return;
+            }
+            OutputStream dataOut = new DataChannelOutputStream(dataSocket, mode != MODE_BLOCK);
             if (struct == STRUCT_RECORD) {
                 RecordWriteSupport recordOut = createRecOutputStream(dataOut, mode, charset);
                 doRetrieveRecordData(recordOut, file, fileOffset);
@@ -174,15 +204,17 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
             msgOut(MSG550);
             log.error(e.toString());
         } finally {
-            getCtx().closeSockets();
+            closeDataConnection();
         }
     }
 
     private OutputStream createOutputStream(OutputStream dataOut, int mode, String charset)
             throws UnsupportedEncodingException {
         OutputStream result = null;
+        blockOut = null;
         if (mode == MODE_BLOCK) {
-            result = new BlockModeOutputStream(dataOut);
+            blockOut = new BlockModeOutputStream(dataOut);
+            result = blockOut;
         } else if (mode == MODE_STREAM) {
             result = dataOut;
         } else if (mode == MODE_ZIP) {
@@ -199,8 +231,10 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
     private RecordWriteSupport createRecOutputStream(OutputStream dataOut, int mode, String charset)
             throws UnsupportedEncodingException {
         RecordWriteSupport result = null;
+        blockOut = null;
         if (mode == MODE_BLOCK) {
-            result = new BlockModeOutputStream(dataOut);
+            blockOut = new BlockModeOutputStream(dataOut);
+            result = blockOut;
         } else if (mode == MODE_STREAM) {
             result = new RecordOutputStream(dataOut);
         } else if (mode == MODE_ZIP) {
@@ -221,6 +255,33 @@ public abstract class AbstractFtpCmdRetr extends AbstractFtpCmd implements FtpCo
         return abortRequested;
     }
 
+    /**
+     * Completes the data stream before the final reply is sent. In block mode the end of file is
+     * marked and flushed, so that the client has received the whole file when it reads the reply.
+     * Data buffered by the outer streams has to be flushed before.
+     * 
+     * @throws IOException Thrown if writing fails.
+     */
+    protected void finishDataStream() throws IOException {
+        if (blockOut != null) {
+            blockOut.finalizeRecord(true);
+            blockOut.flush();
+        }
+    }
+
+    /**
+     * Data written to the data channel is coalesced and only flushed at the end of the transfer.
+     * A STAT request asks the transfer loop to flush early, so that the reported progress
+     * corresponds to the data actually sent. The request is reset by this call.
+     * 
+     * @return True, if the pending data is to be flushed.
+     */
+    protected boolean isFlushRequested() {
+        boolean result = flushRequested;
+        flushRequested = false;
+        return result;
+    }
+
     /**
      * Getter method for the java bean <code>completed</code>.
      * 
@@ -29,6 +29,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.InflaterInputStream;
@@ -63,6 +65,8 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
 
     private boolean             abortRequested;
 
+    private File                file;
+
     /**
      * Executes the command. This operation acts as a template method calling primitive operations
      * implemented by the sub classes.
@@ -74,13 +78,13 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
     public void execute(boolean unique) throws FtpCmdException {
 
         /* Get relevant information from context */
-        File file = new File(getPathArg());
+        file = new File(getPathArg());
         int mode = getCtx().getTransmissionMode();
         int struct = getCtx().getStorageStructure();
         int type = getCtx().getDataType();
         String charset = type == DT_ASCII || type == DT_EBCDIC ? getCtx().getCharset() : null;
         long fileOffset = getAndResetFileOffset();
-        getTransferRateLimiter().init(getCtx().getMaxUploadRate());
+        initTransferRateLimiter(getTransferRateLimiter(), true);
 
         try {
             /* Check availability and access rights */
@@ -93,11 +97,14 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
             /* Wrap inbound data stream and call handler method */
             msgOut(MSG150);
 
-            Socket dataSocket = getCtx().getDataSocketProvider().provideSocket();
+            Socket dataSocket = openDataConnection();
             InputStream dataIn = dataSocket.getInputStream();
             if (struct == STRUCT_RECORD) {
                 RecordReadSupport recordIn = createRecInputStream(dataIn, mode, charset, restartMarkers);
                 doStoreRecordData(recordIn, file, fileOffset);
+            } else if (struct == STRUCT_FILE && mode == MODE_STREAM && charset == null
+                && dataSocket.getChannel() != null) {
+                doStoreFileData(dataSocket.getChannel(), file, fileOffset);
             } else if (struct == STRUCT_FILE) {
                 InputStream fileIn = createInputStream(dataIn, mode, restartMarkers, charset);
                 doStoreFileData(fileIn, file, fileOffset);
@@ -125,10 +132,21 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
             msgOut(MSG550);
             log.error(e.toString());
         } finally {
-            getCtx().closeSockets();
+            invalidateListings(file);
+            closeDataConnection();
         }
     }
 
+    /**
+     * {@inheritDoc} The cached listings of the target directory are dropped before, since neither
+     * appending nor restarting a transfer necessarily changes the modification time of the
+     * directory.
+     */
+    protected void msgOutTransferComplete() {
+        invalidateListings(file);
+        super.msgOutTransferComplete();
+    }
+
     /**
      * Creates an input stream that supports unstructured file data.
      * 
@@ -153,7 +171,7 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
             log.error("Unsupported file mode: " + mode);
         }
         if (charset != null) {
-            result = new TextInputStream(is, charset);
+            result = new TextInputStream(result, charset);
         }
         return result;
 
@@ -268,6 +286,21 @@ public abstract class AbstractFtpCmdStor extends AbstractFtpCmd {
      */
     protected abstract void doStoreFileData(InputStream is, File file, long offset) throws IOException;
 
+    /**
+     * Stores unstructured data received without any transformation (binary type, stream mode, no
+     * data protection). The method acts as a primitive operation that is called by the template
+     * method <code>execute(boolean)</code>. Implementations may read the channel directly into the
+     * file. The default implementation delegates to the stream based method.
+     * 
+     * @param in The data channel.
+     * @param file Destination file.
+     * @param offset The file offset (-1 on append).
+     * @throws IOException Thrown if IO fails or if at least one resource limit was reached
+     */
+    protected void doStoreFileData(ReadableByteChannel in, File file, long offset) throws IOException {
+        doStoreFileData(Channels.newInputStream(in), file, offset);
+    }
+
     /**
      * Getter method for the java bean <code>completed</code>.
      * 
@@ -28,13 +28,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 import com.apporiented.hermesftp.exception.FtpCmdException;
 import com.apporiented.hermesftp.exception.FtpException;
 import com.apporiented.hermesftp.exception.FtpPermissionException;
 import com.apporiented.hermesftp.exception.FtpUniqueConstraintException;
+import com.apporiented.hermesftp.streams.BufferPool;
 import com.apporiented.hermesftp.streams.RafOutputStream;
 import com.apporiented.hermesftp.streams.RecordReadSupport;
+import com.apporiented.hermesftp.usermanager.QuotaAccumulator;
 import com.apporiented.hermesftp.utils.IOUtils;
 
 import org.apache.commons.logging.Log;
@@ -47,7 +52,9 @@ import org.apache.commons.logging.LogFactory;
  */
 public abstract class AbstractFtpCmdStorFile extends AbstractFtpCmdStor {
 
-    private static Log log = LogFactory.getLog(AbstractFtpCmdStorFile.class);
+    private static final int TRANSFER_WINDOW_SIZE = 1024 * 1024;
+
+    private static Log       log                  = LogFactory.getLog(AbstractFtpCmdStorFile.class);
 
     /**
      * {@inheritDoc}
@@ -90,14 +97,14 @@ public abstract class AbstractFtpCmdStorFile extends AbstractFtpCmdStor {
      */
     protected void doStoreFileData(InputStream is, File file, long offset) throws IOException {
         OutputStream os = new RafOutputStream(file, offset);
-        int bufferSize = getCtx().getOptions().getBufferSize();
-        byte[] buffer = new byte[bufferSize];
+        int bufferSize = getTransferBufferSize(-1, STAT_UPLOAD_RATE);
+        byte[] buffer = BufferPool.getDefault().acquire(bufferSize);
+        QuotaAccumulator quota = new QuotaAccumulator(getCtx(), STAT_BYTES_UPLOADED);
         int count;
         try {
             while ((count = is.read(buffer)) != -1) {
                 os.write(buffer, 0, count);
-                os.flush();
-                getCtx().updateIncrementalStat(STAT_BYTES_UPLOADED, count);
+                quota.add(count);
                 incCompleted(count);
                 if (isAbortRequested()) {
                     log.debug("File transfer aborted");
@@ -110,8 +117,10 @@ public abstract class AbstractFtpCmdStorFile extends AbstractFtpCmdStor {
             os.flush();
             getCtx().updateAverageStat(STAT_UPLOAD_RATE,
                 (int) getTransferRateLimiter().getCurrentTransferRate());
-            msgOut(MSG226);
+            msgOutTransferComplete();
         } finally {
+            quota.close();
+            BufferPool.getDefault().release(buffer);
             IOUtils.closeGracefully(is);
             IOUtils.closeGracefully(os);
         }
@@ -119,16 +128,65 @@ public abstract class AbstractFtpCmdStorFile extends AbstractFtpCmdStor {
 
     }
 
+    /**
+     * Receives the file with <code>FileChannel.transferFrom()</code>, so the data is written to
+     * the file without passing through the Java heap. The data is received in large windows;
+     * abort requests, statistics and rate limiting are handled between the windows.
+     * 
+     * @param in The data channel.
+     * @param file Destination file.
+     * @param offset The file offset (-1 on append).
+     * @throws IOException Thrown if IO fails or if at least one resource limit was reached
+     */
+    protected void doStoreFileData(ReadableByteChannel in, File file, long offset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel fc = raf.getChannel();
+        QuotaAccumulator quota = null;
+        try {
+            long position = offset < 0 ? fc.size() : offset;
+            if (position > fc.size()) {
+                /* transferFrom() does not write beyond the end of file */
+                IOUtils.closeGracefully(raf);
+                super.doStoreFileData(in, file, offset);
+                return;
+            }
+            quota = new QuotaAccumulator(getCtx(), STAT_BYTES_UPLOADED, TRANSFER_WINDOW_SIZE);
+            int windowSize = getTransferRateLimiter().limitChunkSize(TRANSFER_WINDOW_SIZE);
+            long count;
+            while ((count = fc.transferFrom(in, position, windowSize)) > 0) {
+                position += count;
+                quota.add(count);
+                incCompleted(count);
+                if (isAbortRequested()) {
+                    log.debug("File transfer aborted");
+                    msgOut(MSG426);
+                    return;
+                }
+                getTransferRateLimiter().execute(count);
+            }
+            getCtx().updateAverageStat(STAT_UPLOAD_RATE,
+                (int) getTransferRateLimiter().getCurrentTransferRate());
+            msgOutTransferComplete();
+        } finally {
+            if (quota != null) {
+                quota.close();
+            }
+            IOUtils.closeGracefully(in);
+            IOUtils.closeGracefully(raf);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     protected void doStoreRecordData(RecordReadSupport rrs, File file, long offset) throws IOException {
         RafOutputStream os = new RafOutputStream(file, offset);
+        QuotaAccumulator quota = new QuotaAccumulator(getCtx(), STAT_BYTES_UPLOADED);
         byte[] recordBuffer;
         byte[] lastRecordBuffer = null;
         try {
             while ((recordBuffer = rrs.readRecord()) != null) {
-                writeRecord(os, lastRecordBuffer, false);
+                writeRecord(os, quota, lastRecordBuffer, false);
                 lastRecordBuffer = recordBuffer;
                 if (isAbortRequested()) {
                     log.debug("Record transfer aborted");
@@ -137,20 +195,22 @@ public abstract class AbstractFtpCmdStorFile extends AbstractFtpCmdStor {
                 }
                 getTransferRateLimiter().execute(recordBuffer.length);
             }
-            writeRecord(os, lastRecordBuffer, true);
+            writeRecord(os, quota, lastRecordBuffer, true);
             getCtx().updateAverageStat(STAT_UPLOAD_RATE,
                 (int) getTransferRateLimiter().getCurrentTransferRate());
-            msgOut(MSG226);
+            msgOutTransferComplete();
         } finally {
+            quota.close();
             IOUtils.closeGracefully(rrs);
             IOUtils.closeGracefully(os);
         }
     }
 
-    private void writeRecord(RafOutputStream os, byte[] lastRecordBuffer, boolean eof) throws IOException {
+    private void writeRecord(RafOutputStream os, QuotaAccumulator quota, byte[] lastRecordBuffer, boolean eof)
+            throws IOException {
         if (lastRecordBuffer != null) {
             os.writeRecord(lastRecordBuffer, eof);
-            getCtx().updateIncrementalStat(STAT_BYTES_UPLOADED, lastRecordBuffer.length);
+            quota.add(lastRecordBuffer.length);
             incCompleted(lastRecordBuffer.length);
         }
     }
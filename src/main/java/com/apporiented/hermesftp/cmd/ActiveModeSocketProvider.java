@@ -25,9 +25,10 @@
 package com.apporiented.hermesftp.cmd;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
-import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -105,10 +106,17 @@ public class ActiveModeSocketProvider implements SocketProvider {
                 dataChannelInfo.getPort());
             sslSocket.setUseClientMode(false);
             enableCipherSuites(sslSocket);
+            try {
+                ctx.getOptions().getTlsSessionTracker().handshake(sslSocket, ctx.getClientSocket());
+            } catch (IOException e) {
+                IOUtils.closeGracefully(sslSocket);
+                throw e;
+            }
             dataSocket = sslSocket;
         } else {
-            dataSocket = SocketFactory.getDefault().createSocket(dataChannelInfo.getAddress(),
-                dataChannelInfo.getPort());
+            /* Channel based, so that transfers can use the zero-copy methods of FileChannel */
+            dataSocket = SocketChannel.open(
+                new InetSocketAddress(dataChannelInfo.getAddress(), dataChannelInfo.getPort())).socket();
         }
         return dataSocket;
     }
@@ -31,38 +31,47 @@ import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 
-import javax.net.ServerSocketFactory;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSocket;
 
 import com.apporiented.hermesftp.common.FtpConstants;
 import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.exception.FtpConfigException;
+import com.apporiented.hermesftp.server.PassivePortManager;
 import com.apporiented.hermesftp.utils.IOUtils;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * Provides the data transfer socket for transfer passive mode.
+ * Provides the data transfer socket for transfer passive mode. The listening port is leased from
+ * the passive port manager of the server and returned when the socket is closed. Protected data
+ * connections complete their TLS handshake before the socket is handed out.
  * 
  * @author Behnke
  */
 public class PassiveModeSocketProvider implements SocketProvider {
 
-    private static final int  MAX_BIND_RETRIES     = 3;
+    private static final int    DATA_CHANNEL_TIMEOUT = 10000;
 
-    private static final int  DATA_CHANNEL_TIMEOUT = 10000;
+    private static Log          log                  = LogFactory.getLog(PassiveModeSocketProvider.class);
 
-    private static Log        log                  = LogFactory.getLog(PassiveModeSocketProvider.class);
+    private FtpSessionContext   ctx;
 
-    private FtpSessionContext ctx;
+    private PassivePortManager  portManager;
 
-    private ServerSocket      serverSocket;
+    private ServerSocket        serverSocket;
 
-    private Socket            dataSocket;
+    private ServerSocketChannel listener;
 
-    private int               preferredProtocol;
+    private int                 leasedPort;
+
+    private Socket              dataSocket;
+
+    private int                 preferredProtocol;
 
     /**
      * Constructor.
@@ -88,21 +97,16 @@ public class PassiveModeSocketProvider implements SocketProvider {
             throw new IOException("Invalid IP version");
         }
 
-        /* Get the next available port */
-        int retries = MAX_BIND_RETRIES;
-        while (retries > 0) {
-            Integer port = ctx.getNextPassivePort();
-            port = port == null ? new Integer(0) : port;
-            try {
-                log.debug("Trying to bind server socket to port " + port);
-                serverSocket = createServerSocket(localIp, port);
-                break;
-            } catch (Exception e) {
-                retries--;
-                log.debug("Binding server socket to port " + port + " failed.");
-            }
+        /* Lease a port from the configured range */
+        portManager = (PassivePortManager) ctx.getAttribute(FtpConstants.ATTR_PASSIVE_PORTS);
+        if (portManager == null) {
+            portManager = new PassivePortManager(ctx.getOptions().getAllowedPorts(), false);
         }
-        if (serverSocket == null) {
+        try {
+            serverSocket = createServerSocket(localIp);
+        } catch (IOException e) {
+            closeSocket();
+            log.debug("Binding server socket failed: " + e.getMessage());
             throw new IOException("Initializing server socket failed.");
         }
 
@@ -116,9 +120,16 @@ public class PassiveModeSocketProvider implements SocketProvider {
      * {@inheritDoc}
      */
     public void closeSocket() {
-        IOUtils.closeGracefully(serverSocket);
         IOUtils.closeGracefully(dataSocket);
+        if (listener != null) {
+            portManager.closeListener(listener);
+        } else if (serverSocket != null) {
+            IOUtils.closeGracefully(serverSocket);
+            portManager.releasePort(leasedPort);
+        }
         serverSocket = null;
+        listener = null;
+        leasedPort = 0;
         dataSocket = null;
 
     }
@@ -131,7 +142,17 @@ public class PassiveModeSocketProvider implements SocketProvider {
             if (serverSocket == null) {
                 throw new IOException("Server socket not initialized.");
             }
-            dataSocket = serverSocket.accept();
+            Socket socket = serverSocket.accept();
+            if (socket instanceof SSLSocket) {
+                try {
+                    ctx.getOptions().getTlsSessionTracker().handshake((SSLSocket) socket,
+                        ctx.getClientSocket());
+                } catch (IOException e) {
+                    IOUtils.closeGracefully(socket);
+                    throw e;
+                }
+            }
+            dataSocket = socket;
         }
         return dataSocket;
     }
@@ -150,27 +171,49 @@ public class PassiveModeSocketProvider implements SocketProvider {
      * Creates the server socket that accepts the data connection.
      * 
      * @param localIp The local IP address.
-     * @param port The port.
      * @return The server socket.
      * @throws IOException Error on creating server socket.
      */
-    private ServerSocket createServerSocket(InetAddress localIp, int port) throws IOException {
+    private ServerSocket createServerSocket(InetAddress localIp) throws IOException {
         ServerSocket sock;
         Boolean dataProtection = (Boolean) ctx.getAttribute(FtpConstants.ATTR_DATA_PROT);
         boolean ssl = dataProtection != null && dataProtection;
         if (ssl) {
-            SSLServerSocketFactory factory = ctx.getOptions().getSslContext().getServerSocketFactory();
-            SSLServerSocket sslServerSocket = (SSLServerSocket) factory.createServerSocket(port, 1, localIp);
-            sslServerSocket.setUseClientMode(false);
-            enableCipherSuites(sslServerSocket);
-            sock = sslServerSocket;
+            sock = createSslServerSocket(localIp);
         } else {
-            sock = ServerSocketFactory.getDefault().createServerSocket(port, 1, localIp);
+            /* Channel based, so that transfers can use the zero-copy methods of FileChannel */
+            listener = portManager.openListener(localIp);
+            sock = listener.socket();
         }
         sock.setSoTimeout(DATA_CHANNEL_TIMEOUT);
         return sock;
     }
 
+    private ServerSocket createSslServerSocket(InetAddress localIp) throws IOException {
+        SSLServerSocketFactory factory;
+        try {
+            factory = ctx.getOptions().getSslContext().getServerSocketFactory();
+        } catch (FtpConfigException e) {
+            throw new IOException(e.getMessage());
+        }
+        int attempts = Math.max(1, portManager.getPortCount());
+        while (true) {
+            int port = portManager.acquirePort();
+            try {
+                SSLServerSocket sslServerSocket = (SSLServerSocket) factory.createServerSocket(port, 1, localIp);
+                sslServerSocket.setUseClientMode(false);
+                enableCipherSuites(sslServerSocket);
+                leasedPort = port;
+                return sslServerSocket;
+            } catch (IOException e) {
+                portManager.releasePort(port);
+                if (--attempts == 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     /**
      * Enables the configured cipher suites in the passed server socket.
      * 
@@ -80,9 +80,9 @@ import org.springframework.util.StringUtils;
  */
 public class FtpCmdAuth extends AbstractFtpCmd implements ClientSocketModifier, HandshakeCompletedListener {
 
-    private static Log log = LogFactory.getLog(FtpCmdAuth.class);
+    private static Log       log = LogFactory.getLog(FtpCmdAuth.class);
 
-    private boolean    executed;
+    private volatile boolean executed;
 
     /**
      * Some notes about SSL support: Use keytool to generate a keystore/key: <code>
@@ -122,9 +122,6 @@ public class FtpCmdAuth extends AbstractFtpCmd implements ClientSocketModifier,
             getCtx().setAttribute(ATTR_SSL, Boolean.TRUE);
             executed = true;
         }
-        synchronized (this) {
-            notifyAll();
-        }
     }
 
     private SSLSocket createSslSocket() throws IOException {
@@ -135,6 +132,7 @@ public class FtpCmdAuth extends AbstractFtpCmd implements ClientSocketModifier,
             getCtx().getOptions().getFtpPort(), true);
         sslSocket.setUseClientMode(false);
         sslSocket.addHandshakeCompletedListener(this);
+        sslSocket.addHandshakeCompletedListener(getCtx().getOptions().getTlsSessionTracker());
         enableCipherSuites(sslSocket);
         log.info("Enabled cipher suites (explicit SSL): "
                 + StringUtils.arrayToCommaDelimitedString(sslSocket.getEnabledCipherSuites()));
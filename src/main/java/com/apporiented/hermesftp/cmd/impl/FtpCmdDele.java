@@ -62,6 +62,7 @@ public class FtpCmdDele extends AbstractFtpCmd {
                 response = msg(MSG550);
             } else {
                 boolean deleted = file.delete();
+                invalidateListings(file);
                 response = deleted ? msg(MSG250) : msg(MSG450);
             }
         }
@@ -24,6 +24,9 @@
 
 package com.apporiented.hermesftp.cmd.impl;
 
+import java.util.Arrays;
+import java.util.List;
+
 import com.apporiented.hermesftp.cmd.AbstractFtpCmd;
 import com.apporiented.hermesftp.exception.FtpCmdException;
 
@@ -143,6 +146,7 @@ public class FtpCmdFeat extends AbstractFtpCmd {
 
         msgOut(MSG211_FEAT_HEADER);
         msgOut(MSG211_FEAT_ENTRY, "MDTM");
+        msgOut(MSG211_FEAT_ENTRY, getMlstFeature());
         msgOut(MSG211_FEAT_ENTRY, "REST STREAM");
         msgOut(MSG211_FEAT_ENTRY, "SIZE");
         msgOut(MSG211_FEAT_ENTRY, "UTF8");
@@ -156,6 +160,24 @@ public class FtpCmdFeat extends AbstractFtpCmd {
         msgOut(MSG211_FEAT_FOOTER);
     }
 
+    /**
+     * Lists the supported facts, marking those currently selected with an asterisk.
+     * 
+     * @return The MLST feature line.
+     */
+    private String getMlstFeature() {
+        List<String> selected = Arrays.asList(getMlstFacts());
+        StringBuilder sb = new StringBuilder("MLST ");
+        for (String fact : MLST_FACTS) {
+            sb.append(fact);
+            if (selected.contains(fact)) {
+                sb.append('*');
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
     /**
      * {@inheritDoc}
      */
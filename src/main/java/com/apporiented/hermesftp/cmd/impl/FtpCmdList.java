@@ -24,13 +24,12 @@
 
 package com.apporiented.hermesftp.cmd.impl;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import com.apporiented.hermesftp.cmd.AbstractFtpCmdList;
-import com.apporiented.hermesftp.common.FtpSessionContext;
-import com.apporiented.hermesftp.utils.IOUtils;
+import com.apporiented.hermesftp.streams.ListingWriter;
 
 /**
  * <b>LIST (LIST)</b>
@@ -80,17 +79,17 @@ public class FtpCmdList extends AbstractFtpCmdList {
      *                  -rw-r--r-- 1 ftp ftp           2327 Mar 29 14:04 slapd.conf
      * </pre>
      * 
-     * @param out The output stream.
-     * @param file The file
-     * @param ctx The FTP context.
+     * @param out The listing writer.
+     * @param path The file.
+     * @param attrs The attributes of the file.
      * @throws IOException Error on data transfer.
      */
-    protected void doPrintFileInfo(PrintWriter out, File file, FtpSessionContext ctx) throws IOException {
-        int permission = getCtx().getPermission(file.getAbsolutePath());
+    protected void doPrintFileInfo(ListingWriter out, Path path, BasicFileAttributes attrs) throws IOException {
+        int permission = getCtx().getPermission(path.toString());
         boolean read = (permission & PRIV_READ) > 0;
         boolean write = (permission & PRIV_WRITE) > 0;
-        String s = IOUtils.formatUnixFtpFileInfo(file, read, write);
-        out.println(s);
+        out.writeUnixFileInfo(getFileName(path), attrs.isDirectory(), attrs.size(), attrs.lastModifiedTime()
+            .toMillis(), read, write);
     }
 
     /**
@@ -78,6 +78,7 @@ public class FtpCmdMdtm extends AbstractFtpCmd {
                     return;
                 } else {
                     path.setLastModified(date.getTime());
+                    invalidateListings(path);
                 }
 
             }
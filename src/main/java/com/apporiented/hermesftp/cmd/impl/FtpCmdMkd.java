@@ -69,6 +69,8 @@ public class FtpCmdMkd extends AbstractFtpCmd {
                 response = msg(MSG250);
             } catch (IOException e) {
                 response = msg(MSG451);
+            } finally {
+                invalidateListings(dir);
             }
         }
         out(response);
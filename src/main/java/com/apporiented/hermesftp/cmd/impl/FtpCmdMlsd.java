@@ -0,0 +1,118 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.cmd.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import com.apporiented.hermesftp.cmd.AbstractFtpCmdList;
+import com.apporiented.hermesftp.exception.FtpCmdException;
+import com.apporiented.hermesftp.streams.ListingWriter;
+
+/**
+ * <b>LIST DIRECTORY (MLSD)</b>
+ * <p>
+ * The MLSD command is intended to standardize the file and directory information returned by the
+ * server-FTP process. This command differs from the LIST command in that the format of the replies
+ * is strictly defined although extensible. If the pathname argument is not a directory, the server
+ * should reply with a 501 error. The listing is sent over the data connection, one entry per line,
+ * each consisting of the selected facts followed by the file name.
+ * <p>
+ * <i>[Excerpt from RFC-3659, Hethmon]</i>
+ * </p>
+ * 
+ * @author Lars Behnke
+ */
+public class FtpCmdMlsd extends AbstractFtpCmdList {
+
+    private String[] facts;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws FtpCmdException {
+        facts = getMlstFacts();
+        super.execute();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getHelp() {
+        return "Show directory contents in machine readable format";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean isDirectoryRequired() {
+        return true;
+    }
+
+    /**
+     * Path names are always sent in UTF-8, whatever the data type (RFC 3659, chap. 2.2).
+     * 
+     * @return UTF-8.
+     */
+    protected String getListingCharset() {
+        return "UTF-8";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getListingVariant() {
+        return Arrays.toString(facts);
+    }
+
+    /**
+     * Prints the facts of a directory entry, e.g.
+     * 
+     * <pre>
+     * type=file;size=2327;modify=20140329140400;perm=adfwr; slapd.conf
+     * </pre>
+     * 
+     * @param out The listing writer.
+     * @param path The file.
+     * @param attrs The attributes of the file.
+     * @throws IOException Error on data transfer.
+     */
+    protected void doPrintFileInfo(ListingWriter out, Path path, BasicFileAttributes attrs) throws IOException {
+        int permission = getCtx().getPermission(path.toString());
+        boolean read = (permission & PRIV_READ) > 0;
+        boolean write = (permission & PRIV_WRITE) > 0;
+        out.writeFacts(getFileName(path), facts, attrs, read, write);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isAuthenticationRequired() {
+        return true;
+    }
+
+}
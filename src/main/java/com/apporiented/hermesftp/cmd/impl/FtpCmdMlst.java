@@ -0,0 +1,98 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.cmd.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.apporiented.hermesftp.cmd.AbstractFtpCmd;
+import com.apporiented.hermesftp.exception.FtpCmdException;
+import com.apporiented.hermesftp.utils.IOUtils;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * <b>LIST SINGLE OBJECT (MLST)</b>
+ * <p>
+ * The MLST command is intended to return data about a single file or directory over the control
+ * connection. If no object is named, the current directory is assumed. The facts of the object are
+ * sent in a single line, preceded by a space, between the first and the last line of a multi-line
+ * 250 reply.
+ * <p>
+ * <i>[Excerpt from RFC-3659, Hethmon]</i>
+ * </p>
+ * 
+ * @author Lars Behnke
+ */
+public class FtpCmdMlst extends AbstractFtpCmd {
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws FtpCmdException {
+        String arg = getArguments().trim();
+        String name = arg.length() == 0 ? FilenameUtils.separatorsToUnix(getCtx().getRemoteRelDir()) : arg;
+        File file = new File(getPathArg());
+        int permission = getCtx().getPermission(file.getPath());
+        if ((permission & PRIV_READ) == 0) {
+            msgOut(MSG550_PERM);
+            return;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            msgOut(MSG550);
+            return;
+        }
+        boolean write = (permission & PRIV_WRITE) > 0;
+        StringBuilder sb = new StringBuilder(" ");
+        IOUtils.appendMlsxFacts(sb, name, getMlstFacts(), attrs, true, write, new GregorianCalendar(TimeZone
+            .getTimeZone("UTC"), Locale.US));
+        msgOut(MSG250_MLST_HEADER, name);
+        out(sb.toString());
+        msgOut(MSG250_MLST_FOOTER);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getHelp() {
+        return "Show file information in machine readable format";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isAuthenticationRequired() {
+        return true;
+    }
+
+}
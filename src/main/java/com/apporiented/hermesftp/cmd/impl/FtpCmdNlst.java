@@ -24,12 +24,12 @@
 
 package com.apporiented.hermesftp.cmd.impl;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import com.apporiented.hermesftp.cmd.AbstractFtpCmdList;
-import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.streams.ListingWriter;
 
 /**
  * <b>NAME LIST (NLST)</b>
@@ -61,13 +61,20 @@ public class FtpCmdNlst extends AbstractFtpCmdList {
     /**
      * Prints out the name a single file or directory.
      * 
-     * @param out The output stream.
-     * @param file The file
-     * @param ctx The FTP context.
+     * @param out The listing writer.
+     * @param path The file.
+     * @param attrs Not used.
      * @throws IOException Error on data transfer.
      */
-    protected void doPrintFileInfo(PrintWriter out, File file, FtpSessionContext ctx) throws IOException {
-        out.println(file.getName());
+    protected void doPrintFileInfo(ListingWriter out, Path path, BasicFileAttributes attrs) throws IOException {
+        out.writeName(getFileName(path));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean isAttributesRequired() {
+        return false;
     }
 
     /**
@@ -24,6 +24,9 @@
 
 package com.apporiented.hermesftp.cmd.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.apporiented.hermesftp.cmd.AbstractFtpCmd;
 import com.apporiented.hermesftp.exception.FtpCmdException;
 
@@ -97,12 +100,35 @@ public class FtpCmdOpts extends AbstractFtpCmd {
         if (argParts.length == 2 && argParts[0].equalsIgnoreCase("UTF8")) {
             getCtx().setAttribute(ATTR_FORCE_UTF8, argParts[1].equalsIgnoreCase("ON"));
             response = msg(MSG200);
+        } else if (argParts.length <= 2 && argParts[0].equalsIgnoreCase("MLST")) {
+            response = selectMlstFacts(argParts.length == 2 ? argParts[1] : "");
         } else {
             response = msg(MSG451);
         }
         out(response);
     }
 
+    /**
+     * Selects the facts shown by MLST and MLSD. Unsupported facts are ignored (RFC 3659).
+     * 
+     * @param factList The requested facts, each terminated by a semicolon.
+     * @return The response listing the selected facts.
+     */
+    private String selectMlstFacts(String factList) {
+        List<String> facts = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (String fact : factList.split(";")) {
+            for (String supported : MLST_FACTS) {
+                if (supported.equalsIgnoreCase(fact.trim()) && !facts.contains(supported)) {
+                    facts.add(supported);
+                    sb.append(supported).append(';');
+                }
+            }
+        }
+        getCtx().setAttribute(ATTR_MLST_FACTS, facts.toArray(new String[facts.size()]));
+        return msg(MSG200_MLST, sb.toString());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -28,10 +28,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import com.apporiented.hermesftp.cmd.AbstractFtpCmdRetr;
 import com.apporiented.hermesftp.exception.FtpCmdException;
 import com.apporiented.hermesftp.exception.FtpPermissionException;
+import com.apporiented.hermesftp.streams.BufferPool;
 import com.apporiented.hermesftp.streams.RafInputStream;
 import com.apporiented.hermesftp.streams.RecordWriteSupport;
 import com.apporiented.hermesftp.utils.IOUtils;
@@ -53,7 +57,9 @@ import org.apache.commons.logging.LogFactory;
  */
 public class FtpCmdRetr extends AbstractFtpCmdRetr {
 
-    private static Log log = LogFactory.getLog(FtpCmdRetr.class);
+    private static final int TRANSFER_CHUNK_SIZE = 256 * 1024;
+
+    private static Log       log                 = LogFactory.getLog(FtpCmdRetr.class);
 
     /**
      * {@inheritDoc}
@@ -103,16 +109,22 @@ public class FtpCmdRetr extends AbstractFtpCmdRetr {
                 writeRecord(rws, lastRecordBuffer, false);
                 lastRecordBuffer = recordBuffer;
                 if (isAbortRequested()) {
+                    rws.flush();
                     msgOut(MSG426);
                     log.debug("Record transfer aborted");
                     return;
                 }
+                if (isFlushRequested()) {
+                    rws.flush();
+                }
                 getTransferRateLimiter().execute(recordBuffer.length);
             }
             writeRecord(rws, lastRecordBuffer, true);
+            rws.flush();
+            finishDataStream();
             getCtx().updateAverageStat(STAT_DOWNLOAD_RATE,
                 (int) getTransferRateLimiter().getCurrentTransferRate());
-            msgOut(MSG226);
+            msgOutTransferComplete();
 
         } finally {
             IOUtils.closeGracefully(rws);
@@ -123,7 +135,6 @@ public class FtpCmdRetr extends AbstractFtpCmdRetr {
     private void writeRecord(RecordWriteSupport rws, byte[] lastRecordBuffer, boolean eof) throws IOException {
         if (lastRecordBuffer != null) {
             rws.writeRecord(lastRecordBuffer, eof);
-            rws.flush();
             incCompleted(lastRecordBuffer.length);
         }
     }
@@ -133,27 +144,78 @@ public class FtpCmdRetr extends AbstractFtpCmdRetr {
      */
     protected void doRetrieveFileData(OutputStream os, File file, long fileOffset) throws IOException {
         InputStream is = new RafInputStream(file, fileOffset);
-        int bufferSize = getCtx().getOptions().getBufferSize();
-        byte[] buffer = new byte[bufferSize];
+        int bufferSize = getTransferBufferSize(file.length() - fileOffset, STAT_DOWNLOAD_RATE);
+        byte[] buffer = BufferPool.getDefault().acquire(bufferSize);
         int count;
         try {
             while ((count = is.read(buffer)) != -1) {
                 os.write(buffer, 0, count);
-                os.flush();
                 incCompleted(count);
                 if (isAbortRequested()) {
+                    os.flush();
                     msgOut(MSG426);
                     log.debug("File transfer aborted");
                     return;
                 }
+                if (isFlushRequested()) {
+                    os.flush();
+                }
                 getTransferRateLimiter().execute(count);
             }
+            os.flush();
+            finishDataStream();
             getCtx().updateAverageStat(STAT_DOWNLOAD_RATE,
                 (int) getTransferRateLimiter().getCurrentTransferRate());
-            msgOut(MSG226);
+            msgOutTransferComplete();
         } finally {
+            BufferPool.getDefault().release(buffer);
             IOUtils.closeGracefully(is);
             IOUtils.closeGracefully(os);
         }
     }
+
+    /**
+     * Sends the file with <code>FileChannel.transferTo()</code>, so the data is passed to the
+     * socket by the operating system without being copied into the Java heap. The file is sent in
+     * chunks to allow for abort requests, progress reports and rate limiting.
+     * 
+     * @param out The data channel.
+     * @param file The source file.
+     * @param fileOffset The file offset.
+     * @throws IOException Thrown if IO fails.
+     */
+    protected void doRetrieveFileData(WritableByteChannel out, File file, long fileOffset)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel fc = raf.getChannel();
+        try {
+            long position = fileOffset;
+            long size = fc.size();
+            int chunkSize = getTransferRateLimiter().limitChunkSize(TRANSFER_CHUNK_SIZE);
+            while (position < size) {
+                long count = fc.transferTo(position, Math.min(chunkSize, size - position), out);
+                if (count <= 0) {
+                    size = fc.size();
+                    continue;
+                }
+                position += count;
+                incCompleted(count);
+                if (isAbortRequested()) {
+                    msgOut(MSG426);
+                    log.debug("File transfer aborted");
+                    return;
+                }
+                getTransferRateLimiter().execute(count);
+            }
+
+            /* In stream mode the end of file is marked by closing the connection */
+            out.close();
+            getCtx().updateAverageStat(STAT_DOWNLOAD_RATE,
+                (int) getTransferRateLimiter().getCurrentTransferRate());
+            msgOutTransferComplete();
+        } finally {
+            IOUtils.closeGracefully(raf);
+            IOUtils.closeGracefully(out);
+        }
+    }
 }
@@ -61,6 +61,7 @@ public class FtpCmdRmd extends AbstractFtpCmd {
             response = msg(MSG550_NOTEMPTY);
         } else {
             boolean deleted = delete(dir);
+            invalidateListings(dir);
             response = deleted ? msg(MSG250) : msg(MSG450);
 
         }
@@ -69,6 +69,8 @@ public class FtpCmdRnto extends AbstractFtpCmd {
             return;
         }
         boolean renamed = originalPath.renameTo(newPath);
+        invalidateListings(originalPath);
+        invalidateListings(newPath);
         if (!renamed) {
             msgOut(MSG451);
             return;
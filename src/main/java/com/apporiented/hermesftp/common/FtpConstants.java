@@ -45,18 +45,45 @@ public interface FtpConstants {
     /** The key for data maximum idle seconds until the session times out. */
     public static final String   OPT_MAX_IDLE_SECONDS      = "max.idle.seconds";
 
+    /** The key for the maximum length of a command line in bytes. */
+    public static final String   OPT_MAX_CMD_LINE_LENGTH   = "max.cmd.line.length";
+
+    /** The key for the seconds a data connection is kept open after a transfer in block mode. */
+    public static final String   OPT_DATA_IDLE_SECONDS     = "data.idle.seconds";
+
     /** The key for the flag indicating unix/windows emulation. */
     public static final String   OPT_EMULATE_UNIX          = "emulate.unix";
 
     /** The key for the client connection limit. */
     public static final String   OPT_MAX_CONNECTIONS       = "max.connections";
 
+    /** The key for the client connection limit per IP address. */
+    public static final String   OPT_MAX_CONNECTIONS_PER_IP = "max.connections.per.ip";
+
+    /** The key for the number of clients waiting for a free session slot. */
+    public static final String   OPT_CONNECTION_QUEUE_SIZE = "connection.queue.size";
+
+    /** The key for the seconds a queued client waits for a free session slot. */
+    public static final String   OPT_CONNECTION_QUEUE_TIMEOUT = "connection.queue.timeout";
+
+    /** The key for the option to run sessions on virtual threads, if supported by the runtime. */
+    public static final String   OPT_VIRTUAL_THREADS       = "virtual.threads";
+
+    /** The key for the number of selector threads of the NIO server engine. */
+    public static final String   OPT_NIO_SELECTOR_THREADS  = "nio.selector.threads";
+
     /** The key for the default remote directory. */
     public static final String   OPT_REMOTE_DIR            = "ftp.root.dir";
 
     /** The key for the allowed passive ports. */
     public static final String   OPT_ALLOWED_PASSIVE_PORTS = "allowed.passive.ports";
 
+    /** The key for the option to bind the passive ports in advance and keep them bound. */
+    public static final String   OPT_PASSIVE_PREBIND       = "passive.prebind";
+
+    /** The key for the maximum number of bytes held by the directory listing cache. */
+    public static final String   OPT_LISTING_CACHE_SIZE    = "listing.cache.size";
+
     /** The key for the black list of ip v4 addresses. */
     public static final String   OPT_IPV4_BLACK_LIST         = "ipv4.black.list";
 
@@ -69,6 +96,12 @@ public interface FtpConstants {
     /** The key for the global maximum download rate in KB/s. */
     public static final String   OPT_MAX_DOWNLOAD_RATE     = "max.download.rate";
 
+    /** The key for the aggregate upload rate of all sessions in KB/s. */
+    public static final String   OPT_SERVER_UPLOAD_RATE    = "server.upload.rate";
+
+    /** The key for the aggregate download rate of all sessions in KB/s. */
+    public static final String   OPT_SERVER_DOWNLOAD_RATE  = "server.download.rate";
+
     /** The key for the FTP port to be used (21 is default). */
     public static final String   OPT_FTP_PORT              = "ftp.port";
 
@@ -93,6 +126,15 @@ public interface FtpConstants {
     /** The key for supported SSL cipher suites. "*" for all supported by system. */
     public static final String   OPT_SSL_CIPHER_SUITES     = "ssl.cipher.suites";
 
+    /** The key for the number of TLS sessions kept in the server session cache. */
+    public static final String   OPT_SSL_SESSION_CACHE     = "ssl.session.cache.size";
+
+    /** The key for the seconds a cached TLS session can be resumed. */
+    public static final String   OPT_SSL_SESSION_TIMEOUT   = "ssl.session.timeout";
+
+    /** The key for the flag requiring data connections to reuse the TLS session of the control connection. */
+    public static final String   OPT_SSL_REQUIRE_REUSE     = "ssl.require.session.reuse";
+
     /** The EBCDIC character set to use. */
     public static final String   OPT_CHARSET_EBCDIC        = "charset.ebcdic";
 
@@ -131,6 +173,30 @@ public interface FtpConstants {
     /** Container for the restart markers. */
     public static final String   ATTR_RESTART_MARKERS      = "restart_markers";
 
+    /** The bandwidth shaper of the server. */
+    public static final String   ATTR_BANDWIDTH_SHAPER     = "bandwidth_shaper";
+
+    /** The token bucket pacing the downloads of the session. */
+    public static final String   ATTR_DOWNLOAD_BUCKET      = "download_bucket";
+
+    /** The token bucket pacing the uploads of the session. */
+    public static final String   ATTR_UPLOAD_BUCKET        = "upload_bucket";
+
+    /** The timer serving the timeouts of the server's sessions. */
+    public static final String   ATTR_TIMER                = "timer";
+
+    /** Session attribute: Manager of the passive ports. */
+    public static final String   ATTR_PASSIVE_PORTS        = "passive_ports";
+
+    /** Session attribute: Server wide cache of directory listings. */
+    public static final String   ATTR_LISTING_CACHE        = "listing_cache";
+
+    /** Session attribute: Idle timeout of a data connection kept open in block mode. */
+    public static final String   ATTR_DATA_IDLE_TIMEOUT    = "data_idle_timeout";
+
+    /** Session attribute: Facts selected by OPTS MLST. */
+    public static final String   ATTR_MLST_FACTS           = "mlst_facts";
+
     /* Various constants */
 
     /** Konfiguration of the Spring application context. */
@@ -148,6 +214,13 @@ public interface FtpConstants {
     /** All supported data types. */
     public static final String[] TYPE_NAMES                = new String[] {"ASCII", "EBCDIC", "BINARY"};
 
+    /** Facts supported by MLST and MLSD (RFC 3659). */
+    public static final String[] MLST_FACTS                = new String[] {"type", "size", "modify", "perm",
+            "unique"};
+
+    /** Facts shown by MLST and MLSD unless selected otherwise by OPTS MLST. */
+    public static final String[] MLST_DEFAULT_FACTS        = new String[] {"type", "size", "modify", "perm"};
+
     /* Data types */
 
     /** ASCII data type. */
@@ -249,6 +322,18 @@ public interface FtpConstants {
     /** Upload rate (KB/s) limit. */
     public static final String   STAT_UPLOAD_RATE          = "Upload rate";
 
+    /** Aggregate download rate (KB/s) limit of all members of a group. */
+    public static final String   STAT_GROUP_DOWNLOAD_RATE  = "Group download rate";
+
+    /** Aggregate upload rate (KB/s) limit of all members of a group. */
+    public static final String   STAT_GROUP_UPLOAD_RATE    = "Group upload rate";
+
+    /** Weight of the group's QoS class when sharing the server capacity. */
+    public static final String   STAT_QOS_WEIGHT           = "QoS weight";
+
+    /** Rate (KB/s) guaranteed to the group's QoS class when sharing the server capacity. */
+    public static final String   STAT_QOS_MIN_RATE         = "QoS min rate";
+
     /* Resource identifiers */
 
     /** FTP response message 150. */
@@ -272,6 +357,9 @@ public interface FtpConstants {
     /** FTP response message 200. */
     public static final String   MSG200_TYPE               = "msg200_type";
 
+    /** FTP response message 200 (OPTS MLST). */
+    public static final String   MSG200_MLST               = "msg200_mlst";
+
     /** FTP response message 211 header. */
     public static final String   MSG211_FEAT_HEADER        = "msg211_feat_header";
 
@@ -317,6 +405,12 @@ public interface FtpConstants {
     /** FTP response message 250. */
     public static final String   MSG250                    = "msg250";
 
+    /** FTP response message 250 header (MLST). */
+    public static final String   MSG250_MLST_HEADER        = "msg250_mlst_header";
+
+    /** FTP response message 250 footer (MLST). */
+    public static final String   MSG250_MLST_FOOTER        = "msg250_mlst_footer";
+
     /** FTP response message 257. */
     public static final String   MSG257                    = "msg257";
 
@@ -353,6 +447,9 @@ public interface FtpConstants {
     /** FTP response message 500. */
     public static final String   MSG500_CMD                = "msg500_cmd";
 
+    /** FTP response message 500. */
+    public static final String   MSG500_LINE               = "msg500_line";
+
     /** FTP response message 501. */
     public static final String   MSG501                    = "msg501";
 
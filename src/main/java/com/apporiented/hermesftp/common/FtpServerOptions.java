@@ -29,6 +29,7 @@ import java.util.Properties;
 import javax.net.ssl.SSLContext;
 
 import com.apporiented.hermesftp.exception.FtpConfigException;
+import com.apporiented.hermesftp.utils.TlsSessionTracker;
 
 /**
  * Defines the contract for classes representing the static server options retrieved from the
@@ -151,6 +152,13 @@ public interface FtpServerOptions {
      */
     SSLContext getSslContext() throws FtpConfigException;
 
+    /**
+     * Returns the tracker that checks and counts the TLS sessions of protected data connections.
+     * 
+     * @return The tracker.
+     */
+    TlsSessionTracker getTlsSessionTracker();
+
     /**
      * Getter method for the java bean <code>systemProperties</code>.
      * 
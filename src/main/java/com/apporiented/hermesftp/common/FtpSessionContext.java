@@ -24,7 +24,6 @@
 
 package com.apporiented.hermesftp.common;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.Socket;
@@ -36,6 +35,7 @@ import com.apporiented.hermesftp.exception.FtpException;
 import com.apporiented.hermesftp.exception.FtpQuotaException;
 import com.apporiented.hermesftp.usermanager.UserManager;
 import com.apporiented.hermesftp.usermanager.model.UserData;
+import com.apporiented.hermesftp.utils.CmdLineReader;
 
 /**
  * This class servers as a means of transportation for data shared by a single FTP session.
@@ -146,6 +146,16 @@ public interface FtpSessionContext {
      */
     String getRes(String id);
 
+    /**
+     * Returns a named resource from a resource bundle, formatted with the passed arguments as
+     * <code>java.text.MessageFormat</code> would do.
+     * 
+     * @param id The name of the resource.
+     * @param args The arguments or null, if the resource is to be returned unformatted.
+     * @return The formatted resource.
+     */
+    String getRes(String id, Object[] args);
+
     /**
      * Checks whether user was successfully authenticated.
      * 
@@ -232,11 +242,11 @@ public interface FtpSessionContext {
     PrintWriter getClientResponseWriter();
 
     /**
-     * Returns the Reader that is used to read client commands.
+     * Returns the reader that is used to read client commands.
      * 
      * @return The reader.
      */
-    BufferedReader getClientCmdReader();
+    CmdLineReader getClientCmdReader();
 
     /**
      * Gets the user's permission on the passed path.
@@ -260,14 +270,6 @@ public interface FtpSessionContext {
      */
     String getCharset();
 
-    /**
-     * Returns the next available port from a user defined list of passive ports. If no port list
-     * was configured, 0 is returned. The port 0 makes a the system decide which port to use.
-     * 
-     * @return The port for passive data transfer.
-     */
-    Integer getNextPassivePort();
-
     /**
      * @return True, if successful.
      */
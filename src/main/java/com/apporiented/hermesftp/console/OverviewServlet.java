@@ -24,9 +24,12 @@
 
 package com.apporiented.hermesftp.console;
 
+import java.text.NumberFormat;
 import java.util.Properties;
 
 import com.apporiented.hermesftp.common.FtpServerOptions;
+import com.apporiented.hermesftp.server.ListingCache;
+import com.apporiented.hermesftp.utils.TlsSessionTracker;
 
 /**
  * Provides an overview of system and application properties.
@@ -50,6 +53,19 @@ public class OverviewServlet extends AbstractConsoleServlet {
         result.put("memory.total", formatNum(Runtime.getRuntime().totalMemory() / 1024));
         result.put("memory.total.free", formatNum((Runtime.getRuntime().freeMemory() + (Runtime.getRuntime()
             .maxMemory() - Runtime.getRuntime().totalMemory())) / 1024));
+        TlsSessionTracker tracker = options.getTlsSessionTracker();
+        result.put("ssl.handshakes.control", formatNum(tracker.getControlHandshakeCount()));
+        result.put("ssl.handshakes.data", formatNum(tracker.getDataHandshakeCount()));
+        result.put("ssl.handshakes.resumed", formatNum(tracker.getResumedCount()));
+        result.put("ssl.resumption.ratio", NumberFormat.getPercentInstance().format(tracker.getResumptionRatio()));
+        ListingCache cache = ListingCache.lookup(options);
+        if (cache != null) {
+            result.put("listing.cache.hits", formatNum(cache.getHitCount()));
+            result.put("listing.cache.misses", formatNum(cache.getMissCount()));
+            result.put("listing.cache.evictions", formatNum(cache.getEvictionCount()));
+            result.put("listing.cache.invalidations", formatNum(cache.getInvalidationCount()));
+            result.put("listing.cache.used", formatNum(cache.getSize() / 1024));
+        }
         return result;
     }
 
@@ -68,14 +68,12 @@ public class SessionsServlet extends AbstractConsoleServlet {
 
         int rowCount = 0;
         getServer().cleanUpSessions();
-        synchronized (getServer()) {
-            for (FtpSession session : getServer().getSessions()) {
-                FtpSessionContext ctx = session.getFtpContext();
-                rowCount++;
-                fillRow(sb, rowCount, session, ctx);
-            }
-            sb.append(ConsoleConstants.TABLE_END_TAG);
+        for (FtpSession session : getServer().getSessions()) {
+            FtpSessionContext ctx = session.getFtpContext();
+            rowCount++;
+            fillRow(sb, rowCount, session, ctx);
         }
+        sb.append(ConsoleConstants.TABLE_END_TAG);
         return sb.toString();
     }
 
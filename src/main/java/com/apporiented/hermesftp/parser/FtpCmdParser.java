@@ -24,6 +24,7 @@
 
 package com.apporiented.hermesftp.parser;
 
+import java.util.List;
 import java.util.Map;
 
 import com.apporiented.hermesftp.cmd.FtpCmd;
@@ -50,7 +51,8 @@ public interface FtpCmdParser {
     String[] getCommandTokens();
 
     /**
-     * Extracts the command token from the passed command line.
+     * Extracts the command token from the passed command line. The token is the first word of the
+     * line, compared case insensitively.
      * 
      * @param cmdString The command string.
      * @return The command token or NULL.
@@ -64,4 +66,13 @@ public interface FtpCmdParser {
      * @return The command instance.
      */
     FtpCmd createCommandByToken(String token);
+
+    /**
+     * Returns one instance of each registered command, sorted by token. The list is created once
+     * and cannot be modified. Its entries are meant for inspection only (e.g. by the HELP command)
+     * and must not be executed.
+     * 
+     * @return The command list.
+     */
+    List<FtpCmd> getCommandList();
 }
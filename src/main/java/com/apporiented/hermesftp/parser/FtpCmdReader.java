@@ -44,15 +44,33 @@ public interface FtpCmdReader extends Runnable, Abortable {
     void setCtx(FtpSessionContext ctx);
 
     /**
-     * Waits until another command is available.
+     * Waits until another command is available. Commands and unknown command lines are returned
+     * in the order they were received.
      * 
-     * @param timeout Timeout in milliseconds.
-     * @return The next FtpCmd to handle.
+     * @param timeout Timeout in milliseconds, 0 to wait without time limit.
+     * @return The next FtpCmd to handle or null, if the reader has terminated and all pending
+     *         commands have been consumed.
      * @throws FtpIllegalCmdException Thrown if an unknown command token is encountered.
      * @throws SocketTimeoutException Timeout error.
      */
     FtpCmd waitForNextCommand(int timeout) throws FtpIllegalCmdException, SocketTimeoutException;
 
+    /**
+     * Checks whether further commands have been received and are waiting to be processed. Called
+     * by the session thread.
+     * 
+     * @return True, if commands are pending.
+     */
+    boolean isCommandPending();
+
+    /**
+     * Called by the session thread after a command has been executed. A reader waiting for the
+     * command to modify the client socket resumes reading.
+     * 
+     * @param cmd The executed command.
+     */
+    void commandExecuted(FtpCmd cmd);
+
     /**
      * Getter method for the java bean <code>parser</code>.
      * 
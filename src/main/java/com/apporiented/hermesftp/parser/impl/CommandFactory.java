@@ -0,0 +1,145 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+import com.apporiented.hermesftp.cmd.FtpCmd;
+
+import org.springframework.beans.factory.Aware;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Creates instances of a single FTP command. The bean definition is resolved once. Plain prototype
+ * beans, i.e. beans without properties, constructor arguments, factory methods, lifecycle methods,
+ * container callbacks or annotations, are instantiated directly through their no-arg constructor.
+ * Any other bean is requested from the bean factory as before.
+ * 
+ * @author Lars Behnke
+ */
+public class CommandFactory {
+
+    private BeanFactory                     beanFactory;
+
+    private String                          beanName;
+
+    private Constructor<? extends FtpCmd>   constructor;
+
+    private CommandFactory(BeanFactory beanFactory, String beanName, Constructor<? extends FtpCmd> constructor) {
+        this.beanFactory = beanFactory;
+        this.beanName = beanName;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Resolves the bean definition of the passed command bean.
+     * 
+     * @param beanFactory The bean factory the command is defined in.
+     * @param beanName The name of the command bean.
+     * @return The factory.
+     */
+    public static CommandFactory create(BeanFactory beanFactory, String beanName) {
+        return new CommandFactory(beanFactory, beanName, resolveConstructor(beanFactory, beanName));
+    }
+
+    /**
+     * Creates a new command instance.
+     * 
+     * @return The command.
+     */
+    public FtpCmd newCommand() {
+        if (constructor == null) {
+            return (FtpCmd) beanFactory.getBean(beanName);
+        }
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Instantiation of command bean " + beanName + " failed.", e);
+        }
+    }
+
+    /**
+     * Checks whether command instances are created without the bean factory.
+     * 
+     * @return True, if the no-arg constructor is called directly.
+     */
+    public boolean isDirect() {
+        return constructor != null;
+    }
+
+    private static Constructor<? extends FtpCmd> resolveConstructor(BeanFactory beanFactory, String beanName) {
+        if (!(beanFactory instanceof ConfigurableListableBeanFactory)) {
+            return null;
+        }
+        ConfigurableListableBeanFactory clbf = (ConfigurableListableBeanFactory) beanFactory;
+        if (!clbf.containsBeanDefinition(beanName)) {
+            return null;
+        }
+        BeanDefinition def = clbf.getMergedBeanDefinition(beanName);
+        if (!def.isPrototype() || def.isAbstract() || def.hasPropertyValues()
+                || def.hasConstructorArgumentValues() || def.getFactoryMethodName() != null
+                || def.getInitMethodName() != null || def.getDestroyMethodName() != null) {
+            return null;
+        }
+        Class<?> beanClass = clbf.getType(beanName);
+        if (beanClass == null || !FtpCmd.class.isAssignableFrom(beanClass)
+                || Modifier.isAbstract(beanClass.getModifiers()) || Aware.class.isAssignableFrom(beanClass)
+                || InitializingBean.class.isAssignableFrom(beanClass)
+                || DisposableBean.class.isAssignableFrom(beanClass) || isAnnotated(beanClass)) {
+            return null;
+        }
+        try {
+            return beanClass.asSubclass(FtpCmd.class).getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAnnotated(Class<?> beanClass) {
+        for (Class<?> c = beanClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (c.getDeclaredAnnotations().length > 0) {
+                return true;
+            }
+            for (AnnotatedElement e : c.getDeclaredFields()) {
+                if (e.getDeclaredAnnotations().length > 0) {
+                    return true;
+                }
+            }
+            for (AnnotatedElement e : c.getDeclaredMethods()) {
+                if (e.getDeclaredAnnotations().length > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
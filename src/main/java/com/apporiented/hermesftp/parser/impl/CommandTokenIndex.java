@@ -0,0 +1,136 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import java.util.Collection;
+
+/**
+ * Precompiled, case insensitive index of FTP command tokens. The index is an open addressing hash
+ * table built once from the configured tokens. A lookup hashes the first whitespace delimited word
+ * of the command line in place, folding ASCII letters to upper case, and compares it with the
+ * stored token character by character. Neither the command line nor its arguments are copied.
+ * <p>
+ * Only complete words match: <code>LISTX</code> is not taken for <code>LIST</code>.
+ * 
+ * @author Lars Behnke
+ */
+public final class CommandTokenIndex {
+
+    private final String[] table;
+
+    private final int      mask;
+
+    private final int      maxTokenLength;
+
+    /**
+     * Constructor.
+     * 
+     * @param tokens The command tokens (upper case, without white space).
+     */
+    public CommandTokenIndex(Collection<String> tokens) {
+        super();
+        int size = Integer.highestOneBit(Math.max(1, tokens.size()) * 4 - 1) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+        int maxLen = 0;
+        for (String token : tokens) {
+            String upperToken = token.toUpperCase();
+            int idx = hash(upperToken, 0, upperToken.length()) & mask;
+            while (table[idx] != null && !matches(table[idx], upperToken, 0, upperToken.length())) {
+                idx = (idx + 1) & mask;
+            }
+            table[idx] = token;
+            maxLen = Math.max(maxLen, upperToken.length());
+        }
+        this.maxTokenLength = maxLen;
+    }
+
+    /**
+     * Returns the token the passed command line starts with. Leading white space is skipped.
+     * 
+     * @param cmdLine The command line.
+     * @return The token as passed to the constructor, or null if the first word is unknown.
+     */
+    public String find(CharSequence cmdLine) {
+        if (cmdLine == null) {
+            return null;
+        }
+        int len = cmdLine.length();
+        int start = 0;
+        while (start < len && isWhitespace(cmdLine.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        int h = 0;
+        while (end < len && !isWhitespace(cmdLine.charAt(end))) {
+            if (end - start >= maxTokenLength) {
+                return null;
+            }
+            h = 31 * h + toUpper(cmdLine.charAt(end));
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        int idx = h & mask;
+        String token;
+        while ((token = table[idx]) != null) {
+            if (matches(token, cmdLine, start, end)) {
+                return token;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(String token, CharSequence cmdLine, int start, int end) {
+        if (token.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (toUpper(token.charAt(i)) != toUpper(cmdLine.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + toUpper(s.charAt(i));
+        }
+        return h;
+    }
+
+    private static char toUpper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+}
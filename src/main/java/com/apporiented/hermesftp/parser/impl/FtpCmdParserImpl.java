@@ -24,6 +24,11 @@
 
 package com.apporiented.hermesftp.parser.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,9 +45,15 @@ import org.springframework.beans.factory.BeanFactoryAware;
  */
 public class FtpCmdParserImpl implements FtpCmdParser, BeanFactoryAware {
 
-    private Map<String, String> commands;
+    private Map<String, String>         commands;
 
-    private BeanFactory         factory;
+    private CommandTokenIndex           tokenIndex;
+
+    private BeanFactory                 factory;
+
+    private Map<String, CommandFactory> cmdFactories;
+
+    private volatile List<FtpCmd>       cmdList;
 
     /**
      * Constructor.
@@ -56,25 +67,15 @@ public class FtpCmdParserImpl implements FtpCmdParser, BeanFactoryAware {
      */
     public void setCommands(Map<String, String> map) {
         this.commands = map;
+        this.tokenIndex = new CommandTokenIndex(map.keySet());
+        resolveCommandFactories();
     }
 
     /**
      * {@inheritDoc}
      */
     public String findCommandToken(String cmdString) {
-        String result = null;
-        if (cmdString != null) {
-            cmdString = cmdString.trim().toUpperCase();
-            Set<Map.Entry<String, String>> entrySet = commands.entrySet();
-            for (Map.Entry<String, String> entry : entrySet) {
-                String token = entry.getKey();
-                if (cmdString.startsWith(token)) {
-                    result = token;
-                    break;
-                }
-            }
-        }
-        return result;
+        return tokenIndex.find(cmdString);
     }
 
     /**
@@ -82,9 +83,9 @@ public class FtpCmdParserImpl implements FtpCmdParser, BeanFactoryAware {
      */
     public FtpCmd createCommandByToken(String token) {
         FtpCmd result = null;
-        String cmdBeanName = commands.get(token);
-        if (cmdBeanName != null) {
-            result = (FtpCmd) factory.getBean(cmdBeanName);
+        CommandFactory cmdFactory = cmdFactories.get(token);
+        if (cmdFactory != null) {
+            result = cmdFactory.newCommand();
         }
         if (result != null) {
             result.setToken(token);
@@ -105,12 +106,46 @@ public class FtpCmdParserImpl implements FtpCmdParser, BeanFactoryAware {
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public List<FtpCmd> getCommandList() {
+        List<FtpCmd> list = cmdList;
+        if (list == null) {
+            String[] tokens = getCommandTokens();
+            Arrays.sort(tokens);
+            list = new ArrayList<FtpCmd>(tokens.length);
+            for (String token : tokens) {
+                list.add(createCommandByToken(token));
+            }
+            list = Collections.unmodifiableList(list);
+            cmdList = list;
+        }
+        return list;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void setBeanFactory(BeanFactory f) {
         this.factory = f;
+        resolveCommandFactories();
+    }
 
+    /**
+     * Resolves the bean definitions of all registered commands once both the command map and the
+     * bean factory are known.
+     */
+    private void resolveCommandFactories() {
+        if (commands == null || factory == null) {
+            return;
+        }
+        Map<String, CommandFactory> map = new HashMap<String, CommandFactory>();
+        for (Map.Entry<String, String> entry : commands.entrySet()) {
+            map.put(entry.getKey(), CommandFactory.create(factory, entry.getValue()));
+        }
+        cmdFactories = map;
+        cmdList = null;
     }
 
 }
@@ -26,18 +26,20 @@ package com.apporiented.hermesftp.parser.impl;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import com.apporiented.hermesftp.cmd.ClientSocketModifier;
 import com.apporiented.hermesftp.cmd.CmdListAware;
 import com.apporiented.hermesftp.cmd.FtpCmd;
+import com.apporiented.hermesftp.common.FtpConstants;
 import com.apporiented.hermesftp.common.FtpSessionContext;
 import com.apporiented.hermesftp.exception.FtpIllegalCmdException;
 import com.apporiented.hermesftp.parser.FtpCmdParser;
 import com.apporiented.hermesftp.parser.FtpCmdReader;
+import com.apporiented.hermesftp.utils.CmdLineReader;
+import com.apporiented.hermesftp.utils.SpscQueue;
+import com.apporiented.hermesftp.utils.ThreadUtils;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,26 +48,29 @@ import org.apache.commons.logging.LogFactory;
  * This Command reader thread listens for client input and mantains an FIFO list of incoming command
  * lines. The thread is active during the execution of transfer commands (STOR, RETR) and informs
  * these commands asynchronously when a status or abort is requested by the client.
+ * <p>
+ * Commands and unparsable lines are handed to the session through a single-producer/single-consumer
+ * queue in arrival order. The session thread parks until the next entry arrives; it neither polls
+ * nor takes a monitor, so a waiting virtual thread does not pin its carrier thread.
  * 
  * @author Lars Behnke
  */
-public class FtpCmdReaderThread extends Thread implements FtpCmdReader {
+public class FtpCmdReaderThread implements FtpCmdReader {
 
-    private static Log        log        = LogFactory.getLog(FtpCmdReaderThread.class);
+    private static Log              log   = LogFactory.getLog(FtpCmdReaderThread.class);
 
-    private FtpSessionContext ctx;
+    private FtpSessionContext       ctx;
 
-    private List<FtpCmd>      cmdQueue   = Collections.synchronizedList(new ArrayList<FtpCmd>());
+    /* Entries are either FtpCmd instances or, for unusable command lines, the exception to throw */
+    private final SpscQueue<Object> queue = new SpscQueue<Object>();
 
-    private List<String>      errorQueue = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean        terminated;
 
-    private boolean           terminated;
+    private FtpCmdParser            parser;
 
-    private FtpCmdParser      parser;
+    private volatile FtpCmd         lastCmd;
 
-    private final Object      cmdLock    = new Object();
-
-    private FtpCmd            lastCmd;
+    private volatile Thread         readerThread;
 
     /**
      * Constructor.
@@ -75,6 +80,16 @@ public class FtpCmdReaderThread extends Thread implements FtpCmdReader {
         this.terminated = false;
     }
 
+    /**
+     * Starts reading on a new thread. Virtual threads are used if the option
+     * <code>virtual.threads</code> is set and the runtime supports them.
+     */
+    public void start() {
+        boolean virtual = getCtx().getOptions().getBoolean(FtpConstants.OPT_VIRTUAL_THREADS, false);
+        String name = "FtpCmdReader-" + getCtx().getClientSocket().getInetAddress().getHostAddress();
+        ThreadUtils.newThread(this, name, virtual).start();
+    }
+
     /**
      * Reads commands issued by the client form the buffer. There two commands - STAT and ABOR -
      * that can be send during a file transfer operation. If the currently executed command (RETR,
@@ -84,34 +99,36 @@ public class FtpCmdReaderThread extends Thread implements FtpCmdReader {
      * @see java.lang.Runnable#run()
      */
     public void run() {
+        readerThread = Thread.currentThread();
         try {
             while (!isTerminated()) {
-                String cmdLine = getCtx().getClientCmdReader().readLine();
+                /* The reader is replaced when the control connection is switched to TLS */
+                CmdLineReader reader = getCtx().getClientCmdReader();
+                String cmdLine = reader.readLine();
                 if (cmdLine == null) {
                     log.debug("Client disconnected. Command reader is terminated.");
                     break;
                 }
-                if (lastCmd == null || !lastCmd.handleAsyncCmd(cmdLine)) {
+                if (reader.isTruncated()) {
+                    queue.offer(new FtpIllegalCmdException());
+                } else if (lastCmd == null || !lastCmd.handleAsyncCmd(cmdLine)) {
                     handleSyncCmd(cmdLine);
                 }
             }
         } catch (IOException e) {
             log.error(e.getMessage());
         } finally {
-            terminated = true;
+            abort();
         }
     }
 
     private void handleSyncCmd(String cmdLine) {
         FtpCmd cmd = null;
         String token = getParser().findCommandToken(cmdLine);
-        synchronized (cmdLock) {
-            if (token == null) {
-                enqueueErr(cmdLine);
-            } else {
-                cmd = enqueueCmd(cmdLine, token);
-            }
-            cmdLock.notifyAll();
+        if (token == null) {
+            queue.offer(new FtpIllegalCmdException(cmdLine));
+        } else {
+            cmd = enqueueCmd(cmdLine, token);
         }
         if (cmd instanceof ClientSocketModifier) {
             waitUntilSocketModified(cmd);
@@ -119,115 +136,80 @@ public class FtpCmdReaderThread extends Thread implements FtpCmdReader {
 
     }
 
+    /**
+     * Parks the reader until the session has executed the command, since the next line may have to
+     * be read from the modified socket. The reader is unparked by {@link #commandExecuted(FtpCmd)}
+     * or {@link #abort()}.
+     */
     private void waitUntilSocketModified(FtpCmd cmd) {
         ClientSocketModifier sockCmd = (ClientSocketModifier) cmd;
-        while (!sockCmd.socketModified()) {
-            try {
-                synchronized (sockCmd) {
-                    sockCmd.wait();
-                }
-            } catch (InterruptedException e1) {
-                log.error(e1);
-            }
+        while (!sockCmd.socketModified() && !isTerminated()) {
+            LockSupport.park(this);
         }
     }
 
     private FtpCmd enqueueCmd(String cmdLine, String token) {
         FtpCmd cmd = getParser().createCommandByToken(token);
         if (cmd == null) {
-            enqueueErr(cmdLine);
+            queue.offer(new FtpIllegalCmdException(cmdLine));
         } else {
 
             if (cmd instanceof CmdListAware) {
                 CmdListAware fla = (CmdListAware) cmd;
-                fla.setList(createCommandList());
+                fla.setList(getParser().getCommandList());
             }
 
             String args = cmdLine.substring(token.length()).trim();
             cmd.setArguments(args);
-            cmdQueue.add(cmd);
+            queue.offer(cmd);
         }
         return cmd;
     }
 
-    private List<FtpCmd> createCommandList() {
-        String[] tokens = getParser().getCommandTokens();
-        Arrays.sort(tokens);
-        List<FtpCmd> cmdList = new ArrayList<FtpCmd>();
-        for (String token : tokens) {
-            cmdList.add(getParser().createCommandByToken(token));
+    /**
+     * {@inheritDoc}
+     */
+    public FtpCmd waitForNextCommand(int timeout) throws FtpIllegalCmdException, SocketTimeoutException {
+        Object next;
+        long nanos = timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+        long deadline = System.nanoTime() + nanos;
+        while (true) {
+            try {
+                next = queue.take(nanos);
+                break;
+            } catch (InterruptedException e) {
+                log.debug("Thread " + Thread.currentThread().getName() + " has been interrupted.");
+                if (timeout > 0) {
+                    nanos = deadline - System.nanoTime();
+                }
+            }
         }
-        return cmdList;
-    }
-
-    private void enqueueErr(String cmdLine) {
-        errorQueue.add(cmdLine);
-    }
-
-    private boolean cmdAvailable() {
-        return cmdQueue.size() > 0;
-    }
-
-    private boolean errAvailable() {
-        return errorQueue.size() > 0;
-    }
-
-    private FtpCmd consumeNextCommand() {
-        return (FtpCmd) consumeNext(cmdQueue);
-    }
-
-    private String consumeNextError() {
-        return (String) consumeNext(errorQueue);
+        if (next == null && !queue.isClosed()) {
+            throw new SocketTimeoutException("Command reader timeout.");
+        }
+        if (next instanceof FtpIllegalCmdException) {
+            throw (FtpIllegalCmdException) next;
+        }
+        FtpCmd cmd = (FtpCmd) next;
+        lastCmd = cmd;
+        return cmd;
     }
 
     /**
-     * Gets next Object from the queue. Has to be called within a synchronized method.
-     * 
-     * @param queue The list that stores the objects.
-     * @return The next Object.
+     * {@inheritDoc}
      */
-    private Object consumeNext(List<?> queue) {
-        Object result;
-        if (queue.size() > 0) {
-            result = queue.size() > 0 ? queue.get(0) : null;
-            queue.remove(0);
-        } else {
-            result = null;
-        }
-
-        return result;
+    public boolean isCommandPending() {
+        return !queue.isEmpty();
     }
 
     /**
      * {@inheritDoc}
      */
-    public FtpCmd waitForNextCommand(int timeout) throws FtpIllegalCmdException, SocketTimeoutException {
-        FtpCmd cmd;
-        synchronized (cmdLock) {
-            long startStamp = System.currentTimeMillis();
-            while (!cmdAvailable() && !errAvailable()) {
-                try {
-                    cmdLock.wait(timeout);
-                } catch (InterruptedException e) {
-                    log.debug("Thread " + this.getName() + " has been interrupted.");
-                }
-                if (startStamp + timeout < System.currentTimeMillis()) {
-                    throw new SocketTimeoutException("Command reader timeout.");
-                }
-                if (isTerminated()) {
-                    break;
-                }
-            }
-            String err = consumeNextError();
-            if (err != null) {
-                throw new FtpIllegalCmdException(err);
-            }
-
-            cmd = consumeNextCommand();
-            lastCmd = cmd;
-            cmdLock.notifyAll();
+    public void commandExecuted(FtpCmd cmd) {
+        Thread t = readerThread;
+        if (t != null && cmd instanceof ClientSocketModifier) {
+            LockSupport.unpark(t);
         }
-        return cmd;
     }
 
     /**
@@ -274,6 +256,11 @@ public class FtpCmdReaderThread extends Thread implements FtpCmdReader {
      */
     public void abort() {
         terminated = true;
+        queue.close();
+        Thread t = readerThread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
     }
 
 }
@@ -29,10 +29,15 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+import javax.net.ssl.SSLSocket;
 
 import com.apporiented.hermesftp.common.FtpConstants;
 import com.apporiented.hermesftp.common.FtpEventListener;
@@ -41,8 +46,10 @@ import com.apporiented.hermesftp.common.FtpSessionContext;
 import com.apporiented.hermesftp.session.FtpSession;
 import com.apporiented.hermesftp.usermanager.UserManager;
 import com.apporiented.hermesftp.utils.AbstractAppAwareBean;
+import com.apporiented.hermesftp.utils.HashedWheelTimer;
 import com.apporiented.hermesftp.utils.IOUtils;
 import com.apporiented.hermesftp.utils.NetUtils;
+import com.apporiented.hermesftp.utils.ReplyCatalog;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -55,29 +62,45 @@ import org.apache.commons.logging.LogFactory;
 public abstract class AbstractFtpServer extends AbstractAppAwareBean implements FtpServer, FtpConstants,
         FtpEventListener {
 
-    private static final int       DEFAULT_TIMEOUT           = 3000;
+    private static final int             DEFAULT_QUEUE_TIMEOUT     = 10;
 
-    private static Log             log                       = LogFactory.getLog(FtpServer.class);
+    private static final int             TIMER_TICK_MILLIS         = 100;
 
-    private List<FtpSession>       sessions                  = new ArrayList<FtpSession>();
+    private static final int             TIMER_WHEEL_SIZE          = 512;
 
-    private boolean                terminated;
+    private static Log                   log                       = LogFactory.getLog(FtpServer.class);
 
-    private FtpServerOptions       options;
+    private volatile boolean             terminated;
 
-    private String                 resources;
-    
-    private String                 name;
+    private volatile ServerSocket        serverSocket;
+
+    private FtpServerOptions             options;
+
+    private String                       resources;
+
+    private volatile ResourceBundle      resourceBundle;
+
+    private String                       name;
+
+    private int                          status                    = SERVER_STATUS_UNDEF;
 
-    private int                    status                    = SERVER_STATUS_UNDEF;
+    private UserManager                  userManager;
 
-    private UserManager            userManager;
+    private List<FtpEventListener>       ftpEventListeners         = new ArrayList<FtpEventListener>();
 
-    private List<FtpEventListener> ftpEventListeners         = new ArrayList<FtpEventListener>();
+    private ConnectionLimiter            connectionLimiter;
 
-    private int                    connectionCountHWMark;
+    private BlockingQueue<QueuedClient>  connectionQueue;
 
-    private Date                   connectionCountHWMarkDate = new Date();
+    private SessionRegistry              sessionRegistry           = new SessionRegistry();
+
+    private BandwidthShaper              bandwidthShaper;
+
+    private HashedWheelTimer             timer;
+
+    private PassivePortManager           passivePortManager;
+
+    private ListingCache                 listingCache;
 
     /**
      * Creates a server socket. Depending on the server implementation this can be a SSL or a
@@ -96,10 +119,21 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
     protected abstract FtpSessionContext createFtpContext();
 
     /**
-     * Halts the server.
+     * Creates the session object that serves an accepted client connection. By default, the
+     * session is obtained from the application context.
+     * 
+     * @return The session.
+     */
+    protected FtpSession createSession() {
+        return (FtpSession) getApplicationContext().getBean(BEAN_SESSION);
+    }
+
+    /**
+     * Halts the server. The server socket is closed, which releases a pending accept call.
      */
     public void abort() {
         this.terminated = true;
+        IOUtils.closeGracefully(serverSocket);
     }
 
     /**
@@ -125,18 +159,30 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      */
     public void run() {
         setStatus(SERVER_STATUS_INIT);
-        ServerSocket serverSocket = null;
+        timer = new HashedWheelTimer(getName() + "-timer", TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE);
+        timer.start();
         try {
             getUserManager().load();
             serverSocket = createServerSocket();
-            serverSocket.setSoTimeout(DEFAULT_TIMEOUT);
+            if (isTerminated()) {
+                IOUtils.closeGracefully(serverSocket);
+            }
+            initAdmissionControl();
+            bandwidthShaper = new BandwidthShaper(getOptions().getInt(OPT_SERVER_DOWNLOAD_RATE, -1),
+                getOptions().getInt(OPT_SERVER_UPLOAD_RATE, -1));
+            passivePortManager = PassivePortManager.open(getOptions(),
+                getOptions().getBoolean(OPT_PASSIVE_PREBIND, false));
+            listingCache = ListingCache.open(getOptions());
             setStatus(SERVER_STATUS_READY);
             while (!isTerminated()) {
                 Socket clientSocket;
                 try {
                     clientSocket = serverSocket.accept();
-                } catch (SocketTimeoutException e) {
-                    continue;
+                } catch (IOException e) {
+                    if (isTerminated()) {
+                        break;
+                    }
+                    throw e;
                 }
 
                 /* Check blacklisted IP v4 addresses */
@@ -155,18 +201,13 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
                     continue;
                 }
 
-                /* Initialize session context */
-                FtpSessionContext ctx = createFtpContext();
-                ctx.check();
-                ctx.setCreationTime(new Date());
-                ctx.setClientSocket(clientSocket);
-                FtpSession session = (FtpSession) getApplicationContext().getBean(BEAN_SESSION);
-                session.setFtpContext(ctx);
+                /* Check connection limits */
+                if (!connectionLimiter.tryAcquire(clientAddr)) {
+                    enqueueClient(clientSocket);
+                    continue;
+                }
 
-                /* Start session */
-                log.debug("Accepting connection to " + clientAddr.getHostAddress());
-                session.start();
-                registerSession(session);
+                startSession(clientSocket);
 
             }
             setStatus(SERVER_STATUS_HALTED);
@@ -175,49 +216,188 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
             log.error(e, e);
         } finally {
             terminateAllClientSessions();
+            rejectQueuedClients();
             IOUtils.closeGracefully(serverSocket);
+            if (passivePortManager != null) {
+                passivePortManager.close();
+            }
+            if (listingCache != null) {
+                listingCache.close();
+            }
+            timer.stop();
         }
 
     }
 
-    private void registerSession(FtpSession session) {
-        synchronized (this) {
-            sessions.add(session);
-            int sessionCount = getConnectionCount();
-            if (sessionCount >= connectionCountHWMark) {
-                connectionCountHWMark = sessionCount;
-                connectionCountHWMarkDate = new Date();
+    private void initAdmissionControl() {
+        int maxTotal = getOptions().getInt(OPT_MAX_CONNECTIONS, 0);
+        int maxPerAddress = getOptions().getInt(OPT_MAX_CONNECTIONS_PER_IP, 0);
+        int queueSize = getOptions().getInt(OPT_CONNECTION_QUEUE_SIZE, 0);
+        connectionLimiter = new ConnectionLimiter(maxTotal, maxPerAddress);
+        if (queueSize > 0) {
+            connectionQueue = new ArrayBlockingQueue<QueuedClient>(queueSize);
+        } else {
+            connectionQueue = new SynchronousQueue<QueuedClient>();
+        }
+    }
+
+    /**
+     * Queues a client that exceeds the connection limits. The client is rejected if the queue is
+     * full or no slot becomes available in time.
+     * 
+     * @param clientSocket The client socket.
+     */
+    private void enqueueClient(Socket clientSocket) {
+        final QueuedClient client = new QueuedClient(clientSocket);
+        if (!connectionQueue.offer(client)) {
+            rejectClient(clientSocket);
+            return;
+        }
+        int timeout = getOptions().getInt(OPT_CONNECTION_QUEUE_TIMEOUT, DEFAULT_QUEUE_TIMEOUT);
+        client.setTimeout(timer.schedule(new Runnable() {
+            public void run() {
+                if (connectionQueue.remove(client)) {
+                    rejectClient(client.getSocket());
+                }
+            }
+        }, timeout * MILLI));
+        admitQueuedClients();
+    }
+
+    /**
+     * Initializes the session context and starts a session for an admitted client. The
+     * connection slot has to be acquired before. If the session cannot be started, the slot is
+     * released and the client socket is closed.
+     * 
+     * @param clientSocket The client socket.
+     * @throws IOException Thrown if the session context cannot be set up.
+     */
+    private void startSession(Socket clientSocket) throws IOException {
+        InetAddress clientAddr = clientSocket.getInetAddress();
+        FtpSession session = null;
+        boolean registered = false;
+        boolean started = false;
+        try {
+            /* Initialize session context */
+            FtpSessionContext ctx = createFtpContext();
+            ctx.check();
+            ctx.setCreationTime(new Date());
+            ctx.setClientSocket(clientSocket);
+            if (clientSocket instanceof SSLSocket) {
+                ((SSLSocket) clientSocket).addHandshakeCompletedListener(getOptions().getTlsSessionTracker());
+            }
+            ctx.setAttribute(ATTR_BANDWIDTH_SHAPER, bandwidthShaper);
+            ctx.setAttribute(ATTR_TIMER, timer);
+            ctx.setAttribute(ATTR_PASSIVE_PORTS, passivePortManager);
+            ctx.setAttribute(ATTR_LISTING_CACHE, listingCache);
+            session = createSession();
+            session.setFtpContext(ctx);
+
+            /* Start session */
+            log.debug("Accepting connection to " + clientAddr.getHostAddress());
+            sessionRegistry.register(session, clientAddr);
+            registered = true;
+            session.start();
+            started = true;
+        } finally {
+            if (!started) {
+                if (!registered || sessionRegistry.unregister(session) != null) {
+                    connectionLimiter.release(clientAddr);
+                }
+                IOUtils.closeGracefully(clientSocket);
+            }
+        }
+    }
+
+    /**
+     * Starts sessions for queued clients as long as connection slots are available.
+     */
+    private void admitQueuedClients() {
+        if (isTerminated()) {
+            return;
+        }
+        for (QueuedClient client : connectionQueue) {
+            InetAddress clientAddr = client.getSocket().getInetAddress();
+            if (!connectionLimiter.tryAcquire(clientAddr)) {
+                continue;
+            }
+            if (!connectionQueue.remove(client)) {
+                connectionLimiter.release(clientAddr);
+                continue;
+            }
+            client.cancelTimeout();
+            try {
+                startSession(client.getSocket());
+            } catch (IOException e) {
+                log.error("Queued client could not be admitted: " + e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Queued client could not be admitted: " + e.getMessage());
             }
         }
     }
 
+    private void rejectQueuedClients() {
+        QueuedClient client;
+        while ((client = connectionQueue.poll()) != null) {
+            rejectClient(client.getSocket());
+        }
+    }
+
+    /**
+     * Responds 421 to a client that cannot be served and closes the connection.
+     * 
+     * @param clientSocket The client socket.
+     */
+    private void rejectClient(Socket clientSocket) {
+        log.info("Client " + clientSocket.getInetAddress().getHostAddress()
+            + " rejected (too many connections).");
+        try {
+            String msg = ReplyCatalog.getInstance(getResourceBundle()).getString(MSG421) + "\r\n";
+            clientSocket.getOutputStream().write(msg.getBytes());
+            clientSocket.getOutputStream().flush();
+        } catch (IOException e) {
+            log.debug(e.getMessage());
+        } finally {
+            IOUtils.closeGracefully(clientSocket);
+        }
+    }
+
     /**
      * Getter method for the java bean <code>connectionCount</code>.
      * 
      * @return Returns the value of the java bean <code>connectionCount</code>.
      */
     public int getConnectionCount() {
-        synchronized (this) {
-            cleanUpSessions();
-            return sessions.size();
-        }
+        return sessionRegistry.getCount();
     }
 
     /**
      * {@inheritDoc}
      */
     public void cleanUpSessions() {
-        List<FtpSession> newList = new ArrayList<FtpSession>();
-        for (FtpSession session : sessions) {
-            if (!session.isTerminated()) {
-                newList.add(session);
+        for (FtpSession session : sessionRegistry.getSessions()) {
+            if (session.isTerminated()) {
+                unregisterSession(session);
             }
         }
-        sessions = newList;
+    }
+
+    /**
+     * Removes a session from the registry and frees its connection slot. Only the first call for
+     * a session has an effect.
+     * 
+     * @param session The session.
+     */
+    private void unregisterSession(FtpSession session) {
+        InetAddress clientAddr = sessionRegistry.unregister(session);
+        if (clientAddr != null) {
+            connectionLimiter.release(clientAddr);
+            admitQueuedClients();
+        }
     }
 
     private void terminateAllClientSessions() {
-        for (FtpSession session : sessions) {
+        for (FtpSession session : sessionRegistry.getSessions()) {
             session.abort();
         }
     }
@@ -248,6 +428,22 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      */
     public void setResources(String resources) {
         this.resources = resources;
+        this.resourceBundle = null;
+    }
+
+    /**
+     * Returns the bundle containing the server messages. The bundle is looked up only once and
+     * shared by all sessions.
+     * 
+     * @return The resource bundle.
+     */
+    protected ResourceBundle getResourceBundle() {
+        ResourceBundle bundle = resourceBundle;
+        if (bundle == null) {
+            bundle = ResourceBundle.getBundle(getResources());
+            resourceBundle = bundle;
+        }
+        return bundle;
     }
 
     /**
@@ -346,9 +542,7 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      * {@inheritDoc}
      */
     public void sessionClosed(Object sessionObj) {
-        synchronized (this) {
-            sessions.remove(sessionObj);
-        }
+        unregisterSession((FtpSession) sessionObj);
         for (FtpEventListener listener : ftpEventListeners) {
             listener.sessionOpened(sessionObj);
         }
@@ -359,21 +553,40 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      * {@inheritDoc}
      */
     public List<FtpSession> getSessions() {
-        return sessions;
+        return sessionRegistry.getSessions();
+    }
+
+    /**
+     * Returns the bandwidth shaper of the running server. Its schedulers provide the QoS classes
+     * together with their throughput counters; weights may be adjusted at runtime.
+     *
+     * @return The shaper, or null if the server has not been started.
+     */
+    public BandwidthShaper getBandwidthShaper() {
+        return bandwidthShaper;
+    }
+
+    /**
+     * Returns the timer serving the idle and queue timeouts of the running server.
+     *
+     * @return The timer, or null if the server has not been started.
+     */
+    public HashedWheelTimer getTimer() {
+        return timer;
     }
 
     /**
      * {@inheritDoc}
      */
     public int getConnectionCountHWMark() {
-        return connectionCountHWMark;
+        return sessionRegistry.getHighWaterMark();
     }
 
     /**
      * {@inheritDoc}
      */
     public Date getConnectionCountHWMarkDate() {
-        return connectionCountHWMarkDate;
+        return sessionRegistry.getHighWaterMarkDate();
     }
 
     /**
@@ -382,7 +595,7 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      * @param connectionCountHWMark Value for <code>connectionCountHWMark</code>.
      */
     public void setConnectionCountHWMark(int connectionCountHWMark) {
-        this.connectionCountHWMark = connectionCountHWMark;
+        sessionRegistry.setHighWaterMark(connectionCountHWMark, getConnectionCountHWMarkDate());
     }
 
     /**
@@ -391,7 +604,7 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
      * @param connectionCountHWMarkDate Value for <code>connectionCountHWMarkDate</code>.
      */
     public void setConnectionCountHWMarkDate(Date connectionCountHWMarkDate) {
-        this.connectionCountHWMarkDate = connectionCountHWMarkDate;
+        sessionRegistry.setHighWaterMark(getConnectionCountHWMark(), connectionCountHWMarkDate);
     }
 
     
@@ -404,4 +617,33 @@ public abstract class AbstractFtpServer extends AbstractAppAwareBean implements
         this.name = name;
     }
 
+    /**
+     * Client connection waiting for a free session slot.
+     */
+    private static class QueuedClient {
+
+        private Socket                            socket;
+
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        public QueuedClient(Socket socket) {
+            this.socket = socket;
+        }
+
+        public Socket getSocket() {
+            return socket;
+        }
+
+        public void setTimeout(HashedWheelTimer.Timeout timeout) {
+            this.timeout = timeout;
+        }
+
+        public void cancelTimeout() {
+            HashedWheelTimer.Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,208 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.apporiented.hermesftp.common.FtpConstants;
+import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.usermanager.model.GroupData;
+import com.apporiented.hermesftp.usermanager.model.GroupDataList;
+import com.apporiented.hermesftp.utils.TokenBucket;
+
+/**
+ * Hierarchical bandwidth shaping. For each direction the server maintains a tree of token
+ * buckets: server-wide, group, user and session. All transfers of a session, of a user and of a
+ * group share the respective buckets. The limits are configured as follows (KB/s, negative values
+ * mean unlimited):
+ * <ul>
+ * <li>server: options <code>server.download.rate</code> and <code>server.upload.rate</code></li>
+ * <li>group: group limits <code>Group download rate</code> and <code>Group upload rate</code></li>
+ * <li>user: group limits <code>Download rate</code> and <code>Upload rate</code></li>
+ * <li>session: the rate returned by the session context, i.e. the maximum of the user limit and
+ * the options <code>max.download.rate</code> and <code>max.upload.rate</code></li>
+ * </ul>
+ * If a user is member of several groups, the group granting the highest rate is chosen.
+ * <p>
+ * Between the server and the group level, the capacity of the server is shared among QoS classes
+ * by a {@link FairShareScheduler}. Each group forms a class, configured by the group limits
+ * <code>QoS weight</code> (default 1) and <code>QoS min rate</code> (KB/s, default 0). Users who are
+ * members of several groups belong to the class with the highest weight. Fair sharing requires the
+ * server rate to be limited.
+ * 
+ * @author Lars Behnke
+ */
+public class BandwidthShaper implements FtpConstants {
+
+    private static final String                      DOWNLOAD          = "download:";
+
+    private static final String                      UPLOAD            = "upload:";
+
+    private static final String                      DEFAULT_QOS_CLASS = "default";
+
+    private final TokenBucket                        serverDownload;
+
+    private final TokenBucket                        serverUpload;
+
+    private final FairShareScheduler                 downloadScheduler;
+
+    private final FairShareScheduler                 uploadScheduler;
+
+    private final ConcurrentMap<String, TokenBucket> groupBuckets      = new ConcurrentHashMap<String, TokenBucket>();
+
+    private final ConcurrentMap<String, TokenBucket> userBuckets       = new ConcurrentHashMap<String, TokenBucket>();
+
+    /**
+     * Constructor.
+     * 
+     * @param serverDownloadRate The server-wide download rate in KB/s (negative: unlimited).
+     * @param serverUploadRate The server-wide upload rate in KB/s (negative: unlimited).
+     */
+    public BandwidthShaper(long serverDownloadRate, long serverUploadRate) {
+        super();
+        this.serverDownload = new TokenBucket(null, toBytes(serverDownloadRate));
+        this.serverUpload = new TokenBucket(null, toBytes(serverUploadRate));
+        this.downloadScheduler = new FairShareScheduler(serverDownload);
+        this.uploadScheduler = new FairShareScheduler(serverUpload);
+    }
+
+    /**
+     * Returns the scheduler sharing the server's download capacity among the QoS classes.
+     * 
+     * @return The scheduler.
+     */
+    public FairShareScheduler getDownloadScheduler() {
+        return downloadScheduler;
+    }
+
+    /**
+     * Returns the scheduler sharing the server's upload capacity among the QoS classes.
+     * 
+     * @return The scheduler.
+     */
+    public FairShareScheduler getUploadScheduler() {
+        return uploadScheduler;
+    }
+
+    /**
+     * Returns the bucket of the passed session. The bucket is created on first access and linked
+     * to the buckets of the current user and group. The rates are refreshed on each call.
+     * 
+     * @param ctx The session context.
+     * @param upload True for the upload direction, false for downloads.
+     * @return The session bucket.
+     */
+    public TokenBucket getSessionBucket(FtpSessionContext ctx, boolean upload) {
+        String attrName = upload ? ATTR_UPLOAD_BUCKET : ATTR_DOWNLOAD_BUCKET;
+        TokenBucket userBucket = getUserBucket(ctx, upload);
+        long rate = upload ? ctx.getMaxUploadRate() : ctx.getMaxDownloadRate();
+        TokenBucket bucket = (TokenBucket) ctx.getAttribute(attrName);
+        if (bucket == null || bucket.getParent() != userBucket) {
+            bucket = new TokenBucket(userBucket, toBytes(rate));
+            ctx.setAttribute(attrName, bucket);
+        } else {
+            bucket.setRate(toBytes(rate));
+        }
+        return bucket;
+    }
+
+    private TokenBucket getUserBucket(FtpSessionContext ctx, boolean upload) {
+        GroupDataList groups = (GroupDataList) ctx.getAttribute(ATTR_GROUP_DATA);
+        if (groups == null) {
+            return upload ? serverUpload : serverDownload;
+        }
+        long configVersion = ctx.getUserManager() == null ? 0 : ctx.getUserManager().getConfigVersion();
+        TokenBucket groupBucket = getGroupBucket(groups, upload, configVersion);
+        long rate = toBytes(groups.getUpperLimit(upload ? STAT_UPLOAD_RATE : STAT_DOWNLOAD_RATE));
+        String key = (upload ? UPLOAD : DOWNLOAD) + ctx.getUser();
+        TokenBucket bucket = userBuckets.get(key);
+        if (bucket == null) {
+            TokenBucket newBucket = new TokenBucket(groupBucket, rate);
+            bucket = userBuckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        } else if (bucket.getParent() != groupBucket) {
+            /* Group membership or group limits have changed */
+            bucket = new TokenBucket(groupBucket, rate);
+            userBuckets.put(key, bucket);
+        }
+        bucket.setRate(rate);
+        return bucket;
+    }
+
+    private TokenBucket getGroupBucket(GroupDataList groups, boolean upload, long configVersion) {
+        FairShareScheduler.QosClass classBucket = getQosClass(groups, upload, configVersion);
+        String limitName = upload ? STAT_GROUP_UPLOAD_RATE : STAT_GROUP_DOWNLOAD_RATE;
+        GroupData group = groups.getLimitingGroup(limitName);
+        if (group == null) {
+            return classBucket;
+        }
+        String key = (upload ? UPLOAD : DOWNLOAD) + group.getName() + "/" + classBucket.getName();
+        long rate = toBytes(group.getLimit(limitName));
+        TokenBucket bucket = groupBuckets.get(key);
+        if (bucket == null) {
+            TokenBucket newBucket = new TokenBucket(classBucket, rate);
+            bucket = groupBuckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        bucket.setRate(rate);
+        return bucket;
+    }
+
+    private FairShareScheduler.QosClass getQosClass(GroupDataList groups, boolean upload,
+                                                    long configVersion) {
+        GroupData qosGroup = null;
+        long weight = 1;
+        for (GroupData group : groups.getGroups()) {
+            long groupWeight = group.getLimit(STAT_QOS_WEIGHT);
+            if (groupWeight != Long.MAX_VALUE && (qosGroup == null || groupWeight > weight)) {
+                qosGroup = group;
+                weight = groupWeight;
+            }
+        }
+        FairShareScheduler scheduler = upload ? uploadScheduler : downloadScheduler;
+        if (qosGroup == null) {
+            return scheduler.getQosClass(DEFAULT_QOS_CLASS, weight, 0, configVersion);
+        }
+        long minRate = toBytes(qosGroup.getLimit(STAT_QOS_MIN_RATE));
+        return scheduler.getQosClass(qosGroup.getName(), weight, Math.max(0, minRate), configVersion);
+    }
+
+    /**
+     * Converts a limit in KB/s to bytes per second. Negative values and the unlimited marker
+     * <code>Long.MAX_VALUE</code> of the group limits are mapped to {@link TokenBucket#UNLIMITED}.
+     */
+    private static long toBytes(long kbPerSecond) {
+        if (kbPerSecond < 0 || kbPerSecond >= Long.MAX_VALUE / 1024) {
+            return TokenBucket.UNLIMITED;
+        }
+        return kbPerSecond * 1024;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for client connections. Keeps track of the number of concurrent sessions,
+ * both in total and per client address, using atomic counters only. A limit of zero or less means
+ * unlimited.
+ * 
+ * @author Lars Behnke
+ */
+public class ConnectionLimiter {
+
+    private final AtomicInteger                        total      = new AtomicInteger();
+
+    private final ConcurrentMap<String, AtomicInteger> perAddress = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final int                                  maxTotal;
+
+    private final int                                  maxPerAddress;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxTotal Maximum number of concurrent sessions.
+     * @param maxPerAddress Maximum number of concurrent sessions per client address.
+     */
+    public ConnectionLimiter(int maxTotal, int maxPerAddress) {
+        super();
+        this.maxTotal = maxTotal;
+        this.maxPerAddress = maxPerAddress;
+    }
+
+    /**
+     * Reserves a session slot for the passed client.
+     * 
+     * @param addr The client address.
+     * @return True, if the slot was granted. False, if one of the limits has been reached.
+     */
+    public boolean tryAcquire(InetAddress addr) {
+        if (!increment(total, maxTotal)) {
+            return false;
+        }
+        if (maxPerAddress > 0 && !acquireAddress(addr.getHostAddress())) {
+            total.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a slot previously granted by {@link #tryAcquire(InetAddress)}.
+     * 
+     * @param addr The client address.
+     */
+    public void release(InetAddress addr) {
+        if (maxPerAddress > 0) {
+            String key = addr.getHostAddress();
+            AtomicInteger counter = perAddress.get(key);
+            if (counter != null && counter.decrementAndGet() == 0 && counter.compareAndSet(0, -1)) {
+                perAddress.remove(key, counter);
+            }
+        }
+        total.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of granted slots.
+     * 
+     * @return The number of sessions.
+     */
+    public int getCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the number of granted slots for a client address.
+     * 
+     * @param addr The client address.
+     * @return The number of sessions.
+     */
+    public int getCount(InetAddress addr) {
+        AtomicInteger counter = perAddress.get(addr.getHostAddress());
+        return counter == null ? 0 : Math.max(0, counter.get());
+    }
+
+    private boolean acquireAddress(String key) {
+        while (true) {
+            AtomicInteger counter = perAddress.get(key);
+            if (counter == null) {
+                if (perAddress.putIfAbsent(key, new AtomicInteger(1)) == null) {
+                    return true;
+                }
+                continue;
+            }
+            int current = counter.get();
+            if (current < 0) {
+                /* Counter is being dropped by release(), retry with a fresh one. */
+                perAddress.remove(key, counter);
+                continue;
+            }
+            if (current >= maxPerAddress) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean increment(AtomicInteger counter, int limit) {
+        while (true) {
+            int current = counter.get();
+            if (limit > 0 && current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.apporiented.hermesftp.utils.TokenBucket;
+
+/**
+ * Weighted fair sharing of a saturated link between QoS classes. Each class owns a token bucket
+ * below the bucket representing the link capacity. The scheduler periodically splits the capacity
+ * among the classes that transferred data recently: first every active class receives its minimum
+ * guarantee (scaled down if the guarantees exceed the capacity), then the remainder is divided in
+ * proportion to the weights. The division is work-conserving: a class that used less than half of
+ * its rate during the last interval gets no more than twice what it used, and the capacity it
+ * leaves is divided among the other classes. Idle classes drop out after a short while, so their
+ * share is passed on to the active classes. Weights and guarantees may be changed at any time; they
+ * take effect with the next rebalancing. A change at runtime stays in effect until the user
+ * configuration is reloaded. If the capacity is unlimited, the classes are not restricted.
+ * 
+ * @author Lars Behnke
+ */
+public class FairShareScheduler {
+
+    /**
+     * Time after which a class without traffic is considered idle.
+     */
+    private static final long                     ACTIVE_NANOS    = 200000000L;
+
+    /**
+     * Interval of rebalancing the class rates.
+     */
+    private static final long                     REBALANCE_NANOS = 50000000L;
+
+    private static final long                     NANOS           = 1000000000L;
+
+    /**
+     * Fraction of the fair share a class is granted at least, however little it used.
+     */
+    private static final int                      MIN_SHARE_DIV   = 8;
+
+    private final TokenBucket                     link;
+
+    private final ConcurrentMap<String, QosClass> classes         = new ConcurrentHashMap<String, QosClass>();
+
+    private volatile long                         nextRebalance;
+
+    private long                                  lastRebalance   = System.nanoTime();
+
+    /**
+     * Constructor.
+     * 
+     * @param link The bucket that represents the capacity to be shared.
+     */
+    public FairShareScheduler(TokenBucket link) {
+        super();
+        this.link = link;
+    }
+
+    /**
+     * Returns the QoS class of the passed name. The class is created with the passed weight and
+     * guarantee if it does not exist yet. An existing class keeps its parameters.
+     * 
+     * @param name The name of the class.
+     * @param weight The weight (values below 1 are treated as 1).
+     * @param minRate The guaranteed rate in bytes per second.
+     * @return The class.
+     */
+    public QosClass getQosClass(String name, long weight, long minRate) {
+        return getQosClass(name, weight, minRate, 0);
+    }
+
+    /**
+     * Returns the QoS class of the passed name. The class is created if it does not exist yet.
+     * Weight and guarantee of an existing class are only updated if they were configured by
+     * another version of the user configuration, so that changes made by
+     * {@link #setQosParameters(String, long, long)} are not reset by the next transfer.
+     * 
+     * @param name The name of the class.
+     * @param weight The configured weight (values below 1 are treated as 1).
+     * @param minRate The configured guaranteed rate in bytes per second.
+     * @param configVersion The version of the user configuration the parameters are taken from.
+     * @return The class.
+     */
+    public QosClass getQosClass(String name, long weight, long minRate, long configVersion) {
+        QosClass qosClass = classes.get(name);
+        if (qosClass == null) {
+            QosClass newClass = new QosClass(name, weight, minRate, configVersion);
+            qosClass = classes.putIfAbsent(name, newClass);
+            if (qosClass == null) {
+                qosClass = newClass;
+                rebalance(System.nanoTime());
+            }
+        }
+        if (qosClass.configVersion != configVersion) {
+            synchronized (this) {
+                if (qosClass.configVersion != configVersion) {
+                    qosClass.setWeight(weight);
+                    qosClass.setMinRate(minRate);
+                    qosClass.configVersion = configVersion;
+                }
+            }
+        }
+        return qosClass;
+    }
+
+    /**
+     * Returns the QoS classes, including their throughput counters.
+     * 
+     * @return The classes.
+     */
+    public Collection<QosClass> getQosClasses() {
+        return Collections.unmodifiableCollection(new ArrayList<QosClass>(classes.values()));
+    }
+
+    /**
+     * Changes weight and guarantee of an existing class at runtime. The change stays in effect
+     * until the user configuration is reloaded.
+     * 
+     * @param name The name of the class.
+     * @param weight The new weight.
+     * @param minRate The new guaranteed rate in bytes per second.
+     * @return True, if the class exists.
+     */
+    public boolean setQosParameters(String name, long weight, long minRate) {
+        QosClass qosClass = classes.get(name);
+        if (qosClass == null) {
+            return false;
+        }
+        qosClass.setWeight(weight);
+        qosClass.setMinRate(minRate);
+        rebalance(System.nanoTime());
+        return true;
+    }
+
+    private void trafficPassed(long now) {
+        if (now - nextRebalance >= 0) {
+            rebalance(now);
+        }
+    }
+
+    /**
+     * Recomputes the rates of all classes. The throughput of the classes is measured if a full
+     * rebalancing interval has passed since the last measurement.
+     * 
+     * @param now The current value of <code>System.nanoTime()</code>.
+     */
+    synchronized void rebalance(long now) {
+        long capacity = link.getRate();
+        long elapsed = now - lastRebalance;
+        boolean measure = elapsed >= REBALANCE_NANOS;
+        List<QosClass> active = new ArrayList<QosClass>();
+        List<QosClass> idle = new ArrayList<QosClass>();
+        double activeWeights = 0;
+        long activeMins = 0;
+        for (QosClass qosClass : classes.values()) {
+            if (measure) {
+                qosClass.updateThroughput(elapsed);
+            }
+            if (qosClass.isActive(now)) {
+                active.add(qosClass);
+                activeWeights += qosClass.getWeight();
+                activeMins += qosClass.getMinRate();
+            } else {
+                idle.add(qosClass);
+            }
+        }
+        if (measure) {
+            lastRebalance = now;
+        }
+        nextRebalance = lastRebalance + REBALANCE_NANOS;
+        if (capacity < 0) {
+            for (QosClass qosClass : classes.values()) {
+                qosClass.setRate(TokenBucket.UNLIMITED);
+            }
+            return;
+        }
+
+        /* Idle classes are prepared for the share they get when becoming active */
+        for (QosClass qosClass : idle) {
+            double share = getFairShare(qosClass, capacity, activeWeights + qosClass.getWeight(), activeMins
+                + qosClass.getMinRate());
+            qosClass.setRate(Math.max(1, (long) share));
+        }
+        distribute(active, capacity, activeWeights, activeMins);
+    }
+
+    /**
+     * Divides the capacity among the active classes by water-filling. Classes that need less than
+     * their fair share get what they need, and the rest is divided among the remaining classes in
+     * proportion to their weights, until every class either got what it needs or its share of the
+     * rest. Capacity still left is divided among all classes.
+     */
+    private void distribute(List<QosClass> active, long capacity, double weights, long mins) {
+        int count = active.size();
+        double minScale = mins > capacity ? (double) capacity / mins : 1;
+        double[] demands = new double[count];
+        double[] rates = new double[count];
+        boolean[] satisfied = new boolean[count];
+        double spare = capacity;
+        for (int i = 0; i < count; i++) {
+            QosClass qosClass = active.get(i);
+            double fairShare = getFairShare(qosClass, capacity, weights, mins);
+            demands[i] = Math.max(qosClass.getDemand(), fairShare / MIN_SHARE_DIV);
+            rates[i] = Math.min(qosClass.getMinRate() * minScale, demands[i]);
+            spare -= rates[i];
+        }
+        double openWeights = weights;
+        boolean changed = true;
+        while (changed && openWeights > 0) {
+            changed = false;
+            for (int i = 0; i < count; i++) {
+                long weight = active.get(i).getWeight();
+                if (!satisfied[i] && demands[i] - rates[i] <= spare * weight / openWeights) {
+                    spare -= demands[i] - rates[i];
+                    rates[i] = demands[i];
+                    openWeights -= weight;
+                    satisfied[i] = true;
+                    changed = true;
+                }
+            }
+        }
+        boolean allSatisfied = openWeights <= 0;
+        for (int i = 0; i < count; i++) {
+            long weight = active.get(i).getWeight();
+            if (allSatisfied) {
+                rates[i] += spare * weight / weights;
+            } else if (!satisfied[i]) {
+                rates[i] += spare * weight / openWeights;
+            }
+            active.get(i).setRate(Math.max(1, (long) rates[i]));
+        }
+    }
+
+    private double getFairShare(QosClass qosClass, long capacity, double weights, long mins) {
+        double minScale = mins > capacity ? (double) capacity / mins : 1;
+        long spare = capacity - Math.min(mins, capacity);
+        return qosClass.getMinRate() * minScale + spare * qosClass.getWeight() / weights;
+    }
+
+    /**
+     * A QoS class, represented by a token bucket whose rate is controlled by the scheduler.
+     */
+    public final class QosClass extends TokenBucket {
+
+        private final String    name;
+
+        private final LongAdder transferred = new LongAdder();
+
+        private volatile long   weight;
+
+        private volatile long   minRate;
+
+        private volatile long   lastActive  = System.nanoTime() - ACTIVE_NANOS;
+
+        private long            lastTransferred;
+
+        private volatile long   throughput;
+
+        private boolean         measured;
+
+        private volatile long   configVersion;
+
+        private QosClass(String name, long weight, long minRate, long configVersion) {
+            super(link, TokenBucket.UNLIMITED);
+            this.name = name;
+            this.configVersion = configVersion;
+            setWeight(weight);
+            setMinRate(minRate);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        protected long consume(long bytes, long now) {
+            transferred.add(bytes);
+            lastActive = now;
+            trafficPassed(now);
+            return super.consume(bytes, now);
+        }
+
+        private boolean isActive(long now) {
+            return now - lastActive < ACTIVE_NANOS;
+        }
+
+        private void updateThroughput(long elapsed) {
+            long total = transferred.sum();
+            throughput = (total - lastTransferred) * NANOS / elapsed;
+            lastTransferred = total;
+            measured = true;
+        }
+
+        /**
+         * Estimates the rate the class is going to use. A class that used less than half of its
+         * rate during the last interval is expected to need twice what it used. The demand of any
+         * other class is unlimited.
+         */
+        private double getDemand() {
+            long rate = getRate();
+            if (!measured || rate < 0 || throughput * 2 >= rate) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return throughput * 2.0;
+        }
+
+        /**
+         * @return The name of the class.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The weight.
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        private void setWeight(long weight) {
+            this.weight = Math.max(1, weight);
+        }
+
+        /**
+         * @return The guaranteed rate in bytes per second.
+         */
+        public long getMinRate() {
+            return minRate;
+        }
+
+        private void setMinRate(long minRate) {
+            this.minRate = Math.max(0, minRate);
+        }
+
+        /**
+         * @return The total number of bytes transferred by the class.
+         */
+        public long getTransferredBytes() {
+            return transferred.sum();
+        }
+
+        /**
+         * @return The throughput in bytes per second measured during the last rebalancing interval.
+         */
+        public long getThroughput() {
+            return throughput;
+        }
+
+    }
+
+}
@@ -80,7 +80,8 @@ public interface FtpServer extends Runnable {
     int getStatus();
 
     /**
-     * Returns the list of active sessions.
+     * Returns a snapshot of the active sessions. The snapshot is weakly consistent and may miss
+     * sessions opened or closed while it is taken.
      * 
      * @return The list.
      */
@@ -0,0 +1,564 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.apporiented.hermesftp.common.FtpConstants;
+import com.apporiented.hermesftp.common.FtpServerOptions;
+import com.apporiented.hermesftp.utils.IOUtils;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Server wide cache of rendered directory listings. A listing is stored as the bytes sent over the
+ * data connection, keyed by directory and by a variant that covers everything else the output
+ * depends on: the listing format, the character set and the user, whose permissions are part of
+ * the rendered lines. Cached listings are therefore never shown to other users.
+ * <p>
+ * The total size of the cached listings is bounded; the least recently used listings are evicted
+ * first. Listings larger than a quarter of the cache are not cached at all. A cached directory is
+ * registered with a watch service, and its listings are dropped as soon as the directory changes.
+ * Commands of this server that modify a directory or the files in it drop its listings right away,
+ * since appending to a file, for instance, changes neither the modification time of the directory
+ * nor is it reported before the reply is sent. The modification time of the directory is checked on
+ * every hit, in case a change by another process has not been reported yet or the directory could
+ * not be watched.
+ * <p>
+ * All servers configured with the same options share one cache.
+ * 
+ * @author Lars Behnke
+ */
+public final class ListingCache {
+
+    private static final int                                 FRAGMENT_SHARE = 4;
+
+    private static final int                                 DEFAULT_SIZE   = 8 * 1024 * 1024;
+
+    private static Log                                       log            = LogFactory.getLog(ListingCache.class);
+
+    private static final Map<FtpServerOptions, ListingCache> INSTANCES      =
+            new IdentityHashMap<FtpServerOptions, ListingCache>();
+
+    private final FtpServerOptions                           options;
+
+    private final long                                       maxSize;
+
+    private final LinkedHashMap<Key, Listing>                listings       =
+            new LinkedHashMap<Key, Listing>(16, 0.75f, true);
+
+    private final Map<Path, Directory>                       directories    = new HashMap<Path, Directory>();
+
+    private WatchService                                     watchService;
+
+    private long                                             size;
+
+    private long                                             generation;
+
+    private long                                             hits;
+
+    private long                                             misses;
+
+    private long                                             evictions;
+
+    private long                                             invalidations;
+
+    private int                                              refCount;
+
+    private boolean                                          closed;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize The maximum number of bytes held by the cache, 0 to disable caching.
+     */
+    public ListingCache(long maxSize) {
+        this(null, maxSize);
+    }
+
+    private ListingCache(FtpServerOptions options, long maxSize) {
+        super();
+        this.options = options;
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Returns the cache of the passed options and registers a new user. Each call has to be paired
+     * with a call to {@link #close()}.
+     * 
+     * @param options The server options.
+     * @return The cache.
+     */
+    public static ListingCache open(FtpServerOptions options) {
+        synchronized (INSTANCES) {
+            ListingCache cache = INSTANCES.get(options);
+            if (cache == null) {
+                cache = new ListingCache(options, options.getInt(FtpConstants.OPT_LISTING_CACHE_SIZE, DEFAULT_SIZE));
+                cache.startWatching();
+                INSTANCES.put(options, cache);
+            }
+            cache.refCount++;
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the cache of the passed options, if a server using these options is running.
+     * 
+     * @param options The server options.
+     * @return The cache or null.
+     */
+    public static ListingCache lookup(FtpServerOptions options) {
+        synchronized (INSTANCES) {
+            return INSTANCES.get(options);
+        }
+    }
+
+    /**
+     * Starts the thread that processes the change notifications of watched directories. Without
+     * it, changes are detected by the modification time of the directories only.
+     */
+    public void startWatching() {
+        if (maxSize == 0 || watchService != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            log.warn("Directory changes cannot be watched: " + e.getMessage());
+            return;
+        }
+        Thread watcher = new Thread(new Runnable() {
+            public void run() {
+                processEvents(watchService);
+            }
+        }, "listing-cache-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Checks if listings are cached at all.
+     * 
+     * @return True, if the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the maximum size of a single cached listing.
+     * 
+     * @return The size in bytes.
+     */
+    public int getMaxListingSize() {
+        return (int) Math.min(Integer.MAX_VALUE, maxSize / FRAGMENT_SHARE);
+    }
+
+    /**
+     * Returns a cached listing.
+     * 
+     * @param dir The directory.
+     * @param variant Describes format, character set and user of the listing.
+     * @return The listing, or null if not cached or out of date.
+     */
+    public byte[] get(Path dir, String variant) {
+        Key key = new Key(dir, variant);
+        Listing listing;
+        synchronized (this) {
+            listing = listings.get(key);
+            if (listing == null) {
+                misses++;
+                return null;
+            }
+        }
+        if (!listing.modified.equals(getLastModifiedTime(dir))) {
+            invalidate(dir);
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+        synchronized (this) {
+            hits++;
+        }
+        return listing.data;
+    }
+
+    /**
+     * Takes the state of the passed directory before it is read. The snapshot is passed to
+     * {@link #put(Snapshot, String, byte[])} after the listing has been rendered, so that a listing
+     * is not cached if the directory has changed in the meantime. A snapshot whose listing is not
+     * cached, e.g. because it is too large or could not be rendered, has to be passed to
+     * {@link #release(Snapshot)}.
+     * 
+     * @param dir The directory.
+     * @return The snapshot.
+     */
+    public Snapshot prepare(Path dir) {
+        FileTime modified = getLastModifiedTime(dir);
+        synchronized (this) {
+            Directory directory = directories.get(dir);
+            if (directory == null) {
+                directory = new Directory(++generation);
+                directories.put(dir, directory);
+            }
+            directory.readers++;
+            return new Snapshot(dir, directory.generation, modified);
+        }
+    }
+
+    /**
+     * Caches a rendered listing and releases the snapshot. The directory is watched from now on.
+     * 
+     * @param snapshot The state of the directory before it was read.
+     * @param variant Describes format, character set and user of the listing.
+     * @param data The listing.
+     */
+    public void put(Snapshot snapshot, String variant, byte[] data) {
+        FileTime modified = getLastModifiedTime(snapshot.dir);
+        synchronized (this) {
+            Directory directory = release0(snapshot);
+            if (directory == null) {
+                return;
+            }
+            if (closed || data.length > getMaxListingSize() || snapshot.modified == null
+                    || !snapshot.modified.equals(modified)) {
+                removeIfUnused(snapshot.dir, directory);
+                return;
+            }
+            if (directory.watchKey == null) {
+                directory.watchKey = register(snapshot.dir);
+            }
+            Key key = new Key(snapshot.dir, variant);
+            Listing old = listings.put(key, new Listing(data, snapshot.modified));
+            if (old != null) {
+                size -= old.data.length;
+            }
+            size += data.length;
+            directory.keys.add(key);
+            evict();
+        }
+    }
+
+    /**
+     * Releases a snapshot without caching a listing. Releasing a snapshot more than once, or after
+     * it has been passed to {@link #put(Snapshot, String, byte[])}, has no effect.
+     * 
+     * @param snapshot The snapshot.
+     */
+    public synchronized void release(Snapshot snapshot) {
+        Directory directory = release0(snapshot);
+        if (directory != null) {
+            removeIfUnused(snapshot.dir, directory);
+        }
+    }
+
+    private Directory release0(Snapshot snapshot) {
+        if (snapshot.released) {
+            return null;
+        }
+        snapshot.released = true;
+        Directory directory = directories.get(snapshot.dir);
+        if (directory == null || directory.generation != snapshot.generation) {
+            return null;
+        }
+        directory.readers--;
+        return directory;
+    }
+
+    private void removeIfUnused(Path dir, Directory directory) {
+        if (directory.keys.isEmpty() && directory.readers == 0) {
+            directories.remove(dir);
+            if (directory.watchKey != null) {
+                directory.watchKey.cancel();
+            }
+        }
+    }
+
+    /**
+     * Drops all cached listings of the passed directory.
+     * 
+     * @param dir The directory.
+     */
+    public synchronized void invalidate(Path dir) {
+        Directory directory = directories.remove(dir);
+        if (directory == null) {
+            return;
+        }
+        invalidations++;
+        for (Key key : directory.keys) {
+            Listing listing = listings.remove(key);
+            if (listing != null) {
+                size -= listing.data.length;
+            }
+        }
+        if (directory.watchKey != null) {
+            directory.watchKey.cancel();
+        }
+    }
+
+    /**
+     * Unregisters a user. The cache is cleared and the watch service is closed when the last user
+     * is gone.
+     */
+    public void close() {
+        if (options != null) {
+            synchronized (INSTANCES) {
+                if (--refCount > 0) {
+                    return;
+                }
+                INSTANCES.remove(options);
+            }
+        }
+        synchronized (this) {
+            closed = true;
+            listings.clear();
+            directories.clear();
+            size = 0;
+        }
+        IOUtils.closeGracefully(watchService);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Listing>> iter = listings.entrySet().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Map.Entry<Key, Listing> entry = iter.next();
+            iter.remove();
+            size -= entry.getValue().data.length;
+            evictions++;
+            Path dir = entry.getKey().dir;
+            Directory directory = directories.get(dir);
+            if (directory != null) {
+                directory.keys.remove(entry.getKey());
+                removeIfUnused(dir, directory);
+            }
+        }
+    }
+
+    private WatchKey register(Path dir) {
+        if (watchService == null) {
+            return null;
+        }
+        try {
+            return dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            return null;
+        } catch (ClosedWatchServiceException e) {
+            return null;
+        }
+    }
+
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                key.pollEvents();
+                key.reset();
+                invalidate((Path) key.watchable());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            return;
+        }
+    }
+
+    private static FileTime getLastModifiedTime(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     * 
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests not served from the cache.
+     * 
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of listings dropped to make room for others.
+     * 
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of times the listings of a directory were dropped since it had changed.
+     * 
+     * @return The number of invalidations.
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the number of bytes held by the cache.
+     * 
+     * @return The size.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of directories with cached listings or listings being rendered.
+     * 
+     * @return The number of directories.
+     */
+    public synchronized int getDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Returns the number of cached listings.
+     * 
+     * @return The number of listings.
+     */
+    public synchronized int getListingCount() {
+        return listings.size();
+    }
+
+    /**
+     * State of a directory taken before it is read.
+     */
+    public static final class Snapshot {
+
+        private final Path     dir;
+
+        private final long     generation;
+
+        private final FileTime modified;
+
+        private boolean        released;
+
+        private Snapshot(Path dir, long generation, FileTime modified) {
+            this.dir = dir;
+            this.generation = generation;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Cache key.
+     */
+    private static final class Key {
+
+        private final Path   dir;
+
+        private final String variant;
+
+        private Key(Path dir, String variant) {
+            this.dir = dir;
+            this.variant = variant;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int hashCode() {
+            return dir.hashCode() * 31 + variant.hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return dir.equals(other.dir) && variant.equals(other.variant);
+        }
+    }
+
+    /**
+     * A cached listing.
+     */
+    private static final class Listing {
+
+        private final byte[]   data;
+
+        private final FileTime modified;
+
+        private Listing(byte[] data, FileTime modified) {
+            this.data = data;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * A directory with cached listings or listings being rendered. It is watched as soon as a
+     * listing is cached.
+     */
+    private static final class Directory {
+
+        private final long     generation;
+
+        private final Set<Key> keys = new HashSet<Key>();
+
+        private WatchKey       watchKey;
+
+        private int            readers;
+
+        private Directory(long generation) {
+            this.generation = generation;
+        }
+    }
+
+}
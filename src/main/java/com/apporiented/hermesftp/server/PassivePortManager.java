@@ -0,0 +1,311 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import com.apporiented.hermesftp.common.FtpServerOptions;
+import com.apporiented.hermesftp.utils.IOUtils;
+
+/**
+ * Owns the configured range of passive ports. Free ports are kept in a lock-free FIFO list, so a
+ * port that has just been returned is handed out last. Ports are leased for one data connection and
+ * returned when the data socket provider is closed.
+ * <p>
+ * If pre-binding is enabled, a listening socket is bound to every port of the range in advance.
+ * Listeners are kept bound between transfers, so that PASV and EPSV can reply without a bind call.
+ * Connections that have reached an idle listener are dropped when it is leased.
+ * <p>
+ * All servers configured with the same options share one manager, since they share the port
+ * range. If no range is configured, the system chooses a free port for every data connection.
+ * 
+ * @author Lars Behnke
+ */
+public final class PassivePortManager {
+
+    private static final int                                         BACKLOG   = 1;
+
+    private static final Map<FtpServerOptions, PassivePortManager>   INSTANCES =
+            new IdentityHashMap<FtpServerOptions, PassivePortManager>();
+
+    private final FtpServerOptions                                   options;
+
+    private final int                                                portCount;
+
+    private final Queue<Integer>                                     freePorts = new ConcurrentLinkedQueue<Integer>();
+
+    private final ConcurrentMap<Integer, ServerSocketChannel>        listeners =
+            new ConcurrentHashMap<Integer, ServerSocketChannel>();
+
+    private final boolean                                            prebind;
+
+    private int                                                      refCount;
+
+    private volatile boolean                                         closed;
+
+    /**
+     * Constructor.
+     * 
+     * @param allowedPorts The configured passive ports, null or empty if the system chooses them.
+     * @param prebind True, if listening sockets are bound in advance and kept between transfers.
+     */
+    public PassivePortManager(Integer[] allowedPorts, boolean prebind) {
+        this(null, allowedPorts, prebind);
+    }
+
+    private PassivePortManager(FtpServerOptions options, Integer[] allowedPorts, boolean prebind) {
+        super();
+        this.options = options;
+        if (allowedPorts != null) {
+            for (Integer port : allowedPorts) {
+                if (port != null && port > 0 && !freePorts.contains(port)) {
+                    freePorts.offer(port);
+                }
+            }
+        }
+        this.portCount = freePorts.size();
+        this.prebind = prebind && portCount > 0;
+    }
+
+    /**
+     * Returns the manager of the passed options and registers a new user. Each call has to be
+     * paired with a call to {@link #close()}.
+     * 
+     * @param options The server options.
+     * @param prebind True, if listening sockets are bound in advance. Only evaluated by the first
+     *            user.
+     * @return The manager.
+     */
+    public static PassivePortManager open(FtpServerOptions options, boolean prebind) {
+        synchronized (INSTANCES) {
+            PassivePortManager manager = INSTANCES.get(options);
+            if (manager == null) {
+                manager = new PassivePortManager(options, options.getAllowedPorts(), prebind);
+                manager.bindListeners();
+                INSTANCES.put(options, manager);
+            }
+            manager.refCount++;
+            return manager;
+        }
+    }
+
+    /**
+     * Binds the idle listeners of all free ports, if pre-binding is enabled. Ports that cannot be
+     * bound stay available and are bound on demand.
+     * 
+     * @return The number of bound listeners.
+     */
+    public int bindListeners() {
+        if (prebind) {
+            for (Integer port : freePorts) {
+                if (!listeners.containsKey(port)) {
+                    try {
+                        ServerSocketChannel channel = bind(null, port);
+                        if (listeners.putIfAbsent(port, channel) != null) {
+                            IOUtils.closeGracefully(channel.socket());
+                        }
+                    } catch (IOException e) {
+                        continue;
+                    }
+                }
+            }
+        }
+        return listeners.size();
+    }
+
+    /**
+     * Leases a listening socket for a data connection. With pre-binding enabled, an idle listener
+     * is reused, otherwise the socket is bound to the passed address. Ports that are in use by
+     * other processes are skipped.
+     * 
+     * @param localIp The local address of the control connection.
+     * @return The listening socket channel in blocking mode.
+     * @throws IOException Thrown if no port of the range can be bound.
+     */
+    public ServerSocketChannel openListener(InetAddress localIp) throws IOException {
+        if (portCount == 0) {
+            return bind(localIp, 0);
+        }
+        IOException lastError = null;
+        for (int attempt = 0; attempt < portCount; attempt++) {
+            Integer port = freePorts.poll();
+            if (port == null) {
+                break;
+            }
+            ServerSocketChannel channel = listeners.remove(port);
+            if (channel != null) {
+                if (dropPendingConnections(channel)) {
+                    return channel;
+                }
+                IOUtils.closeGracefully(channel.socket());
+            }
+            try {
+                return bind(prebind ? null : localIp, port);
+            } catch (IOException e) {
+                lastError = e;
+                freePorts.offer(port);
+            }
+        }
+        throw lastError != null ? lastError : new IOException("No passive port available.");
+    }
+
+    /**
+     * Returns a listening socket leased by {@link #openListener(InetAddress)}. With pre-binding
+     * enabled it is kept bound, otherwise it is closed.
+     * 
+     * @param channel The listening socket channel.
+     */
+    public void closeListener(ServerSocketChannel channel) {
+        int port = channel.socket().getLocalPort();
+        if (portCount == 0 || port <= 0) {
+            IOUtils.closeGracefully(channel.socket());
+            return;
+        }
+        Integer key = port;
+        if (prebind && !closed && channel.isOpen()) {
+            listeners.put(key, channel);
+
+            /* The manager may have been closed in the meantime */
+            if (closed && listeners.remove(key, channel)) {
+                IOUtils.closeGracefully(channel.socket());
+            }
+        } else {
+            IOUtils.closeGracefully(channel.socket());
+        }
+        freePorts.offer(key);
+    }
+
+    /**
+     * Leases a port without binding it. Used for sockets the manager cannot keep, such as SSL
+     * server sockets.
+     * 
+     * @return The port, or 0 if no range is configured.
+     * @throws IOException Thrown if all ports are leased.
+     */
+    public int acquirePort() throws IOException {
+        if (portCount == 0) {
+            return 0;
+        }
+        Integer port = freePorts.poll();
+        if (port == null) {
+            throw new IOException("No passive port available.");
+        }
+        ServerSocketChannel channel = listeners.remove(port);
+        if (channel != null) {
+            IOUtils.closeGracefully(channel.socket());
+        }
+        return port;
+    }
+
+    /**
+     * Returns a port leased by {@link #acquirePort()}.
+     * 
+     * @param port The port.
+     */
+    public void releasePort(int port) {
+        if (portCount > 0 && port > 0) {
+            freePorts.offer(port);
+        }
+    }
+
+    /**
+     * Returns the number of configured ports.
+     * 
+     * @return The port count, 0 if the system chooses the ports.
+     */
+    public int getPortCount() {
+        return portCount;
+    }
+
+    /**
+     * Returns the number of ports currently not leased.
+     * 
+     * @return The number of free ports.
+     */
+    public int getFreePortCount() {
+        return freePorts.size();
+    }
+
+    /**
+     * Unregisters a user. The idle listeners are closed when the last user is gone.
+     */
+    public void close() {
+        if (options != null) {
+            synchronized (INSTANCES) {
+                if (--refCount > 0) {
+                    return;
+                }
+                INSTANCES.remove(options);
+            }
+        }
+        closed = true;
+        for (Integer port : listeners.keySet()) {
+            ServerSocketChannel channel = listeners.remove(port);
+            if (channel != null) {
+                IOUtils.closeGracefully(channel.socket());
+            }
+        }
+    }
+
+    private ServerSocketChannel bind(InetAddress localIp, int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().bind(new InetSocketAddress(localIp, port), BACKLOG);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Closes connections that have been accepted by the system while the listener was idle. They
+     * do not belong to the client the listener is leased to.
+     */
+    private boolean dropPendingConnections(ServerSocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            SocketChannel stale;
+            while ((stale = channel.accept()) != null) {
+                stale.close();
+            }
+            channel.configureBlocking(true);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.apporiented.hermesftp.session.FtpSession;
+
+/**
+ * Lock-free registry of the sessions of a server. Registering and unregistering a session are
+ * constant time operations; the session count and its high water mark are maintained atomically.
+ * 
+ * @author Lars Behnke
+ */
+public class SessionRegistry {
+
+    private final ConcurrentMap<FtpSession, InetAddress> sessions      = new ConcurrentHashMap<FtpSession, InetAddress>();
+
+    private final AtomicInteger                          count         = new AtomicInteger();
+
+    private final AtomicReference<HighWaterMark>         highWaterMark = new AtomicReference<HighWaterMark>(
+                                                                           new HighWaterMark(0, new Date()));
+
+    /**
+     * Adds a session.
+     * 
+     * @param session The session.
+     * @param clientAddr The address of the client served by the session.
+     */
+    public void register(FtpSession session, InetAddress clientAddr) {
+        if (sessions.putIfAbsent(session, clientAddr) != null) {
+            return;
+        }
+        int current = count.incrementAndGet();
+        HighWaterMark mark = highWaterMark.get();
+        while (current >= mark.getCount()) {
+            if (highWaterMark.compareAndSet(mark, new HighWaterMark(current, new Date()))) {
+                break;
+            }
+            mark = highWaterMark.get();
+        }
+    }
+
+    /**
+     * Removes a session. Only the first call for a session succeeds.
+     * 
+     * @param session The session.
+     * @return The client address passed on registration, or null if the session was not
+     *         registered.
+     */
+    public InetAddress unregister(FtpSession session) {
+        InetAddress clientAddr = sessions.remove(session);
+        if (clientAddr != null) {
+            count.decrementAndGet();
+        }
+        return clientAddr;
+    }
+
+    /**
+     * Returns the number of registered sessions.
+     * 
+     * @return The session count.
+     */
+    public int getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns a snapshot of the registered sessions. The snapshot is weakly consistent: sessions
+     * registered or removed while it is taken may or may not be contained.
+     * 
+     * @return The list of sessions.
+     */
+    public List<FtpSession> getSessions() {
+        return Collections.unmodifiableList(new ArrayList<FtpSession>(sessions.keySet()));
+    }
+
+    /**
+     * Returns the maximum number of concurrently registered sessions.
+     * 
+     * @return The high water mark.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark.get().getCount();
+    }
+
+    /**
+     * Returns the time the high water mark was reached.
+     * 
+     * @return The date.
+     */
+    public Date getHighWaterMarkDate() {
+        return highWaterMark.get().getDate();
+    }
+
+    /**
+     * Resets the high water mark.
+     * 
+     * @param hwMark The count.
+     * @param date The date.
+     */
+    public void setHighWaterMark(int hwMark, Date date) {
+        highWaterMark.set(new HighWaterMark(hwMark, date));
+    }
+
+    /**
+     * Immutable pair of count and date.
+     */
+    private static final class HighWaterMark {
+
+        private final int  count;
+
+        private final Date date;
+
+        public HighWaterMark(int count, Date date) {
+            this.count = count;
+            this.date = date;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+    }
+
+}
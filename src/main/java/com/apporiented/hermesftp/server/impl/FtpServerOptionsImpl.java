@@ -35,6 +35,7 @@ import com.apporiented.hermesftp.exception.FtpConfigException;
 import com.apporiented.hermesftp.utils.IOUtils;
 import com.apporiented.hermesftp.utils.SecurityUtil;
 import com.apporiented.hermesftp.utils.StringUtils;
+import com.apporiented.hermesftp.utils.TlsSessionTracker;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,19 +47,23 @@ import org.apache.commons.logging.LogFactory;
  */
 public class FtpServerOptionsImpl implements FtpServerOptions, FtpConstants {
 
-    private static final int    DEFAULT_BUFFER_SIZE       = 1024;
+    private static final int    DEFAULT_BUFFER_SIZE         = 1024;
 
-    private static final int    DEFAULT_FTP_IMPL_SSL_PORT = 990;
+    private static final int    DEFAULT_FTP_IMPL_SSL_PORT   = 990;
 
-    private static final int    DEFAULT_FTP_PORT          = 21;
+    private static final int    DEFAULT_FTP_PORT            = 21;
 
-    private static final String SYS_OPT_VERSION           = "version";
+    private static final int    DEFAULT_SSL_SESSION_CACHE   = 1000;
 
-    private static final String SYS_OPT_TITLE             = "title";
+    private static final int    DEFAULT_SSL_SESSION_TIMEOUT = 3600;
 
-    private static final String SYS_OPT_BUILD_INFO        = "info";
+    private static final String SYS_OPT_VERSION             = "version";
 
-    private static Log          log                       = LogFactory.getLog(FtpServerOptionsImpl.class);
+    private static final String SYS_OPT_TITLE               = "title";
+
+    private static final String SYS_OPT_BUILD_INFO          = "info";
+
+    private static Log          log                         = LogFactory.getLog(FtpServerOptionsImpl.class);
 
     private Properties          properties;
 
@@ -66,6 +71,8 @@ public class FtpServerOptionsImpl implements FtpServerOptions, FtpConstants {
 
     private SSLContext          sslContext;
 
+    private TlsSessionTracker   tlsSessionTracker;
+
     /**
      * {@inheritDoc}
      */
@@ -209,7 +216,10 @@ public class FtpServerOptionsImpl implements FtpServerOptions, FtpConstants {
             String ksPassStr = getProperty(OPT_SSL_KEYSTORE_PASS);
             ksPass = ksPassStr == null ? new char[0] : ksPassStr.toCharArray();
             try {
-                sslContext = SecurityUtil.createSslContext(ksFile, ksPass);
+                SSLContext context = SecurityUtil.createSslContext(ksFile, ksPass);
+                SecurityUtil.configureSessionCache(context, getInt(OPT_SSL_SESSION_CACHE,
+                    DEFAULT_SSL_SESSION_CACHE), getInt(OPT_SSL_SESSION_TIMEOUT, DEFAULT_SSL_SESSION_TIMEOUT));
+                sslContext = context;
             } catch (SecurityException e) {
                 throw new FtpConfigException(e.getMessage());
             }
@@ -217,6 +227,16 @@ public class FtpServerOptionsImpl implements FtpServerOptions, FtpConstants {
         return sslContext;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized TlsSessionTracker getTlsSessionTracker() {
+        if (tlsSessionTracker == null) {
+            tlsSessionTracker = new TlsSessionTracker(getBoolean(OPT_SSL_REQUIRE_REUSE, false));
+        }
+        return tlsSessionTracker;
+    }
+
     /**
      * {@inheritDoc}
      */
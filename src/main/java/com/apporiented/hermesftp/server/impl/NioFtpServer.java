@@ -0,0 +1,165 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.parser.FtpCmdParser;
+import com.apporiented.hermesftp.server.AbstractFtpServer;
+import com.apporiented.hermesftp.session.FtpSession;
+import com.apporiented.hermesftp.session.impl.NioFtpSession;
+import com.apporiented.hermesftp.session.impl.NioFtpSessionContextImpl;
+import com.apporiented.hermesftp.session.impl.NioSelectorLoop;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * FTP server implementation that multiplexes the control connections of all clients on a small
+ * number of selector threads (option <code>nio.selector.threads</code>, default: number of
+ * processors). Commands are executed by a shared worker pool, so idle sessions do not occupy any
+ * thread. Explicit SSL (AUTH command) is not supported by this engine.
+ * 
+ * @author Lars Behnke
+ */
+public class NioFtpServer extends AbstractFtpServer {
+
+    private static Log        log         = LogFactory.getLog(NioFtpServer.class);
+
+    private FtpCmdParser      parser;
+
+    private NioSelectorLoop[] selectorLoops;
+
+    private ExecutorService   workers;
+
+    private AtomicInteger     nextLoopIdx = new AtomicInteger();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        try {
+            startSelectorLoops();
+        } catch (IOException e) {
+            setStatus(SERVER_STATUS_UNDEF);
+            log.error(e, e);
+            return;
+        }
+        try {
+            super.run();
+        } finally {
+            for (NioSelectorLoop loop : selectorLoops) {
+                loop.abort();
+            }
+            workers.shutdown();
+        }
+    }
+
+    private void startSelectorLoops() throws IOException {
+        int count = getOptions().getInt(OPT_NIO_SELECTOR_THREADS, Runtime.getRuntime().availableProcessors());
+        selectorLoops = new NioSelectorLoop[Math.max(1, count)];
+        for (int i = 0; i < selectorLoops.length; i++) {
+            selectorLoops[i] = new NioSelectorLoop(getName() + "-selector-" + i);
+            selectorLoops[i].start();
+        }
+        workers = Executors.newCachedThreadPool(new WorkerThreadFactory(getName() + "-worker-"));
+        log.info("NIO engine started with " + selectorLoops.length + " selector thread(s).");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected ServerSocket createServerSocket() throws IOException {
+        int port = getOptions().getFtpPort();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        return serverChannel.socket();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected FtpSessionContext createFtpContext() {
+        FtpSessionContext ctx = new NioFtpSessionContextImpl(getOptions(), getUserManager(), getResourceBundle(),
+            this);
+        ctx.setAttribute(ATTR_SSL, Boolean.FALSE);
+        return ctx;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected FtpSession createSession() {
+        int idx = (nextLoopIdx.getAndIncrement() & Integer.MAX_VALUE) % selectorLoops.length;
+        return new NioFtpSession(getParser(), selectorLoops[idx], workers);
+    }
+
+    /**
+     * Getter method for the java bean <code>parser</code>.
+     * 
+     * @return Returns the value of the java bean <code>parser</code>.
+     */
+    public FtpCmdParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Setter method for the java bean <code>parser</code>.
+     * 
+     * @param parser The value of parser to set.
+     */
+    public void setParser(FtpCmdParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Creates daemon threads with a common name prefix.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private AtomicInteger count = new AtomicInteger();
+
+        private String        prefix;
+
+        public WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
@@ -26,7 +26,6 @@ package com.apporiented.hermesftp.server.impl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ResourceBundle;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
@@ -54,8 +53,8 @@ public class SecureFtpServer extends AbstractFtpServer {
      * {@inheritDoc}
      */
     protected FtpSessionContext createFtpContext() {
-        FtpSessionContext ctx = new FtpSessionContextImpl(getOptions(), getUserManager(), ResourceBundle
-            .getBundle(getResources()), this);
+        FtpSessionContext ctx = new FtpSessionContextImpl(getOptions(), getUserManager(), getResourceBundle(),
+            this);
         ctx.setAttribute(ATTR_SSL, Boolean.TRUE);
         return ctx;
     }
@@ -24,16 +24,15 @@
 
 package com.apporiented.hermesftp.session.impl;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
@@ -47,9 +46,12 @@ import com.apporiented.hermesftp.exception.FtpConfigException;
 import com.apporiented.hermesftp.exception.FtpQuotaException;
 import com.apporiented.hermesftp.usermanager.UserManager;
 import com.apporiented.hermesftp.usermanager.model.GroupDataList;
+import com.apporiented.hermesftp.usermanager.model.PermissionMatcher;
 import com.apporiented.hermesftp.usermanager.model.UserData;
-import com.apporiented.hermesftp.utils.LoggingReader;
-import com.apporiented.hermesftp.utils.LoggingWriter;
+import com.apporiented.hermesftp.utils.CmdLineFramer;
+import com.apporiented.hermesftp.utils.CmdLineReader;
+import com.apporiented.hermesftp.utils.ReplyCatalog;
+import com.apporiented.hermesftp.utils.ReplyWriter;
 import com.apporiented.hermesftp.utils.VarMerger;
 
 import org.apache.commons.io.FileUtils;
@@ -70,8 +72,6 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
 
     private static Log          log               = LogFactory.getLog(FtpSessionContextImpl.class);
 
-    private static int          portIdx;
-
     private String              user;
 
     private String              password;
@@ -88,7 +88,7 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
 
     private Socket              clientSocket;
 
-    private BufferedReader      clientCmdReader;
+    private CmdLineReader       clientCmdReader;
 
     private PrintWriter         clientResponseWriter;
 
@@ -96,7 +96,7 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
 
     private FtpEventListener    eventListener;
 
-    private ResourceBundle      resourceBundle;
+    private ReplyCatalog        replyCatalog;
 
     private SocketProvider      dataSocketProvider;
 
@@ -108,6 +108,12 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
 
     private Map<String, Long>   sessionStatistics = Collections.synchronizedMap(new HashMap<String, Long>());
 
+    private PermissionMatcher   permissionMatcher;
+
+    private long                configVersion;
+
+    private PermissionCache     permissionCache   = new PermissionCache();
+
     /**
      * Constructor.
      * 
@@ -120,7 +126,7 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
             ResourceBundle resourceBundle, FtpEventListener listener) {
         super();
         this.userManager = userManager;
-        this.resourceBundle = resourceBundle;
+        this.replyCatalog = ReplyCatalog.getInstance(resourceBundle);
         this.options = options;
         this.attributes = Collections.synchronizedMap(new HashMap<String, Object>());
         this.eventListener = listener;
@@ -257,7 +263,14 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
      * {@inheritDoc}
      */
     public String getRes(String id) {
-        return resourceBundle.getString(id);
+        return replyCatalog.getString(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getRes(String id, Object[] args) {
+        return replyCatalog.format(id, args);
     }
 
     /**
@@ -335,9 +348,31 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
      */
     public void setClientSocket(Socket clientSocket) throws IOException {
         this.clientSocket = clientSocket;
-        this.clientResponseWriter = new LoggingWriter(new OutputStreamWriter(clientSocket.getOutputStream()),
-            true);
-        this.clientCmdReader = new LoggingReader(new InputStreamReader(clientSocket.getInputStream()));
+        this.clientResponseWriter = createResponseWriter(clientSocket);
+        this.clientCmdReader = createCmdReader(clientSocket);
+    }
+
+    /**
+     * Creates the writer that sends responses over the control connection.
+     * 
+     * @param socket The client socket.
+     * @return The response writer.
+     * @throws IOException Thrown if the socket stream is not available.
+     */
+    protected PrintWriter createResponseWriter(Socket socket) throws IOException {
+        return new ReplyWriter(new OutputStreamWriter(socket.getOutputStream()));
+    }
+
+    /**
+     * Creates the reader that provides the command lines sent by the client.
+     * 
+     * @param socket The client socket.
+     * @return The command reader.
+     * @throws IOException Thrown if the socket stream is not available.
+     */
+    protected CmdLineReader createCmdReader(Socket socket) throws IOException {
+        int maxLineLength = options.getInt(OPT_MAX_CMD_LINE_LENGTH, CmdLineFramer.DEFAULT_MAX_LINE_LENGTH);
+        return new CmdLineReader(socket.getInputStream(), maxLineLength);
     }
 
     /**
@@ -350,24 +385,50 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
     /**
      * {@inheritDoc}
      */
-    public BufferedReader getClientCmdReader() {
+    public CmdLineReader getClientCmdReader() {
         return clientCmdReader;
     }
 
     /**
      * {@inheritDoc}
      */
-    public int getPermission(String path) {
+    public synchronized int getPermission(String path) {
         int result = PRIV_NONE;
         try {
-            GroupDataList list = (GroupDataList) getAttribute(ATTR_GROUP_DATA);
-            result = list.getPermission(path, getUser(), options.getRootDir());
+            if (permissionMatcher == null || configVersion != userManager.getConfigVersion()) {
+                compilePermissions();
+            }
+            Integer cached = permissionCache.get(path);
+            if (cached != null) {
+                return cached;
+            }
+            result = permissionMatcher.getPermission(path);
+            permissionCache.put(path, result);
         } catch (FtpConfigException e) {
             log.error(e);
         }
         return result;
     }
 
+    /**
+     * Compiles the permissions of the current user and clears the cached results. On a reloaded
+     * user configuration the group data is refreshed first.
+     * 
+     * @throws FtpConfigException Error in configuration.
+     */
+    private void compilePermissions() throws FtpConfigException {
+        permissionMatcher = null;
+        permissionCache.clear();
+        long version = userManager.getConfigVersion();
+        GroupDataList list = (GroupDataList) getAttribute(ATTR_GROUP_DATA);
+        if (list == null || version != configVersion) {
+            list = userManager.getGroupDataList(getUser());
+            setAttribute(ATTR_GROUP_DATA, list);
+        }
+        permissionMatcher = PermissionMatcher.compile(list, options.getRootDir(), getUser());
+        configVersion = version;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -387,6 +448,10 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
                 setAttribute(ATTR_LOGIN_TIME, new Date());
                 UserData userData = userManager.getUserData(getUser());
                 setAttribute(ATTR_USER_DATA, userData);
+                synchronized (this) {
+                    configVersion = userManager.getConfigVersion();
+                    permissionMatcher = null;
+                }
                 GroupDataList groupList = userManager.getGroupDataList(getUser());
                 setAttribute(ATTR_GROUP_DATA, groupList);
                 dirName = getStartDir();
@@ -434,6 +499,9 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
         authenticated = false;
         setUser(null);
         setPassword(null);
+        synchronized (this) {
+            permissionMatcher = null;
+        }
     }
 
     /**
@@ -460,28 +528,6 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
         return charset;
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    public Integer getNextPassivePort() {
-        Integer port;
-        Integer[] allowedPorts = getOptions().getAllowedPorts();
-        if (allowedPorts == null || allowedPorts.length == 0) {
-
-            /* Let the system decide which port to use. */
-            port = 0;
-        } else {
-
-            /* Get the port from the user defined list. */
-            port = allowedPorts[portIdx++];
-            if (portIdx >= allowedPorts.length) {
-                portIdx = 0;
-            }
-        }
-        return port;
-
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -577,4 +623,26 @@ public class FtpSessionContextImpl implements FtpConstants, FtpSessionContext {
         sessionStats.put(countKey, prevCount + 1);
     }
 
+    /**
+     * Least recently used results of permission checks.
+     */
+    private static class PermissionCache extends LinkedHashMap<String, Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int  MAX_SIZE         = 1024;
+
+        PermissionCache() {
+            super(16, 0.75f, true);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_SIZE;
+        }
+    }
+
 }
@@ -24,8 +24,8 @@
 
 package com.apporiented.hermesftp.session.impl;
 
+import java.io.PrintWriter;
 import java.net.SocketTimeoutException;
-import java.text.MessageFormat;
 
 import com.apporiented.hermesftp.cmd.FtpCmd;
 import com.apporiented.hermesftp.common.FtpConstants;
@@ -36,28 +36,41 @@ import com.apporiented.hermesftp.exception.FtpIllegalCmdException;
 import com.apporiented.hermesftp.exception.FtpQuitException;
 import com.apporiented.hermesftp.parser.FtpCmdReader;
 import com.apporiented.hermesftp.session.FtpSession;
+import com.apporiented.hermesftp.utils.HashedWheelTimer;
+import com.apporiented.hermesftp.utils.IOUtils;
+import com.apporiented.hermesftp.utils.ReplyWriter;
+import com.apporiented.hermesftp.utils.ThreadUtils;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * Default FTP session implementation.
+ * Default FTP session implementation. The idle timeout is registered with the server's timer, so a
+ * waiting session thread is only woken up by a command or an expired timeout.
  * 
  * @author Lars Behnke
  */
-public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
+public class FtpSessionImpl implements FtpSession, FtpConstants {
 
-    private static final int  DEFAULT_IDLE_SECONDS = 60;
+    private static final int                  DEFAULT_IDLE_SECONDS = 60;
 
-    private static final int  COMMAND_TIMEOUT      = 3000;
+    private static Log                        log                  = LogFactory.getLog(FtpSessionImpl.class);
 
-    private static Log        log                  = LogFactory.getLog(FtpSessionImpl.class);
+    private FtpCmdReader                      cmdReader;
 
-    private FtpCmdReader      cmdReader;
+    private FtpSessionContext                 ftpContext;
 
-    private FtpSessionContext ftpContext;
+    private volatile boolean                  terminated;
 
-    private boolean           terminated;
+    private int                               maxIdleMillis;
+
+    private HashedWheelTimer                  timer;
+
+    private volatile HashedWheelTimer.Timeout idleTimeout;
+
+    private volatile boolean                  executing;
+
+    private volatile boolean                  idleExpired;
 
     /**
      * Constructor.
@@ -66,6 +79,16 @@ public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
         super();
     }
 
+    /**
+     * Starts the session on a new thread. If the option <code>virtual.threads</code> is set and
+     * the runtime supports it, a virtual thread is used.
+     */
+    public void start() {
+        boolean virtual = getFtpContext().getOptions().getBoolean(OPT_VIRTUAL_THREADS, false);
+        String name = "FtpSession-" + getFtpContext().getClientSocket().getInetAddress().getHostAddress();
+        ThreadUtils.newThread(this, name, virtual).start();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -74,24 +97,34 @@ public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
             printWelcome();
             getCmdReader().setCtx(getFtpContext());
             getCmdReader().start();
-            long startWaiting = System.currentTimeMillis();
+            maxIdleMillis = getFtpContext().getOptions().getInt(OPT_MAX_IDLE_SECONDS, DEFAULT_IDLE_SECONDS) * MILLI;
+            timer = (HashedWheelTimer) getFtpContext().getAttribute(ATTR_TIMER);
+            int waitTimeout = maxIdleMillis;
+            if (timer != null) {
+                scheduleIdleTimeout();
+                waitTimeout = 0;
+            }
             while (!isTerminated()) {
                 FtpCmd cmd;
                 try {
-                    cmd = getCmdReader().waitForNextCommand(COMMAND_TIMEOUT);
-                    terminated = !executeCmd(cmd);
-                    startWaiting = System.currentTimeMillis();
+                    cmd = getCmdReader().waitForNextCommand(waitTimeout);
+                    if (cmd == null && idleExpired) {
+                        closeIdleSession();
+                        break;
+                    }
+                    resetIdleTimeout();
+                    batchReplies();
+                    terminated = cmd == null || !executeCmd(cmd);
                 } catch (FtpIllegalCmdException e) {
-                    String msg = formatResString(MSG500_CMD, new Object[] {e.getCmdLine()});
-                    out(msg);
-                } catch (SocketTimeoutException e) {
-                    long maxIdleSecs = getFtpContext().getOptions().getInt(OPT_MAX_IDLE_SECONDS,
-                        DEFAULT_IDLE_SECONDS);
-                    if (System.currentTimeMillis() - startWaiting > (maxIdleSecs * MILLI)) {
-                        out(formatResString(MSG421, new Object[0]));
-                        log.debug("Session timeout after " + maxIdleSecs + " seconds");
-                        terminated = true;
+                    resetIdleTimeout();
+                    batchReplies();
+                    if (e.getCmdLine() == null) {
+                        out(getFtpContext().getRes(MSG500_LINE));
+                    } else {
+                        out(formatResString(MSG500_CMD, new Object[] {e.getCmdLine()}));
                     }
+                } catch (SocketTimeoutException e) {
+                    closeIdleSession();
                 }
             }
 
@@ -99,20 +132,61 @@ public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
             log.error("Session closed because of error while executing command", e);
         } finally {
             terminated = true;
+            if (idleTimeout != null) {
+                idleTimeout.cancel();
+            }
             getCmdReader().abort();
             getFtpContext().closeSockets();
             getFtpContext().getEventListener().sessionClosed(this);
         }
     }
 
+    private void scheduleIdleTimeout() {
+        idleTimeout = timer.schedule(new Runnable() {
+            public void run() {
+                idleTimeoutExpired();
+            }
+        }, maxIdleMillis);
+    }
+
+    /**
+     * Called by the timer thread. A running command, e.g. a long transfer, does not count as idle
+     * time. Otherwise the session thread is woken up to close the session.
+     */
+    private void idleTimeoutExpired() {
+        if (terminated) {
+            return;
+        }
+        if (executing) {
+            scheduleIdleTimeout();
+            return;
+        }
+        idleExpired = true;
+        getCmdReader().abort();
+    }
+
+    private void closeIdleSession() {
+        out(formatResString(MSG421, new Object[0]));
+        log.debug("Session timeout after " + maxIdleMillis / MILLI + " seconds");
+        terminated = true;
+        IOUtils.closeGracefully(getFtpContext().getClientSocket());
+    }
+
+    /**
+     * Executes a command. No monitor is held while the command runs, since a virtual thread
+     * blocked on socket I/O inside a monitor would pin its carrier thread for the whole transfer.
+     * The command reader is notified afterwards, in case it waits for the command to modify the
+     * client socket.
+     */
     private boolean executeCmd(FtpCmd cmd) throws FtpCmdException {
         boolean proceed = true;
         if (cmd != null) {
-            synchronized (cmd) {
+            try {
                 if (cmd.isAuthenticationRequired() && !getFtpContext().isAuthenticated()) {
                     String msg = getFtpContext().getRes(MSG530);
                     out(msg);
                 } else {
+                    executing = true;
                     try {
                         cmd.setCtx(getFtpContext());
                         cmd.execute();
@@ -121,14 +195,35 @@ public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
                     } catch (FtpCmdResponseException e) {
                         out(e.getMessage());
                     } finally {
-                        cmd.notifyAll();
+                        executing = false;
+                        resetIdleTimeout();
                     }
                 }
+            } finally {
+                getCmdReader().commandExecuted(cmd);
             }
         }
         return proceed;
     }
 
+    /**
+     * Holds back complete replies as long as pipelined commands are waiting, so that the replies
+     * to a burst of commands leave in a single write.
+     */
+    private void batchReplies() {
+        PrintWriter writer = getFtpContext().getClientResponseWriter();
+        if (writer instanceof ReplyWriter) {
+            ((ReplyWriter) writer).setBatching(getCmdReader().isCommandPending());
+        }
+    }
+
+    private void resetIdleTimeout() {
+        HashedWheelTimer.Timeout t = idleTimeout;
+        if (t != null) {
+            t.reset(maxIdleMillis);
+        }
+    }
+
     private void printWelcome() {
         String title = getFtpContext().getOptions().getAppTitle();
         String version = getFtpContext().getOptions().getAppVersion();
@@ -143,11 +238,7 @@ public class FtpSessionImpl extends Thread implements FtpSession, FtpConstants {
     }
 
     private String formatResString(String resourceKey, Object[] args) {
-        String msg = getFtpContext().getRes(resourceKey);
-        if (args != null) {
-            msg = MessageFormat.format(msg, args);
-        }
-        return msg;
+        return getFtpContext().getRes(resourceKey, args);
     }
 
     private void out(String msg) {
@@ -0,0 +1,423 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.session.impl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+import com.apporiented.hermesftp.cmd.ClientSocketModifier;
+import com.apporiented.hermesftp.cmd.CmdListAware;
+import com.apporiented.hermesftp.cmd.FtpCmd;
+import com.apporiented.hermesftp.common.FtpConstants;
+import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.exception.FtpCmdException;
+import com.apporiented.hermesftp.exception.FtpCmdResponseException;
+import com.apporiented.hermesftp.exception.FtpQuitException;
+import com.apporiented.hermesftp.parser.FtpCmdParser;
+import com.apporiented.hermesftp.parser.FtpCmdReader;
+import com.apporiented.hermesftp.session.FtpSession;
+import com.apporiented.hermesftp.utils.CmdLineFramer;
+import com.apporiented.hermesftp.utils.HashedWheelTimer;
+import com.apporiented.hermesftp.utils.ReplyWriter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * FTP session served by the NIO server engine. The session does not own a thread. Incoming data is
+ * pushed by a selector loop; complete command lines are executed one after the other by a worker
+ * of a shared pool. The commands ABOR and STAT are passed to the running command immediately.
+ * <p>
+ * Explicit TLS (AUTH) is not supported by this engine since it would require the control
+ * connection to be switched to a blocking SSL socket.
+ * 
+ * @author Lars Behnke
+ */
+public class NioFtpSession implements FtpSession, FtpConstants {
+
+    private static final int                  DEFAULT_IDLE_SECONDS = 60;
+
+    private static final int                  LOG_LINE_LENGTH      = 80;
+
+    /**
+     * Number of pending command lines at which the control connection is no longer read.
+     */
+    private static final int                  MAX_PENDING_LINES    = 16;
+
+    private static Log                        log                  = LogFactory.getLog(NioFtpSession.class);
+
+    private FtpSessionContext                 ftpContext;
+
+    private FtpCmdParser                      parser;
+
+    private NioSelectorLoop                   selectorLoop;
+
+    private Executor                          executor;
+
+    private SocketChannel                     channel;
+
+    private CmdLineFramer                     framer;
+
+    /* A null entry stands for a line exceeding the maximum length */
+    private LinkedList<String>                pendingLines         = new LinkedList<String>();
+
+    private boolean                           executing;
+
+    private boolean                           readSuspended;
+
+    private volatile boolean                  terminated;
+
+    private volatile FtpCmd                   lastCmd;
+
+    private int                               maxIdleMillis;
+
+    private HashedWheelTimer                  timer;
+
+    private volatile HashedWheelTimer.Timeout idleTimeout;
+
+    /**
+     * Constructor.
+     * 
+     * @param parser The parser that maps command lines to commands.
+     * @param selectorLoop The loop watching the control connection.
+     * @param executor The worker pool executing the commands.
+     */
+    public NioFtpSession(FtpCmdParser parser, NioSelectorLoop selectorLoop, Executor executor) {
+        super();
+        this.parser = parser;
+        this.selectorLoop = selectorLoop;
+        this.executor = executor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void start() {
+        channel = getFtpContext().getClientSocket().getChannel();
+        maxIdleMillis = getFtpContext().getOptions().getInt(OPT_MAX_IDLE_SECONDS, DEFAULT_IDLE_SECONDS) * MILLI;
+        framer = new CmdLineFramer(getFtpContext().getOptions().getInt(OPT_MAX_CMD_LINE_LENGTH,
+            CmdLineFramer.DEFAULT_MAX_LINE_LENGTH));
+        timer = (HashedWheelTimer) getFtpContext().getAttribute(ATTR_TIMER);
+        if (timer != null) {
+            scheduleIdleTimeout();
+        }
+        synchronized (this) {
+            executing = true;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                printWelcome();
+                processPendingLines();
+            }
+        });
+        selectorLoop.register(this);
+    }
+
+    /**
+     * Runs the pending commands in the calling thread.
+     */
+    public void run() {
+        processPendingLines();
+    }
+
+    /**
+     * Reads the data available on the control connection. Called by the selector loop.
+     * 
+     * @param readBuffer Buffer owned by the selector loop, shared by all its sessions.
+     * @return False, if the client has closed the connection.
+     * @throws IOException Thrown if the channel cannot be read.
+     */
+    public boolean readAvailable(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        int count = channel.read(readBuffer);
+        if (count < 0) {
+            return false;
+        }
+        readBuffer.flip();
+        String cmdLine;
+        while ((cmdLine = framer.nextLine(readBuffer)) != null) {
+            if (log.isDebugEnabled()) {
+                String x = cmdLine.length() >= LOG_LINE_LENGTH ? cmdLine.substring(0, LOG_LINE_LENGTH) + " ["
+                    + (cmdLine.length() - LOG_LINE_LENGTH) + " more chars]" : cmdLine;
+                log.debug("<--: " + x + (framer.isTruncated() ? " [truncated]" : ""));
+            }
+            handleCmdLine(framer.isTruncated() ? null : cmdLine);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a command line for execution. If the client sends lines faster than they are
+     * executed, the control connection is not read any more until the queue has drained, so that
+     * the queue stays bounded. Abort and status requests pipelined behind a full queue are
+     * delayed accordingly.
+     */
+    private void handleCmdLine(String cmdLine) {
+        resetIdleTimeout();
+        FtpCmd cmd = lastCmd;
+        if (cmdLine != null && cmd != null && cmd.handleAsyncCmd(cmdLine)) {
+            return;
+        }
+        boolean suspend = false;
+        boolean start = false;
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            pendingLines.add(cmdLine);
+            if (!readSuspended && pendingLines.size() >= MAX_PENDING_LINES) {
+                readSuspended = true;
+                suspend = true;
+            }
+            if (!executing) {
+                executing = true;
+                start = true;
+            }
+        }
+        if (suspend) {
+            selectorLoop.suspendReading(this);
+        }
+        if (start) {
+            executor.execute(this);
+        }
+    }
+
+    private void processPendingLines() {
+        try {
+            while (true) {
+                String cmdLine;
+                boolean more;
+                boolean resume = false;
+                synchronized (this) {
+                    if (terminated || pendingLines.isEmpty()) {
+                        executing = false;
+                        return;
+                    }
+                    cmdLine = pendingLines.removeFirst();
+                    more = !pendingLines.isEmpty();
+                    if (readSuspended && !more) {
+                        readSuspended = false;
+                        resume = true;
+                    }
+                }
+                if (resume) {
+                    selectorLoop.resumeReading(this);
+                }
+                batchReplies(more);
+                if (!executeCmdLine(cmdLine)) {
+                    abort();
+                    return;
+                }
+                resetIdleTimeout();
+            }
+        } catch (FtpCmdException e) {
+            log.error("Session closed because of error while executing command", e);
+            abort();
+        } catch (RuntimeException e) {
+            log.error("Session closed because of error while executing command", e);
+            abort();
+        }
+    }
+
+    private boolean executeCmdLine(String cmdLine) throws FtpCmdException {
+        if (cmdLine == null) {
+            out(getFtpContext().getRes(MSG500_LINE));
+            return true;
+        }
+        String token = parser.findCommandToken(cmdLine);
+        FtpCmd cmd = token == null ? null : parser.createCommandByToken(token);
+        if (cmd == null) {
+            out(formatResString(MSG500_CMD, new Object[] {cmdLine}));
+            return true;
+        }
+        if (cmd instanceof CmdListAware) {
+            ((CmdListAware) cmd).setList(parser.getCommandList());
+        }
+        cmd.setArguments(cmdLine.substring(token.length()).trim());
+        lastCmd = cmd;
+        if (cmd instanceof ClientSocketModifier) {
+            out(getFtpContext().getRes(MSG534));
+            return true;
+        }
+        return executeCmd(cmd);
+    }
+
+    private boolean executeCmd(FtpCmd cmd) throws FtpCmdException {
+        boolean proceed = true;
+        if (cmd.isAuthenticationRequired() && !getFtpContext().isAuthenticated()) {
+            out(getFtpContext().getRes(MSG530));
+        } else {
+            try {
+                cmd.setCtx(getFtpContext());
+                cmd.execute();
+            } catch (FtpQuitException e) {
+                proceed = false;
+            } catch (FtpCmdResponseException e) {
+                out(e.getMessage());
+            }
+        }
+        return proceed;
+    }
+
+
+    /**
+     * Holds back complete replies as long as pipelined commands are waiting, so that the replies
+     * to a burst of commands leave in a single write.
+     * 
+     * @param more True, if further command lines are pending.
+     */
+    private void batchReplies(boolean more) {
+        PrintWriter writer = getFtpContext().getClientResponseWriter();
+        if (writer instanceof ReplyWriter) {
+            ((ReplyWriter) writer).setBatching(more);
+        }
+    }
+
+    private void scheduleIdleTimeout() {
+        idleTimeout = timer.schedule(new Runnable() {
+            public void run() {
+                idleTimeoutExpired();
+            }
+        }, maxIdleMillis);
+    }
+
+    private void resetIdleTimeout() {
+        HashedWheelTimer.Timeout t = idleTimeout;
+        if (t != null) {
+            t.reset(maxIdleMillis);
+        }
+    }
+
+    /**
+     * Closes the session if the client has been idle for too long. Called by the timer thread; the
+     * response is sent by a worker. Running commands do not count as idle time.
+     */
+    private void idleTimeoutExpired() {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            if (executing) {
+                scheduleIdleTimeout();
+                return;
+            }
+            executing = true;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                out(formatResString(MSG421, new Object[0]));
+                log.debug("Session timeout after " + maxIdleMillis / MILLI + " seconds");
+                abort();
+            }
+        });
+    }
+
+    private void printWelcome() {
+        String title = getFtpContext().getOptions().getAppTitle();
+        String version = getFtpContext().getOptions().getAppVersion();
+        out(formatResString(MSG220_WEL, new Object[] {title + " " + version}));
+        String welcome = getFtpContext().getOption(OPT_MSG_WELCOME);
+        if (welcome != null && welcome.length() > 0) {
+            out(formatResString(MSG220_WEL, new Object[] {welcome}));
+        }
+        out(getFtpContext().getRes(MSG220));
+    }
+
+    private String formatResString(String resourceKey, Object[] args) {
+        return getFtpContext().getRes(resourceKey, args);
+    }
+
+    private void out(String msg) {
+        getFtpContext().getClientResponseWriter().println(msg);
+        getFtpContext().getClientResponseWriter().flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void abort() {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            pendingLines.clear();
+        }
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+        }
+        getFtpContext().closeSockets();
+        getFtpContext().getClientResponseWriter().close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug(e.getMessage());
+        }
+        getFtpContext().getEventListener().sessionClosed(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Returns the control channel of the session.
+     * 
+     * @return The socket channel.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public FtpSessionContext getFtpContext() {
+        return ftpContext;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setFtpContext(FtpSessionContext ctx) {
+        this.ftpContext = ctx;
+    }
+
+    /**
+     * Not used by this implementation. The command lines are provided by the selector loop.
+     * 
+     * @param reader The FTP command reader.
+     */
+    public void setCmdReader(FtpCmdReader reader) {
+    }
+
+}
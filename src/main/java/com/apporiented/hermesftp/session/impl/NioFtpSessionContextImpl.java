@@ -0,0 +1,85 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.session.impl;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ResourceBundle;
+
+import com.apporiented.hermesftp.common.FtpEventListener;
+import com.apporiented.hermesftp.common.FtpServerOptions;
+import com.apporiented.hermesftp.streams.ChannelOutputStream;
+import com.apporiented.hermesftp.usermanager.UserManager;
+import com.apporiented.hermesftp.utils.CmdLineReader;
+import com.apporiented.hermesftp.utils.ReplyWriter;
+
+/**
+ * Session context of connections served by the NIO server engine. Responses are written directly
+ * to the non-blocking socket channel; commands are not read through a reader but are pushed by the
+ * selector loop.
+ * 
+ * @author Lars Behnke
+ */
+public class NioFtpSessionContextImpl extends FtpSessionContextImpl {
+
+    /**
+     * Constructor.
+     * 
+     * @param options The server options.
+     * @param userManager The user manager.
+     * @param resourceBundle The resource bundle that containts messages and texts.
+     * @param listener The listener that is informed on session events.
+     */
+    public NioFtpSessionContextImpl(FtpServerOptions options, UserManager userManager,
+            ResourceBundle resourceBundle, FtpEventListener listener) {
+        super(options, userManager, resourceBundle, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected PrintWriter createResponseWriter(Socket socket) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            return super.createResponseWriter(socket);
+        }
+        channel.configureBlocking(false);
+        return new ReplyWriter(new OutputStreamWriter(new ChannelOutputStream(channel)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected CmdLineReader createCmdReader(Socket socket) throws IOException {
+        if (socket.getChannel() == null) {
+            return super.createCmdReader(socket);
+        }
+        return null;
+    }
+
+}
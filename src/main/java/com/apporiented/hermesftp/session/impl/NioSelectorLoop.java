@@ -0,0 +1,183 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.session.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.apporiented.hermesftp.streams.BufferPool;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Event loop of the NIO server engine. A single loop thread watches the control connections of
+ * many sessions for incoming data and hands complete command lines over to the sessions. Idle
+ * sessions do not occupy any thread; their timeouts are served by the server's timer, so the loop
+ * only wakes up on I/O.
+ * 
+ * @author Lars Behnke
+ */
+public class NioSelectorLoop extends Thread {
+
+    private static Log           log            = LogFactory.getLog(NioSelectorLoop.class);
+
+    private Selector             selector;
+
+    private Queue<NioFtpSession> pending        = new ConcurrentLinkedQueue<NioFtpSession>();
+
+    private Queue<NioFtpSession> resumed        = new ConcurrentLinkedQueue<NioFtpSession>();
+
+    private volatile boolean     terminated;
+
+    private ByteBuffer           readBuffer;
+
+    /**
+     * Constructor.
+     * 
+     * @param name The name of the loop thread.
+     * @throws IOException Thrown if the selector cannot be opened.
+     */
+    public NioSelectorLoop(String name) throws IOException {
+        super(name);
+        setDaemon(true);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Hands a session over to the loop. The channel is registered by the loop thread itself.
+     * 
+     * @param session The session.
+     */
+    public void register(NioFtpSession session) {
+        pending.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops reading the control connection of a session. Must be called by the loop thread, i.e.
+     * while the session reads the available data.
+     * 
+     * @param session The session.
+     */
+    public void suspendReading(NioFtpSession session) {
+        SelectionKey key = session.getChannel().keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(0);
+        }
+    }
+
+    /**
+     * Resumes reading the control connection of a session. The key is updated by the loop thread
+     * itself.
+     * 
+     * @param session The session.
+     */
+    public void resumeReading(NioFtpSession session) {
+        resumed.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the loop.
+     */
+    public void abort() {
+        terminated = true;
+        selector.wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        readBuffer = BufferPool.getDefault().acquireDirect(BufferPool.MIN_SIZE);
+        try {
+            while (!terminated) {
+                selector.select();
+                registerPendingSessions();
+                resumeSessions();
+                processSelectedKeys();
+            }
+        } catch (IOException e) {
+            log.error(e, e);
+        } finally {
+            BufferPool.getDefault().release(readBuffer);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.warn(e);
+            }
+        }
+    }
+
+    private void registerPendingSessions() {
+        NioFtpSession session;
+        while ((session = pending.poll()) != null) {
+            try {
+                session.getChannel().register(selector, SelectionKey.OP_READ, session);
+            } catch (ClosedChannelException e) {
+                session.abort();
+            }
+        }
+    }
+
+    private void resumeSessions() {
+        NioFtpSession session;
+        while ((session = resumed.poll()) != null) {
+            SelectionKey key = session.getChannel().keyFor(selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+        while (iter.hasNext()) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            NioFtpSession session = (NioFtpSession) key.attachment();
+            if (!key.isValid() || !key.isReadable()) {
+                continue;
+            }
+            try {
+                if (!session.readAvailable(readBuffer)) {
+                    log.debug("Client disconnected. Session is terminated.");
+                    session.abort();
+                }
+            } catch (IOException e) {
+                log.debug(e.getMessage());
+                session.abort();
+            }
+        }
+    }
+
+}
@@ -34,6 +34,8 @@ import org.apache.commons.lang.ArrayUtils;
 
 /**
  * Reads a stream formatted in block mode, extracts the data contents and registers restart markers.
+ * The nested stream is not read beyond the block carrying the EOF flag, so a data connection can
+ * carry further transfers. Closing this stream does not close the nested stream.
  * 
  * @author Lars Behnke
  */
@@ -111,9 +113,47 @@ public class BlockModeInputStream extends InputStream implements RecordReadSuppo
      * {@inheritDoc}
      */
     public int read() throws IOException {
-        if (buffer == null) {
+        if (!fillBuffer()) {
+            return -1;
+        }
+        int result = buffer[idx] & 0xFF;
+        idx++;
+        if (idx >= buffer.length) {
+            buffer = null;
+            idx = 0;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillBuffer()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.length - idx);
+        System.arraycopy(buffer, idx, b, off, count);
+        idx += count;
+        if (idx >= buffer.length) {
+            buffer = null;
+            idx = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the next block with payload, unless the current one has not been consumed yet.
+     * 
+     * @return False, if the end of the file has been reached.
+     */
+    private boolean fillBuffer() throws IOException {
+        while (buffer == null) {
             if (eof) {
-                return -1;
+                return false;
             }
             int descriptor = is.read();
             int hi = is.read();
@@ -121,30 +161,35 @@ public class BlockModeInputStream extends InputStream implements RecordReadSuppo
             checkHeader(descriptor, hi, lo);
             int len = hi << 8 | lo;
             buffer = new byte[len];
-            int realLength = is.read(buffer);
-            if (realLength != len) {
-                throw new IOException(UNEXPECTED_END_OF_STREAM);
-            }
+            readFully(buffer);
             eof = (descriptor & BlockModeConstants.DESC_CODE_EOF) > 0;
             eor = (descriptor & BlockModeConstants.DESC_CODE_EOR) > 0;
             boolean mark = (descriptor & BlockModeConstants.DESC_CODE_REST) > 0;
             if (mark) {
                 setRestartMarker();
                 buffer = null;
-                return read();
+                continue;
             }
             byteCount += len;
             if (eor) {
                 buffer = ArrayUtils.addAll(buffer, eorMarkerBytes);
             }
+            if (buffer.length == 0) {
+                buffer = null;
+            }
         }
-        int result = buffer[idx];
-        idx++;
-        if (idx >= buffer.length) {
-            buffer = null;
-            idx = 0;
+        return true;
+    }
+
+    private void readFully(byte[] b) throws IOException {
+        int off = 0;
+        while (off < b.length) {
+            int count = is.read(b, off, b.length - off);
+            if (count < 0) {
+                throw new IOException(UNEXPECTED_END_OF_STREAM);
+            }
+            off += count;
         }
-        return result;
     }
 
     private void checkHeader(int descriptor, int hi, int lo) throws IOException {
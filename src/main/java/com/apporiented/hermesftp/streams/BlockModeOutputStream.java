@@ -44,10 +44,17 @@ public class BlockModeOutputStream extends OutputStream implements BlockModeCons
      */
     private static final int DEFAULT_BLOCK_SIZE = 1024;
 
+    /**
+     * Length of the block header (descriptor and two length bytes).
+     */
+    private static final int HEADER_LEN         = 3;
+
     private OutputStream     os;
 
     private byte[]           buffer;
 
+    private int              blockSize;
+
     private int              idx;
 
     private boolean          fileComplete;
@@ -72,7 +79,8 @@ public class BlockModeOutputStream extends OutputStream implements BlockModeCons
     public BlockModeOutputStream(OutputStream os, int blockSize) {
         super();
         this.os = os;
-        this.buffer = new byte[blockSize];
+        this.buffer = BufferPool.getDefault().acquire(blockSize + HEADER_LEN);
+        this.blockSize = Math.min(blockSize, buffer.length - HEADER_LEN);
         this.idx = 0;
         this.fileComplete = false;
     }
@@ -97,21 +105,45 @@ public class BlockModeOutputStream extends OutputStream implements BlockModeCons
         if (fileComplete) {
             throw new IOException("EOF marked already.");
         }
-        buffer[idx] = (byte) b;
+        buffer[HEADER_LEN + idx] = (byte) b;
         idx++;
-        if (idx >= buffer.length) {
-            writeBlock(0x00, buffer.length);
+        if (idx >= blockSize) {
+            writeBlock(0x00, blockSize);
             idx = 0;
         }
         recordComplete = false;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileComplete) {
+            throw new IOException("EOF marked already.");
+        }
+        while (len > 0) {
+            int count = Math.min(len, blockSize - idx);
+            System.arraycopy(b, off, buffer, HEADER_LEN + idx, count);
+            idx += count;
+            off += count;
+            len -= count;
+            if (idx >= blockSize) {
+                writeBlock(0x00, blockSize);
+                idx = 0;
+            }
+            recordComplete = false;
+        }
+    }
+
+    /**
+     * Writes the header in front of the payload, so that the block is passed to the nested stream
+     * in a single call.
+     */
     private void writeBlock(int code, int len) throws IOException {
-        os.write(code);
-        os.write((len >>> 8) & 0xFF);
-        //noinspection PointlessBitwiseExpression
-        os.write((len >>> 0) & 0xFF);
-        os.write(buffer, 0, len);
+        buffer[0] = (byte) code;
+        buffer[1] = (byte) ((len >>> 8) & 0xFF);
+        buffer[2] = (byte) (len & 0xFF);
+        os.write(buffer, 0, HEADER_LEN + len);
     }
 
     /**
@@ -122,14 +154,16 @@ public class BlockModeOutputStream extends OutputStream implements BlockModeCons
     }
 
     /**
-     * Flushes the last dataset. Block mode transfer requires setting EOF explicitly.
+     * Flushes the last dataset. Block mode transfer requires setting EOF explicitly. If the last
+     * record is complete already, an empty block marks the end of file. Once the end of file is
+     * marked, the method does nothing.
      * 
      * @param eof True, if end of file.
      * @throws IOException When writing fails.
      */
     public void finalizeRecord(boolean eof) throws IOException {
-        if (!fileComplete && !recordComplete) {
-            int descriptor = DESC_CODE_EOR;
+        if (!fileComplete && (eof || !recordComplete)) {
+            int descriptor = recordComplete ? 0 : DESC_CODE_EOR;
             if (eof) {
                 descriptor |= DESC_CODE_EOF;
                 fileComplete = true;
@@ -141,11 +175,21 @@ public class BlockModeOutputStream extends OutputStream implements BlockModeCons
     }
 
     /**
-     * {@inheritDoc}
+     * Marks the end of file, unless marked already, and closes the nested stream. {@inheritDoc}
      */
     public void close() throws IOException {
-        finalizeRecord(true);
-        os.close();
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (!fileComplete) {
+                finalizeRecord(true);
+            }
+            os.close();
+        } finally {
+            BufferPool.getDefault().release(buffer);
+            buffer = null;
+        }
     }
 
 }
@@ -0,0 +1,201 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of transfer buffers. Buffers are organized in size classes (powers of two from 4 KB
+ * to 256 KB), both as heap arrays and as direct byte buffers. Released buffers are kept for reuse
+ * up to a fixed number per size class, so concurrent transfers do not allocate garbage for every
+ * request.
+ * 
+ * @author Lars Behnke
+ */
+public class BufferPool {
+
+    /** Smallest buffer size handed out. */
+    public static final int           MIN_SIZE             = 4 * 1024;
+
+    /** Largest buffer size handed out. */
+    public static final int           MAX_SIZE             = 256 * 1024;
+
+    private static final int          DEFAULT_MAX_RETAINED = 64;
+
+    private static final int          TARGET_MILLIS        = 10;
+
+    private static final BufferPool   DEFAULT_POOL         = new BufferPool(DEFAULT_MAX_RETAINED);
+
+    private final int                 classCount;
+
+    private final int                 maxRetained;
+
+    private final Queue<byte[]>[]     heapBuffers;
+
+    private final Queue<ByteBuffer>[] directBuffers;
+
+    private final AtomicInteger[]     heapRetained;
+
+    private final AtomicInteger[]     directRetained;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxRetained Maximum number of idle buffers kept per size class and kind.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxRetained) {
+        this.maxRetained = maxRetained;
+        this.classCount = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+        heapBuffers = new Queue[classCount];
+        directBuffers = new Queue[classCount];
+        heapRetained = new AtomicInteger[classCount];
+        directRetained = new AtomicInteger[classCount];
+        for (int i = 0; i < classCount; i++) {
+            heapBuffers[i] = new ConcurrentLinkedQueue<byte[]>();
+            directBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            heapRetained[i] = new AtomicInteger();
+            directRetained[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Returns the pool shared by all sessions of the server.
+     * 
+     * @return The pool.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Returns a heap buffer of at least the requested size (capped at {@link #MAX_SIZE}).
+     * 
+     * @param minSize The requested size.
+     * @return The buffer.
+     */
+    public byte[] acquire(int minSize) {
+        int idx = classIndex(minSize);
+        byte[] buffer = heapBuffers[idx].poll();
+        if (buffer == null) {
+            return new byte[classSize(idx)];
+        }
+        heapRetained[idx].decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained by {@link #acquire(int)} to the pool.
+     * 
+     * @param buffer The buffer, may be null.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int idx = exactClassIndex(buffer.length);
+        if (idx >= 0 && heapRetained[idx].incrementAndGet() <= maxRetained) {
+            heapBuffers[idx].offer(buffer);
+        } else if (idx >= 0) {
+            heapRetained[idx].decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a cleared direct buffer of at least the requested size (capped at {@link #MAX_SIZE}).
+     * 
+     * @param minSize The requested size.
+     * @return The buffer.
+     */
+    public ByteBuffer acquireDirect(int minSize) {
+        int idx = classIndex(minSize);
+        ByteBuffer buffer = directBuffers[idx].poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(classSize(idx));
+        }
+        directRetained[idx].decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained by {@link #acquireDirect(int)} to the pool.
+     * 
+     * @param buffer The buffer, may be null.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int idx = exactClassIndex(buffer.capacity());
+        if (idx >= 0 && directRetained[idx].incrementAndGet() <= maxRetained) {
+            directBuffers[idx].offer(buffer);
+        } else if (idx >= 0) {
+            directRetained[idx].decrementAndGet();
+        }
+    }
+
+    /**
+     * Chooses a buffer size for a transfer. Small files get a buffer that just holds them; for
+     * larger files the buffer is sized to carry about 10 ms worth of data at the throughput
+     * previously observed for the client. The configured buffer size acts as lower bound.
+     * 
+     * @param fileSize The file size in bytes, or a negative value if unknown.
+     * @param observedRate The previously observed transfer rate in KB per second, or 0 if unknown.
+     * @param configuredSize The configured buffer size.
+     * @return The buffer size, between {@link #MIN_SIZE} and {@link #MAX_SIZE}.
+     */
+    public static int suggestSize(long fileSize, long observedRate, int configuredSize) {
+        long size = Math.max(configuredSize, observedRate * 1024L * TARGET_MILLIS / 1000L);
+        if (observedRate <= 0) {
+            size = Math.max(size, MAX_SIZE / 4);
+        }
+        if (fileSize >= 0) {
+            size = Math.min(size, fileSize);
+        }
+        return (int) Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+    }
+
+    private int classIndex(int size) {
+        int idx = 0;
+        while (idx < classCount - 1 && classSize(idx) < size) {
+            idx++;
+        }
+        return idx;
+    }
+
+    private int exactClassIndex(int size) {
+        int idx = classIndex(size);
+        return classSize(idx) == size ? idx : -1;
+    }
+
+    private static int classSize(int idx) {
+        return MIN_SIZE << idx;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Output stream writing to a socket channel that is operated in non-blocking mode. If the socket
+ * send buffer is full, the calling thread waits until the channel becomes writable again.
+ * 
+ * @author Lars Behnke
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    private static final int DEFAULT_WRITE_TIMEOUT = 30000;
+
+    private SocketChannel    channel;
+
+    private Selector         writeSelector;
+
+    private int              writeTimeout;
+
+    /**
+     * Constructor.
+     * 
+     * @param channel The socket channel.
+     */
+    public ChannelOutputStream(SocketChannel channel) {
+        this(channel, DEFAULT_WRITE_TIMEOUT);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param channel The socket channel.
+     * @param writeTimeout Milliseconds to wait for a blocked channel to become writable.
+     */
+    public ChannelOutputStream(SocketChannel channel, int writeTimeout) {
+        super();
+        this.channel = channel;
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                waitUntilWritable();
+            }
+        }
+    }
+
+    private void waitUntilWritable() throws IOException {
+        if (writeSelector == null) {
+            writeSelector = Selector.open();
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+        if (writeSelector.select(writeTimeout) == 0) {
+            throw new SocketTimeoutException("Control channel not writable for " + writeTimeout + " ms.");
+        }
+        writeSelector.selectedKeys().clear();
+    }
+
+    /**
+     * Releases the selector used for waiting. The channel itself is closed by the session.
+     * 
+     * @throws IOException Thrown if the selector cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (writeSelector != null) {
+            writeSelector.close();
+            writeSelector = null;
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Buffered output stream for data connections. Small writes such as block headers or records are
+ * coalesced into large socket writes. If the socket is channel based, a full buffer and the
+ * following payload are passed to the socket with a single gathering write. Data is only flushed
+ * when the buffer is full, on explicit request and on close.
+ * 
+ * @author Lars Behnke
+ */
+public class DataChannelOutputStream extends OutputStream {
+
+    /** Size of the coalescing buffer. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private SocketChannel   channel;
+
+    private OutputStream    os;
+
+    private ByteBuffer      buffer;
+
+    private byte[]          heapBuffer;
+
+    private boolean         closeSocket = true;
+
+    /**
+     * Constructor.
+     * 
+     * @param socket The data socket.
+     * @throws IOException Thrown if the socket's output stream is not available.
+     */
+    public DataChannelOutputStream(Socket socket) throws IOException {
+        this(socket, true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param socket The data socket.
+     * @param closeSocket False, if the data connection is to be kept open when the stream is
+     *            closed.
+     * @throws IOException Thrown if the socket's output stream is not available.
+     */
+    public DataChannelOutputStream(Socket socket, boolean closeSocket) throws IOException {
+        super();
+        this.closeSocket = closeSocket;
+        this.channel = socket.getChannel();
+        if (channel != null) {
+            this.buffer = BufferPool.getDefault().acquireDirect(BUFFER_SIZE);
+        } else {
+            this.os = socket.getOutputStream();
+            this.heapBuffer = BufferPool.getDefault().acquire(BUFFER_SIZE);
+            this.buffer = ByteBuffer.wrap(heapBuffer);
+        }
+    }
+
+    /**
+     * Constructor for writing to an arbitrary stream.
+     * 
+     * @param os The nested stream.
+     */
+    public DataChannelOutputStream(OutputStream os) {
+        super();
+        this.os = os;
+        this.heapBuffer = BufferPool.getDefault().acquire(BUFFER_SIZE);
+        this.buffer = ByteBuffer.wrap(heapBuffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(int b) throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put((byte) b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if (len <= buffer.remaining()) {
+            buffer.put(b, off, len);
+        } else if (channel != null) {
+            buffer.flip();
+            ByteBuffer[] srcs = new ByteBuffer[] {buffer, ByteBuffer.wrap(b, off, len)};
+            while (srcs[1].hasRemaining()) {
+                channel.write(srcs);
+            }
+            buffer.clear();
+        } else {
+            flushBuffer();
+            if (len < buffer.capacity()) {
+                buffer.put(b, off, len);
+            } else {
+                os.write(b, off, len);
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        if (channel != null) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        } else {
+            os.write(heapBuffer, 0, buffer.position());
+            buffer.clear();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    /**
+     * Passes the pending data to the socket. Flushing a closed stream has no effect.
+     * 
+     * @throws IOException Thrown if writing fails.
+     */
+    public void flush() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        flushBuffer();
+        if (os != null) {
+            os.flush();
+        }
+    }
+
+    /**
+     * Writes the pending data and closes the data connection, unless it is to be kept open.
+     * 
+     * @throws IOException Thrown if writing fails.
+     */
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            if (heapBuffer != null) {
+                BufferPool.getDefault().release(heapBuffer);
+            } else {
+                BufferPool.getDefault().release(buffer);
+            }
+            buffer = null;
+            heapBuffer = null;
+            if (!closeSocket) {
+                if (os != null) {
+                    os.flush();
+                }
+            } else if (channel != null) {
+                channel.close();
+            } else {
+                os.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.apporiented.hermesftp.utils.IOUtils;
+
+/**
+ * Writes the lines of a directory listing to the data connection. Each line is assembled in a
+ * reused buffer and encoded straight into a fixed size byte buffer, so the memory needed does not
+ * depend on the number of entries listed. Optionally, a copy of the output is captured up to a
+ * given size, so that the listing can be cached.
+ * 
+ * @author Lars Behnke
+ */
+public class ListingWriter {
+
+    private static final String   LINE_SEP = System.getProperty("line.separator");
+
+    private static final String   CRLF     = "\r\n";
+
+    private OutputStream          os;
+
+    private CharsetEncoder        encoder;
+
+    private ByteBuffer            bytes;
+
+    private CharBuffer            chars;
+
+    private StringBuilder         line     = new StringBuilder(128);
+
+    private Calendar              cal      = new GregorianCalendar(Locale.US);
+
+    private Calendar              utc      = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.US);
+
+    private ByteArrayOutputStream capture;
+
+    private int                   captureLimit;
+
+    /**
+     * Constructor.
+     * 
+     * @param os The output stream of the data connection.
+     * @param charset The character set of the listing.
+     * @param bufferSize The size of the output buffer.
+     */
+    public ListingWriter(OutputStream os, String charset, int bufferSize) {
+        this.os = os;
+        this.encoder = Charset.forName(charset).newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, 64));
+        this.chars = CharBuffer.allocate(line.capacity());
+    }
+
+    /**
+     * Writes a line containing only the file name.
+     * 
+     * @param name The file name.
+     * @throws IOException Error on writing the line.
+     */
+    public void writeName(String name) throws IOException {
+        line.setLength(0);
+        line.append(name);
+        writeLine(LINE_SEP);
+    }
+
+    /**
+     * Writes a directory entry in Unix format.
+     * 
+     * @param name The file name.
+     * @param dir True if the entry is a directory.
+     * @param size The file size.
+     * @param lastModified The time of last modification in milliseconds.
+     * @param read True if readable.
+     * @param write True if writable.
+     * @throws IOException Error on writing the line.
+     */
+    public void writeUnixFileInfo(String name, boolean dir, long size, long lastModified, boolean read,
+                                  boolean write) throws IOException {
+        line.setLength(0);
+        IOUtils.appendUnixFtpFileInfo(line, name, dir, size, lastModified, read, write, cal);
+        writeLine(LINE_SEP);
+    }
+
+    /**
+     * Writes a directory entry in the machine readable format of MLSD (RFC 3659). The line is
+     * terminated by CRLF, whatever the platform.
+     * 
+     * @param name The file name.
+     * @param facts The names of the facts to write.
+     * @param attrs The attributes of the file.
+     * @param read True if readable.
+     * @param write True if writable.
+     * @throws IOException Error on writing the line.
+     */
+    public void writeFacts(String name, String[] facts, BasicFileAttributes attrs, boolean read, boolean write)
+            throws IOException {
+        line.setLength(0);
+        IOUtils.appendMlsxFacts(line, name, facts, attrs, read, write, utc);
+        writeLine(CRLF);
+    }
+
+    /**
+     * Writes an already encoded listing.
+     * 
+     * @param data The listing.
+     * @throws IOException Error on writing.
+     */
+    public void write(byte[] data) throws IOException {
+        flush();
+        os.write(data);
+    }
+
+    /**
+     * Starts to capture the output. Capturing is given up if the output exceeds the passed limit.
+     * 
+     * @param limit The maximum number of bytes captured.
+     */
+    public void startCapture(int limit) {
+        capture = new ByteArrayOutputStream(Math.min(limit, bytes.capacity()));
+        captureLimit = limit;
+    }
+
+    /**
+     * Stops capturing and returns the output written since capturing was started. Pending output
+     * should be flushed before.
+     * 
+     * @return The output, or null if it has exceeded the limit.
+     */
+    public byte[] stopCapture() {
+        byte[] result = capture == null ? null : capture.toByteArray();
+        capture = null;
+        return result;
+    }
+
+    /**
+     * Writes the pending output to the data connection.
+     * 
+     * @throws IOException Error on writing.
+     */
+    public void flush() throws IOException {
+        chars.clear();
+        chars.flip();
+        encode(true);
+        while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        encoder.reset();
+        drain();
+        os.flush();
+    }
+
+    /**
+     * Writes the pending output and closes the output stream.
+     * 
+     * @throws IOException Error on writing or closing.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            os.close();
+        }
+    }
+
+    private void writeLine(String lineSep) throws IOException {
+        line.append(lineSep);
+        int len = line.length();
+        if (len > chars.capacity()) {
+            chars = CharBuffer.allocate(len);
+        }
+        chars.clear();
+        line.getChars(0, len, chars.array(), 0);
+        chars.limit(len);
+        encode(false);
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        while (encoder.encode(chars, bytes, endOfInput) == CoderResult.OVERFLOW) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (bytes.position() > 0) {
+            os.write(bytes.array(), 0, bytes.position());
+            if (capture != null) {
+                if (capture.size() + bytes.position() > captureLimit) {
+                    capture = null;
+                } else {
+                    capture.write(bytes.array(), 0, bytes.position());
+                }
+            }
+            bytes.clear();
+        }
+    }
+
+}
@@ -47,6 +47,8 @@ public class TextInputStream extends InputStream implements RecordReadSupport {
 
     private ByteArrayInputStream byteBuffer;
 
+    private char[]               chars       = new char[BUFFER_SIZE];
+
     /**
      * Constructor.
      * 
@@ -84,7 +86,6 @@ public class TextInputStream extends InputStream implements RecordReadSupport {
             result = byteBuffer.read();
         }
         if (result == -1) {
-            char[] chars = new char[BUFFER_SIZE];
             int charCount = reader.read(chars);
             if (charCount == -1) {
                 return -1;
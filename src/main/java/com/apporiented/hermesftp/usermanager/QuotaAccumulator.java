@@ -0,0 +1,121 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.usermanager;
+
+import java.util.Map;
+
+import com.apporiented.hermesftp.common.FtpSessionContext;
+import com.apporiented.hermesftp.exception.FtpQuotaException;
+
+/**
+ * Accounts for the resources consumed by a single transfer. Instead of updating the user
+ * statistics for every buffer, quota is reserved from the user manager in large increments and
+ * consumed locally. The unused part of the last reservation is returned when the transfer is
+ * closed. Instances are not thread safe; each transfer uses its own accumulator.
+ * 
+ * @author Lars Behnke
+ */
+public class QuotaAccumulator {
+
+    /**
+     * The default amount reserved at once.
+     */
+    public static final long  DEFAULT_INCREMENT = 1024 * 1024;
+
+    private FtpSessionContext ctx;
+
+    private String            limitName;
+
+    private long              increment;
+
+    private long              reserved;
+
+    private long              unpublished;
+
+    /**
+     * Constructor.
+     * 
+     * @param ctx The session context.
+     * @param limitName The name of the consumption type (resource limit).
+     */
+    public QuotaAccumulator(FtpSessionContext ctx, String limitName) {
+        this(ctx, limitName, DEFAULT_INCREMENT);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param ctx The session context.
+     * @param limitName The name of the consumption type (resource limit).
+     * @param increment The amount reserved at once.
+     */
+    public QuotaAccumulator(FtpSessionContext ctx, String limitName, long increment) {
+        super();
+        this.ctx = ctx;
+        this.limitName = limitName;
+        this.increment = increment;
+    }
+
+    /**
+     * Registers consumed resources. A new share of the limit is reserved only if the current
+     * reservation is exhausted.
+     * 
+     * @param value The consumed resources.
+     * @throws FtpQuotaException Thrown if the resource limit has been reached.
+     */
+    public void add(long value) throws FtpQuotaException {
+        reserved -= value;
+        unpublished += value;
+        while (reserved < 0) {
+            reserved += ctx.getUserManager().reserveResource(ctx.getUser(), limitName,
+                Math.max(increment, -reserved));
+            publish();
+        }
+    }
+
+    /**
+     * Returns the unused reservation to the user manager and updates the session statistics.
+     */
+    public void close() {
+        if (reserved > 0) {
+            ctx.getUserManager().releaseResource(ctx.getUser(), limitName, reserved);
+            reserved = 0;
+        }
+        publish();
+    }
+
+    private void publish() {
+        if (unpublished == 0) {
+            return;
+        }
+        Map<String, Long> stats = ctx.getSessionStatistics();
+        synchronized (stats) {
+            Long consumption = stats.get(limitName);
+            stats.put(limitName, (consumption == null ? 0 : consumption) + unpublished);
+        }
+        unpublished = 0;
+    }
+
+}
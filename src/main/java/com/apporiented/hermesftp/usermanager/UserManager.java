@@ -51,6 +51,29 @@ public interface UserManager {
      */
     void updateIncrementalStatistics(String user, String limitName, long value) throws FtpQuotaException;
 
+    /**
+     * Reserves a share of the user's resource limit in advance. The reserved amount is accounted
+     * for as consumed. If less than the requested amount is left, the remainder is granted.
+     * Concurrent reservations are not serialized, so the limit may be exceeded by at most one
+     * reservation per concurrent transfer.
+     *
+     * @param user The user name.
+     * @param limitName The name of the consumption type (resource limit).
+     * @param amount The requested amount.
+     * @return The granted amount.
+     * @throws FtpQuotaException Thrown if resource limit has been reached.
+     */
+    long reserveResource(String user, String limitName, long amount) throws FtpQuotaException;
+
+    /**
+     * Returns the unused part of a reservation.
+     *
+     * @param user The user name.
+     * @param limitName The name of the consumption type (resource limit).
+     * @param amount The amount not consumed.
+     */
+    void releaseResource(String user, String limitName, long amount);
+
     /**
      * Registers the current user's transfer rate. A mean value is calculated.
      * 
@@ -137,4 +160,12 @@ public interface UserManager {
      */
     boolean isLoaded() throws FtpConfigException;
 
+    /**
+     * Returns the version of the configuration, which is incremented each time the configuration
+     * is (re)loaded. Sessions compare it to detect stale copies of user and group data.
+     * 
+     * @return The configuration version.
+     */
+    long getConfigVersion();
+
 }
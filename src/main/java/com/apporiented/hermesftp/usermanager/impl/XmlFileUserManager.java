@@ -25,13 +25,14 @@
 package com.apporiented.hermesftp.usermanager.impl;
 
 import java.security.NoSuchAlgorithmException;
-import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Date;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.apporiented.hermesftp.common.FtpSessionContext;
 import com.apporiented.hermesftp.exception.FtpConfigException;
@@ -48,6 +49,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
+ * User manager based on an XML file. The resource consumption is recorded per user and day in
+ * striped counters, so that concurrent transfers do not contend on the manager's monitor. The
+ * limits of a user are computed once from the user's groups and cached until the configuration is
+ * reloaded.
+ * 
  * @author Lars Behnke
  */
 public class XmlFileUserManager implements UserManager {
@@ -58,10 +64,15 @@ public class XmlFileUserManager implements UserManager {
 
     private UserManagerData userManagerData;
 
-    private Map<String, Map<String, Long>> resourceConsumption = Collections
-            .synchronizedMap(new HashMap<String, Map<String, Long>>());
+    private ConcurrentMap<String, ConcurrentMap<String, LongAdder>> resourceConsumption =
+            new ConcurrentHashMap<String, ConcurrentMap<String, LongAdder>>();
+
+    private ConcurrentMap<String, ConcurrentMap<String, Long>> userLimits =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Long>>();
 
-    private DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private volatile DayKey dayKey;
+
+    private volatile long configVersion;
 
     /**
      * {@inheritDoc}
@@ -115,6 +126,15 @@ public class XmlFileUserManager implements UserManager {
      */
     public synchronized void load() throws FtpConfigException {
         userManagerData = fileReader.read();
+        userLimits.clear();
+        configVersion++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getConfigVersion() {
+        return configVersion;
     }
 
     /**
@@ -139,18 +159,11 @@ public class XmlFileUserManager implements UserManager {
      * {@inheritDoc}
      */
     public void checkResourceConsumption(String user, String[] limitNames) throws FtpQuotaException {
-        Map<String, Long> userConsumptions = getUserStatistics(user);
-        for (String limitName : userConsumptions.keySet()) {
-            Long consumptionObj = userConsumptions.get(limitName);
-            long consumption = consumptionObj == null ? 0 : consumptionObj;
-            long limit;
-            try {
-                GroupDataList list = getGroupDataList(user);
-                limit = list.getUpperLimit(limitName);
-            } catch (FtpConfigException e) {
-                log.error(e);
-                limit = 0;
-            }
+        Map<String, LongAdder> userConsumptions = getUserResourceConsumptions(user);
+        for (Map.Entry<String, LongAdder> entry : userConsumptions.entrySet()) {
+            String limitName = entry.getKey();
+            long consumption = entry.getValue().sum();
+            long limit = getUpperLimit(user, limitName);
             if (consumption >= limit) {
                 throw new FtpQuotaException(createQuotaMessage(limitName, consumption, limit));
             }
@@ -163,53 +176,70 @@ public class XmlFileUserManager implements UserManager {
      */
     public void updateIncrementalStatistics(String user, String limitName, long value)
             throws FtpQuotaException {
-        Map<String, Long> userConsumptions = getUserStatistics(user);
-        Long consumptionObj = userConsumptions.get(limitName);
-        long consumption = consumptionObj == null ? 0 : consumptionObj;
-        consumption += value;
-        long limit;
-        try {
-            GroupDataList list = getGroupDataList(user);
-            limit = list.getUpperLimit(limitName);
-        } catch (FtpConfigException e) {
-            log.error(e);
-            limit = 0;
-        }
+        LongAdder counter = getCounter(user, limitName);
+        long consumption = counter.sum() + value;
+        long limit = getUpperLimit(user, limitName);
         if (consumption > limit) {
             throw new FtpQuotaException(createQuotaMessage(limitName, consumption, limit));
         }
-        userConsumptions.put(limitName, consumption);
+        counter.add(value);
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long reserveResource(String user, String limitName, long amount) throws FtpQuotaException {
+        LongAdder counter = getCounter(user, limitName);
+        long consumption = counter.sum();
+        long limit = getUpperLimit(user, limitName);
+        if (consumption >= limit) {
+            throw new FtpQuotaException(createQuotaMessage(limitName, consumption + amount, limit));
+        }
+        long granted = Math.min(amount, limit - consumption);
+        counter.add(granted);
+        return granted;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void releaseResource(String user, String limitName, long amount) {
+        getCounter(user, limitName).add(-amount);
+    }
+
     /**
      * {@inheritDoc}
      */
     public void updateAverageStatistics(String user, String avgKey, long value) {
         String countKey = "Sample count (" + avgKey + ")";
-        Map<String, Long> userConsumptions = getUserStatistics(user);
-        Long prevAvgObj = userConsumptions.get(avgKey);
-        long prevAvg = prevAvgObj == null ? 0 : prevAvgObj;
-        Long prevCountObj = userConsumptions.get(countKey);
-        long prevCount = prevCountObj == null ? 0 : prevCountObj;
-        long currentAvg = (prevAvg * prevCount + value) / (prevCount + 1);
-        userConsumptions.put(avgKey, currentAvg);
-        userConsumptions.put(countKey, prevCount + 1);
+        ConcurrentMap<String, LongAdder> userConsumptions = getUserResourceConsumptions(user);
+        LongAdder avg = getCounter(userConsumptions, avgKey);
+        LongAdder count = getCounter(userConsumptions, countKey);
+        synchronized (userConsumptions) {
+            long prevAvg = avg.sum();
+            long prevCount = count.sum();
+            avg.add((prevAvg * prevCount + value) / (prevCount + 1) - prevAvg);
+            count.increment();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     public Map<String, Long> getUserStatistics(String user) {
-        String userAndDate = getUserAndDateKey(user);
-        return getUserResourceConsumptions(userAndDate);
+        return createSnapshot(getUserResourceConsumptions(user));
     }
 
     /**
      * {@inheritDoc}
      */
     public Map<String, Map<String, Long>> getAllStatistics() {
-        return resourceConsumption;
+        Map<String, Map<String, Long>> result = new HashMap<String, Map<String, Long>>();
+        for (Map.Entry<String, ConcurrentMap<String, LongAdder>> entry : resourceConsumption.entrySet()) {
+            result.put(entry.getKey(), createSnapshot(entry.getValue()));
+        }
+        return result;
     }
 
     /**
@@ -228,20 +258,103 @@ public class XmlFileUserManager implements UserManager {
     }
 
     private String getUserAndDateKey(String user) {
-        return dateFormat.format(new Date()) + " " + user;
+        DayKey day = dayKey;
+        long now = System.currentTimeMillis();
+        if (day == null || now >= day.end) {
+            day = new DayKey(now);
+            dayKey = day;
+        }
+        return day.name + " " + user;
     }
 
-    private Map<String, Long> getUserResourceConsumptions(String userAndDate) {
-        Map<String, Long> userConsumption = resourceConsumption.get(userAndDate);
+    private ConcurrentMap<String, LongAdder> getUserResourceConsumptions(String user) {
+        String userAndDate = getUserAndDateKey(user);
+        ConcurrentMap<String, LongAdder> userConsumption = resourceConsumption.get(userAndDate);
         if (userConsumption == null) {
-            userConsumption = Collections.synchronizedMap(new HashMap<String, Long>());
-            resourceConsumption.put(userAndDate, userConsumption);
+            userConsumption = new ConcurrentHashMap<String, LongAdder>();
+            ConcurrentMap<String, LongAdder> prev = resourceConsumption.putIfAbsent(userAndDate, userConsumption);
+            if (prev != null) {
+                userConsumption = prev;
+            }
         }
         return userConsumption;
     }
 
+    private LongAdder getCounter(String user, String limitName) {
+        return getCounter(getUserResourceConsumptions(user), limitName);
+    }
+
+    private LongAdder getCounter(ConcurrentMap<String, LongAdder> userConsumption, String key) {
+        LongAdder counter = userConsumption.get(key);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder prev = userConsumption.putIfAbsent(key, counter);
+            if (prev != null) {
+                counter = prev;
+            }
+        }
+        return counter;
+    }
+
+    private Map<String, Long> createSnapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the limit of the passed user. The limits are derived from the user's groups on first
+     * access and cached until the configuration is reloaded.
+     */
+    private long getUpperLimit(String user, String limitName) {
+        ConcurrentMap<String, Long> limits = userLimits.get(user);
+        if (limits == null) {
+            limits = new ConcurrentHashMap<String, Long>();
+            ConcurrentMap<String, Long> prev = userLimits.putIfAbsent(user, limits);
+            if (prev != null) {
+                limits = prev;
+            }
+        }
+        Long limit = limits.get(limitName);
+        if (limit == null) {
+            try {
+                GroupDataList list = getGroupDataList(user);
+                limit = list.getUpperLimit(limitName);
+                limits.put(limitName, limit);
+            } catch (FtpConfigException e) {
+                log.error(e);
+                limit = 0L;
+            }
+        }
+        return limit;
+    }
+
     private String createQuotaMessage(String limitName, long consumption, long limit) {
         return limitName + " exceed limit of " + limit + " (current consumption is " + consumption + ")";
     }
 
+    /**
+     * The formatted current date and the time it expires.
+     */
+    private static final class DayKey {
+
+        private final String name;
+
+        private final long   end;
+
+        private DayKey(long now) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(now);
+            name = new SimpleDateFormat("yyyy-MM-dd").format(cal.getTime());
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            cal.set(Calendar.MINUTE, 0);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            end = cal.getTimeInMillis();
+        }
+    }
+
 }
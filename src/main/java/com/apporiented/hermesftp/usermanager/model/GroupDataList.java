@@ -49,6 +49,17 @@ public class GroupDataList {
         list.add(data);
     }
 
+    /**
+     * Returns a snapshot of the groups.
+     * 
+     * @return The groups.
+     */
+    public List<GroupData> getGroups() {
+        synchronized (list) {
+            return new ArrayList<GroupData>(list);
+        }
+    }
+
     /**
      * Clears all group data from the list.
      */
@@ -93,6 +104,28 @@ public class GroupDataList {
         return limit;
     }
 
+    /**
+     * Returns the group that defines the upper limit of the constraint named by the passed key.
+     * 
+     * @param key The name of the constraint.
+     * @return The group or null, if the constraint is unlimited.
+     */
+    public GroupData getLimitingGroup(String key) {
+        GroupData result = null;
+        synchronized (list) {
+            for (GroupData data : list) {
+                long l = data.getLimit(key);
+                if (l < 0 || l == Long.MAX_VALUE) {
+                    return null;
+                }
+                if (result == null || l > result.getLimit(key)) {
+                    result = data;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * The permission on a given path.
      * 
@@ -96,15 +96,35 @@ public class PermissionData {
             return false;
         }
         AntPathMatcher pathMatcher = new AntPathMatcher();
-        String antPath = replacePlaceholders(ftproot, username);
-        antPath = FilenameUtils.normalizeNoEndSeparator(antPath);
-        antPath = FilenameUtils.separatorsToUnix(antPath);
-        checkPath = FilenameUtils.normalizeNoEndSeparator(checkPath);
-        checkPath = FilenameUtils.separatorsToUnix(checkPath);
+        String antPath = resolvePath(ftproot, username);
+        checkPath = normalize(checkPath);
         return pathMatcher.match(antPath, checkPath);
 
     }
 
+    /**
+     * Fills the placeholders in the path template and normalizes the result.
+     *
+     * @param ftproot The ftp root folder.
+     * @param username The username.
+     * @return The ant style path pattern.
+     * @throws FtpConfigException Unresolved placeholders found.
+     */
+    public String resolvePath(String ftproot, String username) throws FtpConfigException {
+        return normalize(replacePlaceholders(ftproot, username));
+    }
+
+    /**
+     * Normalizes a path for matching: Unix separators, no trailing separator, no relative
+     * segments.
+     *
+     * @param path The path.
+     * @return The normalized path, null if the path is invalid.
+     */
+    public static String normalize(String path) {
+        return FilenameUtils.separatorsToUnix(FilenameUtils.normalizeNoEndSeparator(path));
+    }
+
     private String replacePlaceholders(String ftproot, String username) throws FtpConfigException {
         VarMerger varMerger = new VarMerger(getTemplate());
         Properties props = new Properties();
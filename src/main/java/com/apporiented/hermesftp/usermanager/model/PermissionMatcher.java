@@ -0,0 +1,187 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.usermanager.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.apporiented.hermesftp.common.FtpConstants;
+import com.apporiented.hermesftp.exception.FtpConfigException;
+
+/**
+ * The permissions of a single user, compiled once at login. Placeholders in the path templates are
+ * resolved in advance and each ant style template is translated into a regular expression, so
+ * checking a path no longer merges and parses the templates. The result is the same as that of
+ * {@link GroupDataList#getPermission(String, String, String)}: within a group the first matching
+ * template wins, across the groups the highest permission. Instances are immutable.
+ * 
+ * @author Lars Behnke
+ */
+public final class PermissionMatcher {
+
+    private final Rule[][] groups;
+
+    private PermissionMatcher(Rule[][] groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Compiles the permissions of the passed groups.
+     * 
+     * @param groupList The groups of the user.
+     * @param ftproot The absolute ftp root directory.
+     * @param username The user name.
+     * @return The matcher.
+     * @throws FtpConfigException Unresolved placeholders found.
+     */
+    public static PermissionMatcher compile(GroupDataList groupList, String ftproot, String username)
+            throws FtpConfigException {
+        List<GroupData> groupDataList = groupList.getGroups();
+        Rule[][] groups = new Rule[groupDataList.size()][];
+        for (int i = 0; i < groups.length; i++) {
+            List<Rule> rules = new ArrayList<Rule>();
+            for (PermissionData data : groupDataList.get(i).getPermissions()) {
+                rules.add(new Rule(data.resolvePath(ftproot, username), data.getPermission()));
+            }
+            groups[i] = rules.toArray(new Rule[rules.size()]);
+        }
+        return new PermissionMatcher(groups);
+    }
+
+    /**
+     * The permission on a given path.
+     * 
+     * @param path The path to check.
+     * @return The permission constant.
+     */
+    public int getPermission(String path) {
+        int result = FtpConstants.PRIV_NONE;
+        String checkPath = path == null ? null : PermissionData.normalize(path);
+        if (checkPath == null) {
+            return result;
+        }
+        for (Rule[] rules : groups) {
+            for (Rule rule : rules) {
+                if (rule.matches(checkPath)) {
+                    result = Math.max(result, rule.permission);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Translates an ant style path pattern into a regular expression: <code>?</code> matches one
+     * character, <code>*</code> zero or more characters of a path segment and <code>**</code>
+     * zero or more path segments. As with ant, a pattern matches absolute paths only if it is
+     * absolute itself.
+     * 
+     * @param antPath The ant style pattern.
+     * @return The regular expression.
+     */
+    static String toRegex(String antPath) {
+        StringBuilder sb = new StringBuilder(antPath.startsWith("/") ? "(?=/)" : "(?!/)");
+        String[] segments = antPath.split("/", -1);
+        if (segments.length == 1 && "**".equals(segments[0])) {
+            return sb.append(".*").toString();
+        }
+        boolean separate = false;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if ("**".equals(segment)) {
+                if (i == 0) {
+                    sb.append("(?:[^/]*/)*");
+                    separate = false;
+                } else {
+                    sb.append("(?:/[^/]*)*");
+                }
+                continue;
+            }
+            if (separate) {
+                sb.append('/');
+            }
+            appendSegment(sb, segment);
+            separate = true;
+        }
+        return sb.toString();
+    }
+
+    private static void appendSegment(StringBuilder sb, String segment) {
+        int start = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    sb.append(Pattern.quote(segment.substring(start, i)));
+                }
+                sb.append(c == '*' ? "[^/]*" : "[^/]");
+                start = i + 1;
+            }
+        }
+        if (start < segment.length()) {
+            sb.append(Pattern.quote(segment.substring(start)));
+        }
+    }
+
+    /**
+     * A compiled path template. The literal directory part in front of the first wildcard rejects
+     * most paths before the expression is evaluated.
+     */
+    private static final class Rule {
+
+        private final String  prefix;
+
+        private final Pattern pattern;
+
+        private final int     permission;
+
+        private Rule(String antPath, int permission) {
+            int wildcard = indexOfWildcard(antPath);
+            this.prefix = wildcard < 0 ? antPath : antPath.substring(0, Math.max(0, antPath.lastIndexOf('/',
+                wildcard)));
+            this.pattern = wildcard < 0 ? null : Pattern.compile(toRegex(antPath));
+            this.permission = permission;
+        }
+
+        private static int indexOfWildcard(String antPath) {
+            int star = antPath.indexOf('*');
+            int question = antPath.indexOf('?');
+            if (star < 0 || question < 0) {
+                return Math.max(star, question);
+            }
+            return Math.min(star, question);
+        }
+
+        private boolean matches(String path) {
+            if (pattern == null) {
+                return prefix.equals(path);
+            }
+            return path.startsWith(prefix) && pattern.matcher(path).matches();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Splits the bytes received on the control connection into command lines. Lines are terminated by
+ * LF, carriage returns are dropped. The line buffer has a fixed size and is reused for every line;
+ * bytes exceeding the maximum line length are discarded up to the next line end and the line is
+ * marked as truncated.
+ * <p>
+ * Pure ASCII lines, which is what command tokens and most arguments consist of, are converted
+ * without a decoder. Other lines are decoded as UTF-8 (RFC 2640); if they are not valid UTF-8 they
+ * are taken as ISO-8859-1.
+ * 
+ * @author Lars Behnke
+ */
+public class CmdLineFramer {
+
+    /** Default maximum length of a command line in bytes. */
+    public static final int      DEFAULT_MAX_LINE_LENGTH = 500;
+
+    private static final Charset ASCII_COMPATIBLE        = Charset.forName("ISO-8859-1");
+
+    private final byte[]         line;
+
+    private int                  length;
+
+    private boolean              overflow;
+
+    private boolean              nonAscii;
+
+    private boolean              truncated;
+
+    private CharsetDecoder       decoder;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxLineLength The maximum length of a command line in bytes, excluding the line end.
+     */
+    public CmdLineFramer(int maxLineLength) {
+        super();
+        this.line = new byte[maxLineLength > 0 ? maxLineLength : DEFAULT_MAX_LINE_LENGTH];
+    }
+
+    /**
+     * Consumes bytes from the passed buffer up to the end of the next command line.
+     * 
+     * @param in The received bytes.
+     * @return The command line without line end or null, if the buffer does not contain a complete
+     *         line. The bytes consumed so far are kept for the next call.
+     */
+    public String nextLine(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\n') {
+                return completeLine();
+            } else if (b == '\r') {
+                continue;
+            } else if (length < line.length) {
+                line[length++] = b;
+                nonAscii |= b < 0;
+            } else {
+                overflow = true;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the last line returned exceeded the maximum line length.
+     * 
+     * @return True, if the line has been cut off.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the maximum length of a command line.
+     * 
+     * @return The length in bytes.
+     */
+    public int getMaxLineLength() {
+        return line.length;
+    }
+
+    private String completeLine() {
+        String result = nonAscii ? decode() : new String(line, 0, length, ASCII_COMPATIBLE);
+        truncated = overflow;
+        length = 0;
+        overflow = false;
+        nonAscii = false;
+        return result;
+    }
+
+    private String decode() {
+        if (decoder == null) {
+            decoder = Charset.forName("UTF-8").newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+        try {
+            CharBuffer chars = decoder.reset().decode(ByteBuffer.wrap(line, 0, length));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return new String(line, 0, length, ASCII_COMPATIBLE);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads command lines from the input stream of a blocking control connection. The stream is read
+ * in chunks into a fixed buffer and split by a {@link CmdLineFramer}, so the memory held per
+ * session does not depend on what the client sends.
+ * 
+ * @author Lars Behnke
+ */
+public class CmdLineReader {
+
+    private static final int BUFFER_SIZE     = 1024;
+
+    private static final int LOG_LINE_LENGTH = 80;
+
+    private static Log       log             = LogFactory.getLog(CmdLineReader.class);
+
+    private InputStream      in;
+
+    private ByteBuffer       buffer;
+
+    private CmdLineFramer    framer;
+
+    /**
+     * Constructor.
+     * 
+     * @param in The input stream of the control connection.
+     * @param maxLineLength The maximum length of a command line in bytes.
+     */
+    public CmdLineReader(InputStream in, int maxLineLength) {
+        super();
+        this.in = in;
+        this.framer = new CmdLineFramer(maxLineLength);
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Reads the next command line. Blocks until a complete line has been received.
+     * 
+     * @return The command line without line end or null, if the client has closed the connection.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            String line = framer.nextLine(buffer);
+            if (line != null) {
+                if (log.isDebugEnabled()) {
+                    logLine(line);
+                }
+                return line;
+            }
+            int count = in.read(buffer.array(), 0, buffer.capacity());
+            if (count < 0) {
+                return null;
+            }
+            buffer.clear();
+            buffer.limit(count);
+        }
+    }
+
+    private void logLine(String line) {
+        String x;
+        if (line.length() >= LOG_LINE_LENGTH) {
+            x = line.substring(0, LOG_LINE_LENGTH) + " [" + (line.length() - LOG_LINE_LENGTH) + " more chars]";
+        } else {
+            x = line;
+        }
+        log.debug("<--: " + x + (framer.isTruncated() ? " [truncated]" : ""));
+    }
+
+    /**
+     * Checks whether the last line read exceeded the maximum line length.
+     * 
+     * @return True, if the line has been cut off.
+     */
+    public boolean isTruncated() {
+        return framer.isTruncated();
+    }
+
+    /**
+     * Closes the underlying stream.
+     * 
+     * @throws IOException Thrown if the stream cannot be closed.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+
+/**
+ * Accepts the directory entries whose name matches a wildcard pattern. Supported are
+ * <code>*</code> (any number of characters), <code>?</code> (exactly one character), character
+ * classes such as <code>[a-c]</code> and <code>[!0-9]</code> as well as alternatives like
+ * <code>{csv,txt}</code>. The pattern is compiled once, entries are matched by name only, so the
+ * filter does not access the file system.
+ * 
+ * @author Lars Behnke
+ */
+public class GlobFilter implements DirectoryStream.Filter<Path> {
+
+    private static final String WILDCARDS = "*?[{";
+
+    private String              pattern;
+
+    private PathMatcher         matcher;
+
+    /**
+     * Constructor.
+     * 
+     * @param pattern The wildcard pattern.
+     * @throws IllegalArgumentException Thrown if the pattern is invalid.
+     */
+    public GlobFilter(String pattern) {
+        this.pattern = pattern;
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    }
+
+    /**
+     * Checks if the passed file name contains wildcards.
+     * 
+     * @param name The file name.
+     * @return True, if the name is a wildcard pattern.
+     */
+    public static boolean isPattern(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (WILDCARDS.indexOf(name.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean accept(Path entry) {
+        Path name = entry.getFileName();
+        return name != null && matcher.matches(name);
+    }
+
+    /**
+     * Getter method for the java bean <code>pattern</code>.
+     * 
+     * @return Returns the value of the java bean <code>pattern</code>.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hashed timer wheel serving the timeouts of all sessions of a server on a single thread. A
+ * timeout is kept in the bucket of the tick its deadline falls into, so scheduling, resetting and
+ * cancelling take constant time. The timer thread sleeps until the next non-empty bucket is due
+ * and does not wake up at all as long as no timeout is pending.
+ * <p>
+ * Resetting a timeout to a later deadline, e.g. on client activity, only updates the deadline.
+ * The timeout is moved when its old bucket comes up. Expiry tasks run on the timer thread and
+ * must not block.
+ * 
+ * @author Lars Behnke
+ */
+public class HashedWheelTimer implements Runnable {
+
+    private static Log           log     = LogFactory.getLog(HashedWheelTimer.class);
+
+    private final long           tickNanos;
+
+    private final Timeout[]      wheel;
+
+    private final int            mask;
+
+    private final long           startTime;
+
+    private final Queue<Timeout> changes = new ConcurrentLinkedQueue<Timeout>();
+
+    private final Thread         worker;
+
+    private long                 tick;
+
+    private volatile long        wakeAt;
+
+    private volatile boolean     terminated;
+
+    /**
+     * Constructor.
+     * 
+     * @param name The name of the timer thread.
+     * @param tickMillis The duration of a tick in milliseconds, i.e. the timer resolution.
+     * @param wheelSize The number of buckets, rounded up to a power of two.
+     */
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize) {
+        super();
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.wakeAt = Long.MIN_VALUE;
+        this.worker = new Thread(this, name);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Starts the timer thread.
+     */
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Stops the timer thread. Pending timeouts do not expire any more.
+     */
+    public void stop() {
+        terminated = true;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Schedules a task.
+     * 
+     * @param task The task to run when the timeout expires.
+     * @param delayMillis The delay in milliseconds.
+     * @return The timeout.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(this, task);
+        timeout.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        submit(timeout);
+        return timeout;
+    }
+
+    private void submit(Timeout timeout) {
+        changes.add(timeout);
+        if (timeout.deadline < wakeAt) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+        while (!terminated) {
+            wakeAt = Long.MIN_VALUE;
+            applyChanges();
+            long now = System.nanoTime();
+            expireTimeouts(now);
+            long next = nextBucketTime();
+            wakeAt = next;
+            if (!changes.isEmpty()) {
+                continue;
+            }
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, next - System.nanoTime());
+            }
+        }
+    }
+
+    private void applyChanges() {
+        Timeout timeout;
+        while ((timeout = changes.poll()) != null) {
+            unlink(timeout);
+            if (timeout.state.get() == Timeout.PENDING) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void expireTimeouts(long now) {
+        long currentTick = (now - startTime) / tickNanos;
+        long from = Math.max(tick + 1, currentTick - mask);
+        for (long t = from; t <= currentTick; t++) {
+            tick = t;
+            Timeout timeout = wheel[(int) (t & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                unlink(timeout);
+                if (timeout.state.get() == Timeout.PENDING) {
+                    if (timeout.deadline - now > 0) {
+                        place(timeout);
+                    } else {
+                        timeout.expire();
+                    }
+                }
+                timeout = next;
+            }
+        }
+        tick = Math.max(tick, currentTick);
+    }
+
+    private void place(Timeout timeout) {
+        long ticks = (timeout.deadline - startTime + tickNanos - 1) / tickNanos;
+        if (ticks <= tick) {
+            ticks = tick + 1;
+        }
+        int slot = (int) (ticks & mask);
+        long visitTick = tick + 1 + ((slot - (tick + 1)) & mask);
+        timeout.bucket = slot;
+        timeout.next = wheel[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        wheel[slot] = timeout;
+        timeout.visitTime = startTime + visitTick * tickNanos;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+        if (timeout.prev == null) {
+            wheel[timeout.bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        timeout.visitTime = Long.MAX_VALUE;
+    }
+
+    private long nextBucketTime() {
+        for (int i = 1; i <= wheel.length; i++) {
+            if (wheel[(int) ((tick + i) & mask)] != null) {
+                return startTime + (tick + i) * tickNanos;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout {
+
+        private static final int       PENDING   = 0;
+
+        private static final int       CANCELLED = 1;
+
+        private static final int       EXPIRED   = 2;
+
+        private final HashedWheelTimer timer;
+
+        private final Runnable         task;
+
+        private final AtomicInteger    state     = new AtomicInteger(PENDING);
+
+        private volatile long          deadline;
+
+        private volatile long          visitTime = Long.MAX_VALUE;
+
+        private Timeout                prev;
+
+        private Timeout                next;
+
+        private int                    bucket    = -1;
+
+        private Timeout(HashedWheelTimer timer, Runnable task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        /**
+         * Moves the deadline of a pending timeout.
+         * 
+         * @param delayMillis The new delay in milliseconds, counted from now.
+         * @return False, if the timeout has already expired or has been cancelled.
+         */
+        public boolean reset(long delayMillis) {
+            if (state.get() != PENDING) {
+                return false;
+            }
+            long d = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            deadline = d;
+            if (d < visitTime) {
+                timer.submit(this);
+            }
+            return true;
+        }
+
+        /**
+         * Cancels the timeout. The task will not run.
+         * 
+         * @return False, if the timeout has already expired or has been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            timer.changes.add(this);
+            return true;
+        }
+
+        /**
+         * Checks whether the task has been run.
+         * 
+         * @return True, if expired.
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        /**
+         * Checks whether the timeout has been cancelled.
+         * 
+         * @return True, if cancelled.
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Timeout task failed", e);
+            }
+        }
+    }
+
+}
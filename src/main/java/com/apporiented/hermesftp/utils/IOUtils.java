@@ -24,6 +24,7 @@
 
 package com.apporiented.hermesftp.utils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,15 +32,14 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.text.DateFormat;
-import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
 
-import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.BeanUtils;
 
 /**
@@ -52,7 +52,7 @@ public final class IOUtils {
 
     private static final int        FILE_SIZE_LENGTH_UNIX = 11;
 
-    private static final DateFormat DATE_FORMAT_UNIX      = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+    private static final String[]   MONTHS_UNIX           = new DateFormatSymbols(Locale.US).getShortMonths();
 
     private static final String     APP_PROPERTIES        = "/app.properties";
 
@@ -76,6 +76,16 @@ public final class IOUtils {
      */
     public static boolean closeGracefully(Object o) {
         boolean result;
+        if (o instanceof Closeable) {
+            /* Channel based sockets are not accessible by reflection */
+            try {
+                ((Closeable) o).close();
+                result = true;
+            } catch (IOException e) {
+                result = false;
+            }
+            return result;
+        }
         try {
             Method closeMethod = BeanUtils.findMethod(o.getClass(), "close", null);
             closeMethod.invoke(o, (Object[]) null);
@@ -103,29 +113,134 @@ public final class IOUtils {
      * @return The formatted line.
      */
     public static String formatUnixFtpFileInfo(File file, boolean read, boolean write) {
-        long size;
-        StringBuffer sb = new StringBuffer();
-        String wFlag = write ? "w" : "-";
-        String rFlag = read ? "r" : "-";
-        String permflags;
-        if (file.isDirectory()) {
-            permflags = MessageFormat.format("d{0}{1}x{0}-x{0}-x", rFlag, wFlag);
-            size = 0;
-        } else {
-            permflags = MessageFormat.format("-{0}{1}-{0}--{0}--", rFlag, wFlag);
-            size = file.length();
-        }
-        Date date = new Date(file.lastModified());
-        sb.append(permflags);
-        sb.append(" 1 ftp ftp ");
-        sb.append(StringUtils.leftPad("" + size, FILE_SIZE_LENGTH_UNIX));
-        sb.append(" ");
-        sb.append(DATE_FORMAT_UNIX.format(date));
-        sb.append(" ");
-        sb.append(file.getName());
+        StringBuilder sb = new StringBuilder();
+        boolean dir = file.isDirectory();
+        appendUnixFtpFileInfo(sb, file.getName(), dir, dir ? 0 : file.length(), file.lastModified(), read,
+            write, new GregorianCalendar(Locale.US));
         return sb.toString();
     }
 
+    /**
+     * Appends a directory entry in the format of {@link #formatUnixFtpFileInfo(File, boolean,
+     * boolean)} to the passed buffer. Nothing is allocated, so the method can be called for each
+     * entry of large directories.
+     * 
+     * @param sb The buffer.
+     * @param name The file name.
+     * @param dir True if the entry is a directory.
+     * @param size The file size.
+     * @param lastModified The time of last modification in milliseconds.
+     * @param read True if readable.
+     * @param write True if writable.
+     * @param cal Calendar used to break down the modification time, not shared among threads.
+     */
+    public static void appendUnixFtpFileInfo(StringBuilder sb, String name, boolean dir, long size,
+                                             long lastModified, boolean read, boolean write, Calendar cal) {
+        char r = read ? 'r' : '-';
+        char w = write ? 'w' : '-';
+        sb.append(dir ? 'd' : '-').append(r).append(w).append(dir ? 'x' : '-');
+        sb.append(r).append('-').append(dir ? 'x' : '-');
+        sb.append(r).append('-').append(dir ? 'x' : '-');
+        sb.append(" 1 ftp ftp ");
+        long fileSize = dir ? 0 : size;
+        for (int i = digits(fileSize); i < FILE_SIZE_LENGTH_UNIX; i++) {
+            sb.append(' ');
+        }
+        sb.append(fileSize);
+        cal.setTimeInMillis(lastModified);
+        sb.append(' ').append(MONTHS_UNIX[cal.get(Calendar.MONTH)]).append(' ');
+        appendTwoDigits(sb, cal.get(Calendar.DAY_OF_MONTH)).append(' ');
+        appendTwoDigits(sb, cal.get(Calendar.HOUR_OF_DAY)).append(':');
+        appendTwoDigits(sb, cal.get(Calendar.MINUTE)).append(' ');
+        sb.append(name);
+    }
+
+    /**
+     * Appends a directory entry in the machine readable format of MLST and MLSD (RFC 3659) to the
+     * passed buffer: the requested facts, each terminated by a semicolon, followed by a space and
+     * the name. Facts not applicable to the entry are left out. The <code>perm</code> fact is
+     * derived from the passed read and write flags.
+     * 
+     * @param sb The buffer.
+     * @param name The file name or path.
+     * @param facts The names of the facts in lower case.
+     * @param attrs The attributes of the entry.
+     * @param read True if readable.
+     * @param write True if writable.
+     * @param cal Calendar in time zone UTC used to break down the modification time, not shared
+     *            among threads.
+     */
+    public static void appendMlsxFacts(StringBuilder sb, String name, String[] facts, BasicFileAttributes attrs,
+                                       boolean read, boolean write, Calendar cal) {
+        boolean dir = attrs.isDirectory();
+        for (String fact : facts) {
+            if ("type".equals(fact)) {
+                sb.append("type=").append(dir ? "dir" : "file").append(';');
+            } else if ("size".equals(fact) && !dir) {
+                sb.append("size=").append(attrs.size()).append(';');
+            } else if ("modify".equals(fact)) {
+                cal.setTimeInMillis(attrs.lastModifiedTime().toMillis());
+                sb.append("modify=").append(cal.get(Calendar.YEAR));
+                appendTwoDigits(sb, cal.get(Calendar.MONTH) + 1);
+                appendTwoDigits(sb, cal.get(Calendar.DAY_OF_MONTH));
+                appendTwoDigits(sb, cal.get(Calendar.HOUR_OF_DAY));
+                appendTwoDigits(sb, cal.get(Calendar.MINUTE));
+                appendTwoDigits(sb, cal.get(Calendar.SECOND)).append(';');
+            } else if ("perm".equals(fact)) {
+                sb.append("perm=");
+                if (write) {
+                    sb.append(dir ? "cdfmp" : "adfw");
+                }
+                if (read) {
+                    sb.append(dir ? "el" : "r");
+                }
+                sb.append(';');
+            } else if ("unique".equals(fact) && attrs.fileKey() != null) {
+                sb.append("unique=");
+                appendUniqueId(sb, attrs.fileKey().toString());
+                sb.append(';');
+            }
+        }
+        sb.append(' ').append(name);
+    }
+
+    /**
+     * Appends a file key such as <code>(dev=803,ino=1234)</code> as <code>dev-803-ino-1234</code>,
+     * since fact values must not contain spaces or semicolons.
+     */
+    private static void appendUniqueId(StringBuilder sb, String fileKey) {
+        int start = sb.length();
+        boolean separate = false;
+        for (int i = 0; i < fileKey.length(); i++) {
+            char c = fileKey.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (separate) {
+                    sb.append('-');
+                    separate = false;
+                }
+                sb.append(c);
+            } else if (sb.length() > start) {
+                separate = true;
+            }
+        }
+    }
+
+    private static int digits(long value) {
+        int result = 1;
+        while (value >= 10) {
+            value /= 10;
+            result++;
+        }
+        return result;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
     /**
      * Reads an arbitrary text resource from the class path.
      * 
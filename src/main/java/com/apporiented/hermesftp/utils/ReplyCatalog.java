@@ -0,0 +1,121 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The messages of a resource bundle, precompiled into reply templates. Catalogs are immutable and
+ * created once per bundle, so all sessions of a server share the same instance.
+ * 
+ * @author Lars Behnke
+ */
+public final class ReplyCatalog {
+
+    private static ConcurrentMap<ResourceBundle, ReplyCatalog> catalogs =
+        new ConcurrentHashMap<ResourceBundle, ReplyCatalog>();
+
+    private final ResourceBundle                               bundle;
+
+    private final Map<String, ReplyTemplate>                   templates;
+
+    private ReplyCatalog(ResourceBundle bundle) {
+        this.bundle = bundle;
+        this.templates = new HashMap<String, ReplyTemplate>();
+        Enumeration<String> keys = bundle.getKeys();
+        while (keys.hasMoreElements()) {
+            String key = keys.nextElement();
+            Object value = bundle.getObject(key);
+            if (value instanceof String) {
+                templates.put(key, ReplyTemplate.compile((String) value));
+            }
+        }
+    }
+
+    /**
+     * Returns the catalog of the passed resource bundle.
+     * 
+     * @param bundle The bundle.
+     * @return The catalog.
+     */
+    public static ReplyCatalog getInstance(ResourceBundle bundle) {
+        ReplyCatalog catalog = catalogs.get(bundle);
+        if (catalog == null) {
+            catalog = new ReplyCatalog(bundle);
+            ReplyCatalog existing = catalogs.putIfAbsent(bundle, catalog);
+            if (existing != null) {
+                catalog = existing;
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Returns the template of a message.
+     * 
+     * @param key The message key.
+     * @return The template.
+     * @throws MissingResourceException Thrown if the bundle does not contain the message.
+     */
+    public ReplyTemplate getTemplate(String key) {
+        ReplyTemplate template = templates.get(key);
+        if (template == null) {
+            throw new MissingResourceException("Can't find resource for bundle " + bundle.getClass().getName()
+                + ", key " + key, bundle.getClass().getName(), key);
+        }
+        return template;
+    }
+
+    /**
+     * Returns the unformatted text of a message.
+     * 
+     * @param key The message key.
+     * @return The text.
+     * @throws MissingResourceException Thrown if the bundle does not contain the message.
+     */
+    public String getString(String key) {
+        return getTemplate(key).getPattern();
+    }
+
+    /**
+     * Formats a message.
+     * 
+     * @param key The message key.
+     * @param args The arguments, or null to return the unformatted text.
+     * @return The message.
+     * @throws MissingResourceException Thrown if the bundle does not contain the message.
+     */
+    public String format(String key, Object[] args) {
+        ReplyTemplate template = getTemplate(key);
+        return args == null ? template.getPattern() : template.format(args);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reply message precompiled from a <code>java.text.MessageFormat</code> pattern. The pattern is
+ * split once into literal text and argument slots, so formatting a reply only concatenates
+ * strings. The output equals <code>MessageFormat.format(pattern, args)</code>. Patterns with
+ * formatted placeholders (e.g. <code>{0,number}</code>) and number or date arguments are handed to
+ * <code>MessageFormat</code>, since their output depends on the locale.
+ * 
+ * @author Lars Behnke
+ */
+public final class ReplyTemplate {
+
+    private final String   pattern;
+
+    private final String[] literals;
+
+    private final int[]    argIndexes;
+
+    private final int      length;
+
+    private ReplyTemplate(String pattern, String[] literals, int[] argIndexes) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.argIndexes = argIndexes;
+        int len = 0;
+        if (literals != null) {
+            for (String literal : literals) {
+                len += literal.length();
+            }
+        }
+        this.length = len;
+    }
+
+    /**
+     * Compiles a message pattern.
+     * 
+     * @param pattern The pattern as understood by <code>MessageFormat</code>.
+     * @return The template.
+     */
+    public static ReplyTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> argIndexes = new ArrayList<Integer>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    sb.append('\'');
+                    i += 2;
+                    continue;
+                }
+                quoted = !quoted;
+            } else if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                int index = end < 0 ? -1 : parseIndex(pattern, i + 1, end);
+                if (index < 0) {
+                    /* Formatted or malformed placeholder */
+                    return new ReplyTemplate(pattern, null, null);
+                }
+                literals.add(sb.toString());
+                sb.setLength(0);
+                argIndexes.add(index);
+                i = end;
+            } else {
+                sb.append(c);
+            }
+            i++;
+        }
+        literals.add(sb.toString());
+        int[] indexes = new int[argIndexes.size()];
+        for (int j = 0; j < indexes.length; j++) {
+            indexes[j] = argIndexes.get(j);
+        }
+        return new ReplyTemplate(pattern, literals.toArray(new String[literals.size()]), indexes);
+    }
+
+    private static int parseIndex(String pattern, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = pattern.charAt(i);
+            if (c < '0' || c > '9' || index > Integer.MAX_VALUE / 10 - 1) {
+                return -1;
+            }
+            index = index * 10 + c - '0';
+        }
+        return index;
+    }
+
+    /**
+     * Returns the unformatted pattern.
+     * 
+     * @return The pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Formats the reply.
+     * 
+     * @param args The arguments.
+     * @return The reply text.
+     */
+    public String format(Object... args) {
+        if (literals == null || !isPlain(args)) {
+            return MessageFormat.format(pattern, args);
+        }
+        StringBuilder sb = new StringBuilder(length + 16 * argIndexes.length);
+        for (int i = 0; i < argIndexes.length; i++) {
+            sb.append(literals[i]);
+            int index = argIndexes[i];
+            if (args == null || index >= args.length) {
+                sb.append('{').append(index).append('}');
+            } else {
+                sb.append(args[index]);
+            }
+        }
+        sb.append(literals[argIndexes.length]);
+        return sb.toString();
+    }
+
+    private static boolean isPlain(Object[] args) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof Number || arg instanceof Date) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.io.Writer;
+
+/**
+ * Response writer of the control connection that collects reply lines and sends them in as few
+ * socket writes as possible. A flush request is deferred
+ * <ul>
+ * <li>while a multi-line reply is incomplete, i.e. the last line written does not start with the
+ * reply code followed by a space (RFC 959, 4.2), and</li>
+ * <li>while batching is enabled by the session because further pipelined commands are waiting.
+ * Preliminary (1xx) replies and replies written by other threads are sent immediately, as the
+ * client may wait for them.</li>
+ * </ul>
+ * 
+ * @author Lars Behnke
+ */
+public class ReplyWriter extends LoggingWriter {
+
+    private boolean         replyComplete = true;
+
+    private boolean         preliminary;
+
+    private volatile Thread batchingThread;
+
+    /**
+     * Constructor.
+     * 
+     * @param out The output writer, which should be buffered.
+     */
+    public ReplyWriter(Writer out) {
+        super(out, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void println(String text) {
+        synchronized (lock) {
+            super.println(text);
+            String lastLine = lastLine(text);
+            replyComplete = isFinalLine(lastLine);
+            preliminary = replyComplete && lastLine.charAt(0) == '1';
+        }
+    }
+
+    /**
+     * Sends the pending replies, unless a multi-line reply is incomplete or batching is enabled.
+     */
+    public void flush() {
+        synchronized (lock) {
+            Thread t = batchingThread;
+            if (replyComplete && (t == null || preliminary || t != Thread.currentThread())) {
+                super.flush();
+            }
+        }
+    }
+
+    /**
+     * Sends the pending replies unconditionally.
+     */
+    public void flushNow() {
+        super.flush();
+    }
+
+    /**
+     * Enables or disables batching of complete replies for the calling thread. Disabling sends the
+     * pending replies.
+     * 
+     * @param batching True, if further commands are waiting to be processed.
+     */
+    public void setBatching(boolean batching) {
+        if (batching) {
+            batchingThread = Thread.currentThread();
+        } else if (batchingThread != null) {
+            batchingThread = null;
+            flush();
+        }
+    }
+
+    private static String lastLine(String text) {
+        if (text == null) {
+            return "";
+        }
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        int start = text.lastIndexOf('\n', end - 1) + 1;
+        return text.substring(start, end);
+    }
+
+    private static boolean isFinalLine(String line) {
+        if (line.length() < 3) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return line.length() == 3 || line.charAt(3) == ' ';
+    }
+
+}
@@ -38,6 +38,7 @@ import java.security.cert.CertificateException;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 
 import com.apporiented.hermesftp.exception.FtpConfigException;
 
@@ -159,6 +160,22 @@ public final class SecurityUtil {
         return sslContext;
     }
 
+    /**
+     * Sizes the server session cache of the passed context, so that data connections can resume
+     * the TLS session of their control connection.
+     * 
+     * @param sslContext The context.
+     * @param cacheSize The maximum number of cached sessions, 0 for no limit.
+     * @param timeoutSeconds The seconds a session can be resumed, 0 for no limit.
+     */
+    public static void configureSessionCache(SSLContext sslContext, int cacheSize, int timeoutSeconds) {
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(cacheSize);
+            sessionContext.setSessionTimeout(timeoutSeconds);
+        }
+    }
+
     private static InputStream getKeyStoreInputStream(String ksFile) throws FileNotFoundException {
         if (ksFile == null) {
             throw new FileNotFoundException("Keystore file not defined.");
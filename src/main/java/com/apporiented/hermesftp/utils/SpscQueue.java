@@ -0,0 +1,174 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unbounded queue for exactly one producer and one consumer thread. Neither side takes a lock:
+ * the producer links a node and the consumer unlinks it, each touching only its own end of the
+ * list. A consumer waiting for an element parks until the producer hands one over, the queue is
+ * closed or the timeout expires, so an empty queue costs no CPU.
+ * 
+ * @param <E> The element type.
+ * @author Lars Behnke
+ */
+public class SpscQueue<E> {
+
+    private Node<E>          head;
+
+    private Node<E>          tail;
+
+    private volatile Thread  waiter;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     */
+    public SpscQueue() {
+        super();
+        head = new Node<E>(null);
+        tail = head;
+    }
+
+    /**
+     * Appends an element. May only be called by the producer thread.
+     * 
+     * @param e The element, must not be null.
+     */
+    public void offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        Node<E> node = new Node<E>(e);
+        tail.next = node;
+        tail = node;
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Removes the head element without waiting. May only be called by the consumer thread.
+     * 
+     * @return The element or null, if the queue is empty.
+     */
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E e = next.value;
+        next.value = null;
+        head = next;
+        return e;
+    }
+
+    /**
+     * Checks whether the queue is empty. Reliable only when called by the consumer thread.
+     * 
+     * @return True, if no element is available.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * Removes the head element, waiting if necessary. May only be called by the consumer thread.
+     * Pending elements are still returned after the queue has been closed.
+     * 
+     * @param timeoutNanos The maximum time to wait in nanoseconds, Long.MAX_VALUE to wait without
+     *            time limit.
+     * @return The element or null, if the timeout expired or the queue has been closed.
+     * @throws InterruptedException Thrown if the consumer thread has been interrupted.
+     */
+    public E take(long timeoutNanos) throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        boolean timed = timeoutNanos != Long.MAX_VALUE;
+        long deadline = timed ? System.nanoTime() + timeoutNanos : 0;
+        waiter = Thread.currentThread();
+        try {
+            while ((e = poll()) == null && !closed) {
+                if (timed) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+        return e;
+    }
+
+    /**
+     * Closes the queue and wakes up a waiting consumer. May be called by any thread.
+     */
+    public void close() {
+        closed = true;
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Checks whether the queue has been closed.
+     * 
+     * @return True, if closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * A list node. The link is volatile, which publishes the value to the consumer.
+     * 
+     * @param <E> The element type.
+     */
+    private static final class Node<E> {
+
+        private E                value;
+
+        private volatile Node<E> next;
+
+        private Node(E value) {
+            this.value = value;
+        }
+    }
+
+}
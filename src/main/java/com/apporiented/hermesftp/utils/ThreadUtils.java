@@ -0,0 +1,99 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.lang.reflect.Method;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Utility methods for creating the threads of client sessions. If requested and provided by the
+ * runtime (Java 21 or later), sessions run on virtual threads. Otherwise, and on older runtimes,
+ * platform threads are used.
+ * 
+ * @author Lars Behnke
+ */
+public final class ThreadUtils {
+
+    private static Log    log = LogFactory.getLog(ThreadUtils.class);
+
+    private static Method ofVirtualMethod;
+
+    private static Method nameMethod;
+
+    private static Method unstartedMethod;
+
+    static {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            nameMethod = builderClass.getMethod("name", String.class);
+            unstartedMethod = builderClass.getMethod("unstarted", Runnable.class);
+        } catch (ClassNotFoundException e) {
+            ofVirtualMethod = null;
+        } catch (NoSuchMethodException e) {
+            ofVirtualMethod = null;
+        }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private ThreadUtils() {
+        super();
+    }
+
+    /**
+     * Checks whether the runtime is able to create virtual threads.
+     * 
+     * @return True, if virtual threads are available.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return ofVirtualMethod != null;
+    }
+
+    /**
+     * Creates an unstarted thread.
+     * 
+     * @param task The task to run.
+     * @param name The name of the thread.
+     * @param virtual True, if a virtual thread is preferred.
+     * @return The thread.
+     */
+    public static Thread newThread(Runnable task, String name, boolean virtual) {
+        if (virtual && isVirtualThreadSupported()) {
+            try {
+                Object builder = ofVirtualMethod.invoke(null);
+                builder = nameMethod.invoke(builder, name);
+                return (Thread) unstartedMethod.invoke(builder, task);
+            } catch (Exception e) {
+                log.warn("Virtual thread could not be created, using platform thread: " + e);
+            }
+        }
+        return new Thread(task, name);
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Completes the TLS handshake of protected data connections and checks whether the client resumed
+ * the TLS session of its control connection, as most FTPS clients do to avoid a full handshake per
+ * transfer. Optionally, data connections that start a new session are rejected. The tracker is
+ * shared by all sessions of a server and counts handshakes and resumptions. Registered as handshake
+ * listener of control connections, it counts their handshakes as well.
+ * 
+ * @author Lars Behnke
+ */
+public class TlsSessionTracker implements HandshakeCompletedListener {
+
+    private boolean    requireReuse;
+
+    private AtomicLong controlHandshakes = new AtomicLong();
+
+    private AtomicLong dataHandshakes    = new AtomicLong();
+
+    private AtomicLong resumed           = new AtomicLong();
+
+    private AtomicLong rejected          = new AtomicLong();
+
+    /**
+     * Constructor.
+     * 
+     * @param requireReuse True, if data connections must resume the control connection's session.
+     */
+    public TlsSessionTracker(boolean requireReuse) {
+        this.requireReuse = requireReuse;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handshakeCompleted(HandshakeCompletedEvent event) {
+        controlHandshakes.incrementAndGet();
+    }
+
+    /**
+     * Performs the handshake on a newly opened data connection before any data is transferred.
+     * 
+     * @param dataSocket The data connection.
+     * @param controlSocket The control connection of the same session.
+     * @throws IOException Thrown if the handshake fails or the session was not reused although
+     *             required.
+     */
+    public void handshake(SSLSocket dataSocket, Socket controlSocket) throws IOException {
+        long start = System.currentTimeMillis();
+        dataSocket.startHandshake();
+        SSLSession controlSession = null;
+        if (controlSocket instanceof SSLSocket) {
+            controlSession = ((SSLSocket) controlSocket).getSession();
+        }
+        boolean reused = isResumed(controlSession, dataSocket.getSession(), start);
+        recordDataHandshake(reused);
+        if (!reused && requireReuse) {
+            rejected.incrementAndGet();
+            throw new IOException("Data connection did not reuse the TLS session of the control connection.");
+        }
+    }
+
+    /**
+     * Checks if the data session is a resumption of the control session. TLS 1.2 resumes the
+     * session identifier; TLS 1.3 issues a new identifier but keeps the creation time of the
+     * resumed session.
+     * 
+     * @param controlSession The session of the control connection, may be null.
+     * @param dataSession The session of the data connection.
+     * @param handshakeStart Time in milliseconds the data handshake was started.
+     * @return True, if the control session was resumed.
+     */
+    static boolean isResumed(SSLSession controlSession, SSLSession dataSession, long handshakeStart) {
+        if (controlSession == null || dataSession == null) {
+            return false;
+        }
+        if (controlSession == dataSession || Arrays.equals(controlSession.getId(), dataSession.getId())) {
+            return true;
+        }
+        return dataSession.getCreationTime() < handshakeStart
+                && dataSession.getCreationTime() == controlSession.getCreationTime();
+    }
+
+    /**
+     * Registers a completed handshake on a data connection.
+     * 
+     * @param reused True, if the control session was resumed.
+     */
+    void recordDataHandshake(boolean reused) {
+        dataHandshakes.incrementAndGet();
+        if (reused) {
+            resumed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of handshakes completed on control connections.
+     * 
+     * @return The number of handshakes.
+     */
+    public long getControlHandshakeCount() {
+        return controlHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes completed on data connections.
+     * 
+     * @return The number of handshakes.
+     */
+    public long getDataHandshakeCount() {
+        return dataHandshakes.get();
+    }
+
+    /**
+     * Returns the number of data connections that resumed the control session.
+     * 
+     * @return The number of resumed sessions.
+     */
+    public long getResumedCount() {
+        return resumed.get();
+    }
+
+    /**
+     * Returns the number of data connections rejected for not reusing the control session.
+     * 
+     * @return The number of rejected connections.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the share of data connection handshakes that resumed the control session.
+     * 
+     * @return The ratio between 0 and 1, 0 if there has not been any handshake yet.
+     */
+    public double getResumptionRatio() {
+        long total = dataHandshakes.get();
+        return total == 0 ? 0 : (double) resumed.get() / total;
+    }
+
+    /**
+     * Getter method for the java bean <code>requireReuse</code>.
+     * 
+     * @return Returns the value of the java bean <code>requireReuse</code>.
+     */
+    public boolean isRequireReuse() {
+        return requireReuse;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+/**
+ * Token bucket for bandwidth shaping. Buckets are arranged hierarchically: bytes consumed from a
+ * bucket are consumed from all of its ancestors as well, so a transfer is paced by the most
+ * restrictive level. Consumers may overdraw the bucket; the returned delay is the time needed to
+ * pay back the debt. Concurrent consumers of a shared bucket thereby queue up behind each other
+ * and their aggregate rate converges to the configured rate. Unused tokens are retained for at
+ * most 10 ms, which keeps the pacing smooth.
+ * 
+ * @author Lars Behnke
+ */
+public class TokenBucket {
+
+    /**
+     * Rate value indicating an unlimited bucket.
+     */
+    public static final long  UNLIMITED   = -1;
+
+    private static final long NANOS       = 1000000000L;
+
+    private static final long BURST_NANOS = 10000000L;
+
+    private final TokenBucket parent;
+
+    private volatile long     rate;
+
+    private double            tokens;
+
+    private long              lastRefill;
+
+    /**
+     * Constructor.
+     * 
+     * @param parent The parent bucket or null.
+     * @param rate The rate in bytes per second ({@link #UNLIMITED} or any negative value: no
+     *            limit; 0: no transfer at all).
+     */
+    public TokenBucket(TokenBucket parent, long rate) {
+        super();
+        this.parent = parent;
+        this.rate = rate;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Consumes the passed number of bytes from this bucket and its ancestors.
+     * 
+     * @param bytes The number of bytes transferred.
+     * @return The delay in nanoseconds the caller must pause before transferring more data.
+     *         Long.MAX_VALUE if one of the buckets does not admit any transfer.
+     */
+    public long consume(long bytes) {
+        return consume(bytes, System.nanoTime());
+    }
+
+    /**
+     * Consumes the passed number of bytes at a given point of time. Subclasses may override this
+     * method to observe the traffic passing the bucket.
+     * 
+     * @param bytes The number of bytes transferred.
+     * @param now The current value of <code>System.nanoTime()</code>.
+     * @return The delay in nanoseconds.
+     */
+    protected long consume(long bytes, long now) {
+        long delay = take(bytes, now);
+        if (parent != null) {
+            delay = Math.max(delay, parent.consume(bytes, now));
+        }
+        return delay;
+    }
+
+    private synchronized long take(long bytes, long now) {
+        long r = rate;
+        if (r < 0) {
+            return 0;
+        }
+        if (r == 0) {
+            return Long.MAX_VALUE;
+        }
+        refill(r, now);
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * NANOS / r);
+    }
+
+    private void refill(long r, long now) {
+        double burst = (double) r * BURST_NANOS / NANOS;
+        tokens = Math.min(burst, tokens + (double) (now - lastRefill) * r / NANOS);
+        lastRefill = now;
+    }
+
+    /**
+     * @return The parent bucket or null.
+     */
+    public TokenBucket getParent() {
+        return parent;
+    }
+
+    /**
+     * @return The rate of this bucket in bytes per second (negative: unlimited).
+     */
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * Changes the rate. Tokens accumulated so far are retained.
+     * 
+     * @param rate The rate in bytes per second (negative: unlimited).
+     */
+    public synchronized void setRate(long rate) {
+        if (rate != this.rate) {
+            long now = System.nanoTime();
+            if (this.rate > 0) {
+                refill(this.rate, now);
+            }
+            lastRefill = now;
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * Returns the lowest rate of this bucket and its ancestors.
+     * 
+     * @return The rate in bytes per second (negative: unlimited).
+     */
+    public long getEffectiveRate() {
+        long result = rate;
+        if (parent != null) {
+            long parentRate = parent.getEffectiveRate();
+            if (result < 0 || (parentRate >= 0 && parentRate < result)) {
+                result = parentRate;
+            }
+        }
+        return result;
+    }
+
+}
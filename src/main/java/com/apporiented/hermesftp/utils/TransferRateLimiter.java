@@ -24,20 +24,29 @@
 
 package com.apporiented.hermesftp.utils;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * Controls the upload/download bandwidth.
+ * Controls the upload/download bandwidth. The limiter paces a single transfer by means of a
+ * {@link TokenBucket}, which may be part of a hierarchy shared with other transfers.
  * 
  * @author Behnke
  */
 public class TransferRateLimiter {
 
-    private static final int SLEEP_INTERVAL = 100;
+    private static final long NANOS          = 1000000000L;
+
+    private static final long MAX_PARK_NANOS = 100000000L;
+
+    private static final long PACING_NANOS   = 10000000L;
+
+    private static final int  MIN_CHUNK_SIZE = 1024;
 
-    private double           maxRate;
+    private TokenBucket       bucket;
 
-    private long             startTime;
+    private long              startTime;
 
-    private long             transferredBytes;
+    private long              transferredBytes;
 
     /**
      * Constructor.
@@ -56,13 +65,22 @@ public class TransferRateLimiter {
     }
 
     /**
-     * Initializes the object.
+     * Initializes the object with a bucket of its own.
      * 
-     * @param maxRate The maximum transfer rate.
+     * @param maxRate The maximum transfer rate in KB per second (negative: unlimited).
      */
     public void init(double maxRate) {
-        this.maxRate = maxRate;
-        startTime = System.currentTimeMillis();
+        init(new TokenBucket(null, maxRate < 0 ? TokenBucket.UNLIMITED : (long) (maxRate * 1024)));
+    }
+
+    /**
+     * Initializes the object with a (shared) token bucket.
+     * 
+     * @param bucket The bucket that paces the transfer.
+     */
+    public void init(TokenBucket bucket) {
+        this.bucket = bucket;
+        startTime = System.nanoTime();
         transferredBytes = 0;
     }
 
@@ -72,7 +90,7 @@ public class TransferRateLimiter {
      * @return The transfer rate in KB per seconds.
      */
     public double getCurrentTransferRate() {
-        double seconds = (System.currentTimeMillis() - startTime) / 1024d;
+        double seconds = (double) (System.nanoTime() - startTime) / NANOS;
         if (seconds <= 0) {
             seconds = 1;
         }
@@ -80,6 +98,22 @@ public class TransferRateLimiter {
 
     }
 
+    /**
+     * Reduces the passed chunk size to the amount of data that may be sent within about 10 ms, so
+     * that transfers are paced smoothly.
+     * 
+     * @param size The preferred chunk size.
+     * @return The chunk size to be used.
+     */
+    public int limitChunkSize(int size) {
+        long rate = bucket.getEffectiveRate();
+        if (rate < 0) {
+            return size;
+        }
+        long paced = Math.max(MIN_CHUNK_SIZE, rate * PACING_NANOS / NANOS);
+        return (int) Math.min(size, paced);
+    }
+
     /**
      * Updates the transfer rate statistics. If the maximum rate has been exceeded, the method
      * pauses.
@@ -88,12 +122,15 @@ public class TransferRateLimiter {
      */
     public void execute(long byteCount) {
         transferredBytes += byteCount;
-        while (maxRate >= 0 && getCurrentTransferRate() > maxRate) {
-            try {
-                Thread.sleep(SLEEP_INTERVAL);
-            } catch (InterruptedException e) {
+        long delay = bucket.consume(byteCount);
+        while (delay > 0) {
+            long start = System.nanoTime();
+            LockSupport.parkNanos(Math.min(delay, MAX_PARK_NANOS));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
                 break;
             }
+            delay -= System.nanoTime() - start;
         }
     }
 
@@ -0,0 +1,116 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// CHECKSTYLE:OFF
+
+/**
+ * Compares the former prefix scan of <code>findCommandToken</code> with the precompiled token
+ * index, using the command set of the default configuration and a command mix as produced by
+ * typical clients (login, navigation, listings, transfers). Reports the time and the heap
+ * allocation per lookup.
+ * 
+ * <pre>
+ * java ... CommandDispatchBenchmark [iterations]
+ * </pre>
+ * 
+ * @author Lars Behnke
+ */
+public final class CommandDispatchBenchmark {
+
+    private static final String[] TOKENS = {"ABOR", "ACCT", "ADAT", "ALLO", "APPE", "AUTH", "CDUP", "CLNT",
+        "CWD", "DELE", "EPSV", "EPRT", "FEAT", "HELP", "LIST", "MKD", "MDTM", "MODE", "NLST", "NOOP", "NOP",
+        "OPTS", "PASS", "PASV", "PBSZ", "PORT", "PROT", "PWD", "QUIT", "REST", "RETR", "RNFR", "RNTO", "RMD",
+        "SITE", "SIZE", "SMNT", "STAT", "STOR", "STOU", "STRU", "SYST", "TYPE", "USER", "XCUP", "XMKD", "XPWD",
+        "XRMD"};
+
+    private static final String[] MIX    = {"USER anonymous", "PASS guest@example.com", "SYST", "FEAT", "PWD",
+        "TYPE I", "CWD /pub/releases/2014", "PASV", "LIST -la", "EPSV", "NLST", "SIZE hermesftp-1.1.tar.gz",
+        "MDTM hermesftp-1.1.tar.gz", "REST 0", "RETR hermesftp-1.1.tar.gz", "NOOP", "cwd ..", "type a",
+        "STOR upload/report-2014-10-17.csv", "QUIT"};
+
+    private static final int      ROUNDS = 5;
+
+    private CommandDispatchBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Map<String, String> commands = new LinkedHashMap<String, String>();
+        for (String token : TOKENS) {
+            commands.put(token, "cmd" + token);
+        }
+        CommandTokenIndex index = new CommandTokenIndex(commands.keySet());
+
+        System.out.println(String.format("%-12s %12s %14s", "variant", "ns/lookup", "bytes/lookup"));
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            run("prefix scan", commands, null, iterations, last);
+            run("token index", commands, index, iterations, last);
+        }
+    }
+
+    private static void run(String name, Map<String, String> commands, CommandTokenIndex index, int iterations,
+                            boolean print) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long allocBefore = bean.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < iterations; i++) {
+            String line = MIX[i % MIX.length];
+            String token = index == null ? prefixScan(commands, line) : index.find(line);
+            if (token != null) {
+                hits++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long alloc = bean.getThreadAllocatedBytes(tid) - allocBefore;
+        if (print) {
+            System.out.println(String.format("%-12s %12.1f %14.1f   (%d hits)", name, (double) nanos / iterations,
+                (double) alloc / iterations, hits));
+        }
+    }
+
+    /**
+     * The lookup as implemented before the token index.
+     */
+    private static String prefixScan(Map<String, String> commands, String cmdString) {
+        String result = null;
+        cmdString = cmdString.trim().toUpperCase();
+        for (Map.Entry<String, String> entry : commands.entrySet()) {
+            if (cmdString.startsWith(entry.getKey())) {
+                result = entry.getKey();
+                break;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.apporiented.hermesftp.cmd.FtpCmd;
+import com.apporiented.hermesftp.parser.FtpCmdParser;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+// CHECKSTYLE:OFF
+
+/**
+ * Measures the command dispatch rate of a NOOP/PWD/SIZE storm: token lookup, command creation and
+ * argument binding, as done by the session for every command line. Compares the former
+ * <code>getBean</code> call per line with the command factories resolved at startup. The command
+ * beans are taken from <code>hermesftp-ctx.xml</code>.
+ * 
+ * <pre>
+ * java ... CommandFactoryBenchmark [commands]
+ * </pre>
+ * 
+ * @author Lars Behnke
+ */
+public final class CommandFactoryBenchmark {
+
+    private static final String[] STORM  = {"NOOP", "PWD", "SIZE big.bin", "NOOP", "PWD", "SIZE report.csv"};
+
+    private static final int      ROUNDS = 5;
+
+    private CommandFactoryBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        ClassPathXmlApplicationContext ctx = new ClassPathXmlApplicationContext("hermesftp-ctx.xml");
+        FtpCmdParser parser = (FtpCmdParser) ctx.getBean("parser");
+        BeanFactory beanFactory = ctx.getBeanFactory();
+        Map<String, String> beanNames = new HashMap<String, String>();
+        beanNames.put("NOOP", "cmdNoop");
+        beanNames.put("PWD", "cmdPwd");
+        beanNames.put("SIZE", "cmdSize");
+
+        System.out.println(String.format("%-10s %14s %12s", "variant", "commands/s", "ns/command"));
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            run("getBean", parser, beanFactory, beanNames, count, last);
+            run("factory", parser, null, null, count, last);
+        }
+        ctx.close();
+    }
+
+    private static void run(String name, FtpCmdParser parser, BeanFactory beanFactory, Map<String, String> beanNames,
+                            int count, boolean print) {
+        long start = System.nanoTime();
+        int hash = 0;
+        for (int i = 0; i < count; i++) {
+            String line = STORM[i % STORM.length];
+            String token = parser.findCommandToken(line);
+            FtpCmd cmd;
+            if (beanFactory == null) {
+                cmd = parser.createCommandByToken(token);
+            } else {
+                cmd = (FtpCmd) beanFactory.getBean(beanNames.get(token));
+                cmd.setToken(token);
+            }
+            cmd.setArguments(line.substring(token.length()).trim());
+            hash += cmd.getToken().length();
+        }
+        long nanos = System.nanoTime() - start;
+        if (print) {
+            System.out.println(String.format("%-10s %14.0f %12.1f   (%d)", name, count * 1e9 / nanos,
+                (double) nanos / count, hash));
+        }
+    }
+
+}
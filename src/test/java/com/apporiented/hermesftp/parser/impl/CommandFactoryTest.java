@@ -0,0 +1,129 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.apporiented.hermesftp.cmd.FtpCmd;
+import com.apporiented.hermesftp.cmd.impl.FtpCmdHelp;
+import com.apporiented.hermesftp.cmd.impl.FtpCmdNoop;
+import com.apporiented.hermesftp.cmd.impl.FtpCmdPwd;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class CommandFactoryTest {
+
+    private DefaultListableBeanFactory beanFactory;
+
+    @Before
+    public void setUp() {
+        beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerBeanDefinition("cmdNoop", prototype(FtpCmdNoop.class));
+        beanFactory.registerBeanDefinition("cmdPwd", prototype(FtpCmdPwd.class));
+        beanFactory.registerBeanDefinition("cmdHelp", prototype(FtpCmdHelp.class));
+        RootBeanDefinition singleton = new RootBeanDefinition(FtpCmdNoop.class);
+        singleton.setScope(BeanDefinition.SCOPE_SINGLETON);
+        beanFactory.registerBeanDefinition("cmdShared", singleton);
+        RootBeanDefinition configured = prototype(FtpCmdNoop.class);
+        configured.getPropertyValues().add("token", "NOOP");
+        beanFactory.registerBeanDefinition("cmdConfigured", configured);
+    }
+
+    @Test
+    public void testDirectInstantiation() {
+        CommandFactory factory = CommandFactory.create(beanFactory, "cmdNoop");
+        assertTrue(factory.isDirect());
+        FtpCmd first = factory.newCommand();
+        FtpCmd second = factory.newCommand();
+        assertTrue(first instanceof FtpCmdNoop);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testFallbackToBeanFactory() {
+        CommandFactory shared = CommandFactory.create(beanFactory, "cmdShared");
+        assertFalse(shared.isDirect());
+        assertSame(shared.newCommand(), shared.newCommand());
+
+        CommandFactory configured = CommandFactory.create(beanFactory, "cmdConfigured");
+        assertFalse(configured.isDirect());
+        assertEquals("NOOP", configured.newCommand().getToken());
+    }
+
+    @Test
+    public void testParserCommandList() {
+        FtpCmdParserImpl parser = new FtpCmdParserImpl();
+        Map<String, String> commands = new HashMap<String, String>();
+        commands.put("PWD", "cmdPwd");
+        commands.put("NOOP", "cmdNoop");
+        commands.put("HELP", "cmdHelp");
+        commands.put("XPWD", "cmdPwd");
+        parser.setCommands(commands);
+        parser.setBeanFactory(beanFactory);
+
+        FtpCmd cmd = parser.createCommandByToken("XPWD");
+        assertTrue(cmd instanceof FtpCmdPwd);
+        assertEquals("XPWD", cmd.getToken());
+
+        List<FtpCmd> list = parser.getCommandList();
+        assertEquals(4, list.size());
+        assertEquals("HELP", list.get(0).getToken());
+        assertEquals("NOOP", list.get(1).getToken());
+        assertEquals("PWD", list.get(2).getToken());
+        assertEquals("XPWD", list.get(3).getToken());
+        assertSame(list, parser.getCommandList());
+        try {
+            list.clear();
+            fail("List must be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(4, list.size());
+        }
+    }
+
+    private static RootBeanDefinition prototype(Class<?> beanClass) {
+        RootBeanDefinition def = new RootBeanDefinition(beanClass);
+        def.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+        return def;
+    }
+
+}
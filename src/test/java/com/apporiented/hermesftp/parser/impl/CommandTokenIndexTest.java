@@ -0,0 +1,67 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.parser.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class CommandTokenIndexTest {
+
+    private CommandTokenIndex index = new CommandTokenIndex(Arrays.asList("LIST", "NLST", "MKD", "XMKD",
+        "NOP", "NOOP", "RETR", "USER"));
+
+    @Test
+    public void testFind() {
+        assertEquals("LIST", index.find("LIST"));
+        assertEquals("LIST", index.find("list -la /tmp"));
+        assertEquals("RETR", index.find("Retr my file.txt"));
+        assertEquals("USER", index.find("  USER\tanonymous"));
+        assertEquals("NOP", index.find("NOP"));
+        assertEquals("NOOP", index.find("noop"));
+        assertEquals("MKD", index.find("MKD dir"));
+        assertEquals("XMKD", index.find("XMKD dir"));
+    }
+
+    @Test
+    public void testWholeWordsOnly() {
+        assertNull(index.find("LISTX"));
+        assertNull(index.find("LIS"));
+        assertNull(index.find("RETRIEVE file"));
+        assertNull(index.find("XLIST"));
+        assertNull(index.find(""));
+        assertNull(index.find("   "));
+        assertNull(index.find(null));
+    }
+
+}
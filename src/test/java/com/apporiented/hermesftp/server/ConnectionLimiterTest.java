@@ -0,0 +1,113 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class ConnectionLimiterTest {
+
+    @Test
+    public void testTotalLimit() throws Exception {
+        InetAddress addr1 = InetAddress.getByName("10.0.0.1");
+        InetAddress addr2 = InetAddress.getByName("10.0.0.2");
+        ConnectionLimiter limiter = new ConnectionLimiter(2, 0);
+        assertTrue(limiter.tryAcquire(addr1));
+        assertTrue(limiter.tryAcquire(addr2));
+        assertFalse(limiter.tryAcquire(addr1));
+        assertEquals(2, limiter.getCount());
+
+        limiter.release(addr2);
+        assertTrue(limiter.tryAcquire(addr1));
+        assertEquals(2, limiter.getCount());
+    }
+
+    @Test
+    public void testAddressLimit() throws Exception {
+        InetAddress addr1 = InetAddress.getByName("10.0.0.1");
+        InetAddress addr2 = InetAddress.getByName("10.0.0.2");
+        ConnectionLimiter limiter = new ConnectionLimiter(10, 2);
+        assertTrue(limiter.tryAcquire(addr1));
+        assertTrue(limiter.tryAcquire(addr1));
+        assertFalse(limiter.tryAcquire(addr1));
+        assertTrue(limiter.tryAcquire(addr2));
+        assertEquals(3, limiter.getCount());
+        assertEquals(2, limiter.getCount(addr1));
+
+        limiter.release(addr1);
+        limiter.release(addr1);
+        assertEquals(0, limiter.getCount(addr1));
+        assertTrue(limiter.tryAcquire(addr1));
+        assertEquals(1, limiter.getCount(addr1));
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        InetAddress addr = InetAddress.getByName("10.0.0.1");
+        ConnectionLimiter limiter = new ConnectionLimiter(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire(addr));
+        }
+        assertEquals(1000, limiter.getCount());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Exception {
+        final InetAddress addr = InetAddress.getByName("10.0.0.1");
+        final ConnectionLimiter limiter = new ConnectionLimiter(4, 3);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        if (limiter.tryAcquire(addr)) {
+                            if (limiter.getCount(addr) > 3) {
+                                throw new IllegalStateException("Address limit exceeded");
+                            }
+                            limiter.release(addr);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, limiter.getCount());
+        assertEquals(0, limiter.getCount(addr));
+    }
+
+}
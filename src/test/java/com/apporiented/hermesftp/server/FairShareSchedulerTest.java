@@ -0,0 +1,133 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.apporiented.hermesftp.utils.TokenBucket;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class FairShareSchedulerTest {
+
+    @Test
+    public void testWeightedShares() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, 1000000));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 3, 0);
+        FairShareScheduler.QosClass bronze = scheduler.getQosClass("bronze", 1, 0);
+        gold.consume(1);
+        bronze.consume(1);
+        scheduler.rebalance(System.nanoTime());
+        assertEquals(750000, gold.getRate());
+        assertEquals(250000, bronze.getRate());
+
+        /* Weights can be changed at runtime */
+        assertTrue(scheduler.setQosParameters("bronze", 3, 0));
+        assertEquals(500000, gold.getRate());
+        assertEquals(500000, bronze.getRate());
+    }
+
+    @Test
+    public void testRuntimeParametersAreKept() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, 1000000));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 3, 0, 1);
+        assertTrue(scheduler.setQosParameters("gold", 5, 1000));
+
+        /* The next transfer passes the configured parameters again */
+        assertSame(gold, scheduler.getQosClass("gold", 3, 0, 1));
+        assertEquals(5, gold.getWeight());
+        assertEquals(1000, gold.getMinRate());
+
+        /* A reloaded configuration replaces the runtime change */
+        scheduler.getQosClass("gold", 3, 0, 2);
+        assertEquals(3, gold.getWeight());
+        assertEquals(0, gold.getMinRate());
+    }
+
+    @Test
+    public void testIdleClassReleasesShare() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, 1000000));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 3, 0);
+        FairShareScheduler.QosClass bronze = scheduler.getQosClass("bronze", 1, 0);
+        bronze.consume(1);
+        scheduler.rebalance(System.nanoTime());
+        assertEquals(1000000, bronze.getRate());
+
+        /* The idle class is prepared for its share when becoming active */
+        assertEquals(750000, gold.getRate());
+    }
+
+    @Test
+    public void testMinimumGuarantee() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, 1000000));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 1, 0);
+        FairShareScheduler.QosClass bronze = scheduler.getQosClass("bronze", 1, 400000);
+        gold.consume(1);
+        bronze.consume(1);
+        scheduler.rebalance(System.nanoTime());
+        assertEquals(300000, gold.getRate());
+        assertEquals(700000, bronze.getRate());
+    }
+
+    @Test
+    public void testUnusedShareIsRedistributed() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, 1000000));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 1, 0);
+        FairShareScheduler.QosClass bronze = scheduler.getQosClass("bronze", 1, 0);
+        long start = System.nanoTime();
+
+        /* Bronze uses a tenth of its share, gold all of it */
+        gold.consume(30000, start);
+        bronze.consume(2500, start);
+        scheduler.rebalance(start + 50000000L);
+        assertTrue(bronze.getRate() > 90000 && bronze.getRate() < 110000);
+        assertEquals(1000000, gold.getRate() + bronze.getRate());
+
+        /* Bronze exhausts its reduced rate and gets its share back */
+        gold.consume(45000, start + 90000000L);
+        bronze.consume(5000, start + 90000000L);
+        scheduler.rebalance(start + 100000000L);
+        assertEquals(500000, gold.getRate());
+        assertEquals(500000, bronze.getRate());
+    }
+
+    @Test
+    public void testUnlimitedCapacity() {
+        FairShareScheduler scheduler = new FairShareScheduler(new TokenBucket(null, TokenBucket.UNLIMITED));
+        FairShareScheduler.QosClass gold = scheduler.getQosClass("gold", 3, 0);
+        gold.consume(1000);
+        scheduler.rebalance(System.nanoTime());
+        assertEquals(TokenBucket.UNLIMITED, gold.getRate());
+        assertEquals(1000, gold.getTransferredBytes());
+    }
+
+}
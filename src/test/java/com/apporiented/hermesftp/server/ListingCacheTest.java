@@ -0,0 +1,132 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class ListingCacheTest {
+
+    private Path dir1;
+
+    private Path dir2;
+
+    @Before
+    public void setUp() throws IOException {
+        dir1 = Files.createTempDirectory("ListingCacheTest");
+        dir2 = Files.createTempDirectory("ListingCacheTest");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir1.toFile());
+        FileUtils.deleteDirectory(dir2.toFile());
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        ListingCache cache = new ListingCache(1000);
+        assertNull(cache.get(dir1, "LIST:alice"));
+        cache.put(cache.prepare(dir1), "LIST:alice", new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(dir1, "LIST:alice"));
+        assertNull(cache.get(dir1, "LIST:bob"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() {
+        ListingCache cache = new ListingCache(1000);
+        assertEquals(250, cache.getMaxListingSize());
+        cache.put(cache.prepare(dir1), "a", new byte[250]);
+        cache.put(cache.prepare(dir2), "b", new byte[250]);
+        cache.get(dir1, "a");
+        cache.put(cache.prepare(dir1), "c", new byte[250]);
+        cache.put(cache.prepare(dir2), "d", new byte[250]);
+        cache.put(cache.prepare(dir2), "e", new byte[251]);
+        assertNull(cache.get(dir2, "e"));
+        assertEquals(0, cache.getEvictionCount());
+        cache.put(cache.prepare(dir1), "f", new byte[250]);
+        assertEquals(4, cache.getListingCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(dir2, "b"));
+        assertEquals(250, cache.get(dir1, "a").length);
+    }
+
+    @Test
+    public void testInvalidation() throws IOException {
+        ListingCache cache = new ListingCache(1000);
+        ListingCache.Snapshot snapshot = cache.prepare(dir1);
+        cache.invalidate(dir1);
+        cache.put(snapshot, "a", new byte[10]);
+        assertNull(cache.get(dir1, "a"));
+
+        cache.put(cache.prepare(dir1), "a", new byte[10]);
+        File file = new File(dir1.toFile(), "new.txt");
+        file.createNewFile();
+        Files.setLastModifiedTime(dir1, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertNull(cache.get(dir1, "a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testRelease() {
+        ListingCache cache = new ListingCache(1000);
+        ListingCache.Snapshot snapshot = cache.prepare(dir1);
+        assertEquals(1, cache.getDirectoryCount());
+        cache.release(snapshot);
+        cache.release(snapshot);
+        assertEquals(0, cache.getDirectoryCount());
+
+        cache.put(cache.prepare(dir1), "a", new byte[251]);
+        assertEquals(0, cache.getDirectoryCount());
+
+        snapshot = cache.prepare(dir1);
+        cache.put(cache.prepare(dir1), "a", new byte[10]);
+        cache.release(snapshot);
+        assertEquals(1, cache.getDirectoryCount());
+        assertEquals(10, cache.get(dir1, "a").length);
+    }
+
+}
+// CHECKSTYLE:ON
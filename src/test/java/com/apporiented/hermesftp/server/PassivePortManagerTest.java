@@ -0,0 +1,152 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class PassivePortManagerTest {
+
+    private static final InetAddress LOCALHOST = InetAddress.getLoopbackAddress();
+
+    @Test
+    public void testLeaseAndRelease() throws Exception {
+        Integer[] ports = findFreePorts(3);
+        PassivePortManager manager = new PassivePortManager(ports, false);
+        ServerSocketChannel a = manager.openListener(LOCALHOST);
+        ServerSocketChannel b = manager.openListener(LOCALHOST);
+        ServerSocketChannel c = manager.openListener(LOCALHOST);
+        assertEquals(ports[0].intValue(), a.socket().getLocalPort());
+        assertEquals(ports[1].intValue(), b.socket().getLocalPort());
+        assertEquals(ports[2].intValue(), c.socket().getLocalPort());
+        assertEquals(0, manager.getFreePortCount());
+        try {
+            manager.openListener(LOCALHOST);
+            fail();
+        } catch (IOException e) {
+            /* expected */
+        }
+        manager.closeListener(b);
+        assertTrue(!b.isOpen());
+        ServerSocketChannel d = manager.openListener(LOCALHOST);
+        assertEquals(ports[1].intValue(), d.socket().getLocalPort());
+        manager.closeListener(a);
+        manager.closeListener(c);
+        manager.closeListener(d);
+        assertEquals(3, manager.getFreePortCount());
+        manager.close();
+    }
+
+    @Test
+    public void testBusyPortIsSkipped() throws Exception {
+        Integer[] ports = findFreePorts(2);
+        ServerSocket foreign = new ServerSocket(ports[0], 1, LOCALHOST);
+        try {
+            PassivePortManager manager = new PassivePortManager(ports, false);
+            ServerSocketChannel channel = manager.openListener(LOCALHOST);
+            assertEquals(ports[1].intValue(), channel.socket().getLocalPort());
+            manager.closeListener(channel);
+            assertEquals(2, manager.getFreePortCount());
+            manager.close();
+        } finally {
+            foreign.close();
+        }
+    }
+
+    @Test
+    public void testPrebind() throws Exception {
+        Integer[] ports = findFreePorts(2);
+        PassivePortManager manager = new PassivePortManager(ports, true);
+        assertEquals(2, manager.bindListeners());
+
+        /* A connection reaching the idle listener must not be handed to the next lease */
+        Socket stale = new Socket(LOCALHOST, ports[0]);
+        ServerSocketChannel a = manager.openListener(LOCALHOST);
+        assertEquals(ports[0].intValue(), a.socket().getLocalPort());
+        a.socket().setSoTimeout(200);
+        try {
+            a.socket().accept();
+            fail();
+        } catch (SocketTimeoutException e) {
+            /* expected */
+        }
+        stale.close();
+
+        /* The listener stays bound and is reused */
+        manager.closeListener(a);
+        assertTrue(a.isOpen());
+        ServerSocketChannel b = manager.openListener(LOCALHOST);
+        assertNotSame(a, b);
+        manager.closeListener(b);
+        assertSame(a, manager.openListener(LOCALHOST));
+        manager.closeListener(a);
+        manager.close();
+        assertTrue(!a.isOpen());
+        assertTrue(!b.isOpen());
+    }
+
+    @Test
+    public void testSystemChosenPorts() throws Exception {
+        PassivePortManager manager = new PassivePortManager(null, true);
+        assertEquals(0, manager.getPortCount());
+        assertEquals(0, manager.acquirePort());
+        ServerSocketChannel channel = manager.openListener(LOCALHOST);
+        assertTrue(channel.socket().getLocalPort() > 0);
+        manager.closeListener(channel);
+        assertTrue(!channel.isOpen());
+        manager.close();
+    }
+
+    private static Integer[] findFreePorts(int count) throws IOException {
+        ServerSocket[] sockets = new ServerSocket[count];
+        Integer[] ports = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            sockets[i] = new ServerSocket(0, 1, LOCALHOST);
+            ports[i] = sockets[i].getLocalPort();
+        }
+        for (ServerSocket socket : sockets) {
+            socket.close();
+        }
+        return ports;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import com.apporiented.hermesftp.session.FtpSession;
+import com.apporiented.hermesftp.session.impl.FtpSessionImpl;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class SessionRegistryTest {
+
+    @Test
+    public void testRegisterUnregister() throws Exception {
+        InetAddress addr = InetAddress.getByName("10.0.0.1");
+        SessionRegistry registry = new SessionRegistry();
+        FtpSession s1 = new FtpSessionImpl();
+        FtpSession s2 = new FtpSessionImpl();
+        FtpSession s3 = new FtpSessionImpl();
+        registry.register(s1, addr);
+        registry.register(s2, addr);
+        registry.register(s2, addr);
+        assertEquals(2, registry.getCount());
+        assertEquals(2, registry.getSessions().size());
+
+        assertEquals(addr, registry.unregister(s1));
+        assertNull(registry.unregister(s1));
+        assertNull(registry.unregister(s3));
+        assertEquals(1, registry.getCount());
+        assertTrue(registry.getSessions().contains(s2));
+    }
+
+    @Test
+    public void testHighWaterMark() throws Exception {
+        InetAddress addr = InetAddress.getByName("10.0.0.1");
+        SessionRegistry registry = new SessionRegistry();
+        FtpSession s1 = new FtpSessionImpl();
+        FtpSession s2 = new FtpSessionImpl();
+        registry.register(s1, addr);
+        registry.register(s2, addr);
+        registry.unregister(s1);
+        registry.unregister(s2);
+        registry.register(s1, addr);
+        assertEquals(1, registry.getCount());
+        assertEquals(2, registry.getHighWaterMark());
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.server.impl;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.apporiented.hermesftp.SpringUtil;
+import com.apporiented.hermesftp.common.FtpConstants;
+import com.apporiented.hermesftp.server.FtpServer;
+import com.apporiented.hermesftp.utils.ThreadUtils;
+
+// CHECKSTYLE:OFF
+
+/**
+ * Measures how many idle client sessions fit into one GB of resident memory. Each run starts the
+ * test server, opens the given number of control connections and compares the resident set size
+ * before and after. Run it once per mode, each in a fresh JVM:
+ * 
+ * <pre>
+ * java ... SessionDensityBenchmark 2000 false   (platform threads)
+ * java ... SessionDensityBenchmark 2000 true    (virtual threads, Java 21+)
+ * </pre>
+ * 
+ * @author Lars Behnke
+ */
+public final class SessionDensityBenchmark implements FtpConstants {
+
+    private static final int  DEFAULT_SESSIONS = 1000;
+
+    private static final long GB               = 1024L * 1024L * 1024L;
+
+    private SessionDensityBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        boolean virtual = args.length > 1 && Boolean.parseBoolean(args[1]);
+
+        FtpServer server = (FtpServer) SpringUtil.getBean("testServer");
+        server.getOptions().getProperties().setProperty(OPT_VIRTUAL_THREADS, String.valueOf(virtual));
+        server.getOptions().getProperties().setProperty(OPT_MAX_CONNECTIONS, String.valueOf(sessionCount * 2));
+        new Thread(server).start();
+        while (server.getStatus() != SERVER_STATUS_READY) {
+            Thread.sleep(100);
+        }
+
+        int port = server.getOptions().getFtpPort();
+        long rssBefore = residentBytes();
+        List<Socket> sockets = new ArrayList<Socket>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < sessionCount; i++) {
+            Socket socket = new Socket("localhost", port);
+            awaitWelcome(socket);
+            sockets.add(socket);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.gc();
+        Thread.sleep(1000);
+        long rssAfter = residentBytes();
+
+        long perSession = Math.max(1, (rssAfter - rssBefore) / sessionCount);
+        System.out.println("Mode:             " + (virtual && ThreadUtils.isVirtualThreadSupported()
+            ? "virtual threads" : "platform threads"));
+        System.out.println("Sessions:         " + sessionCount + " (opened in " + elapsed + " ms)");
+        System.out.println("Live threads:     " + Thread.activeCount());
+        System.out.println("RSS growth:       " + (rssAfter - rssBefore) / 1024 + " KB");
+        System.out.println("Bytes/session:    " + perSession);
+        System.out.println("Sessions per GB:  " + GB / perSession);
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        server.abort();
+        System.exit(0);
+    }
+
+    private static void awaitWelcome(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        String line;
+        do {
+            line = reader.readLine();
+        } while (line != null && !line.startsWith("220 "));
+    }
+
+    /**
+     * Reads the resident set size from the proc file system, falling back to the used heap.
+     */
+    private static long residentBytes() throws IOException {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024L;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // not available on this platform
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+}
@@ -129,6 +129,74 @@ public class BlockModeStreamTest {
         }
     }
 
+    /**
+     * Testcase : consecutive files on a single connection.
+     */
+    @Test
+    public void testConsecutiveFiles() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            BlockModeOutputStream bmos = new BlockModeOutputStream(baos, 16);
+            bmos.write(new byte[] { 1, (byte) 0xFF, 3 });
+            bmos.close();
+            bmos = new BlockModeOutputStream(baos, 16);
+            bmos.write(7);
+            bmos.close();
+
+            byte[] eor = new byte[0];
+            ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+            BlockModeInputStream first = new BlockModeInputStream(bais, eor, null);
+            byte[] buf = new byte[16];
+            assertEquals(3, first.read(buf, 0, buf.length));
+            assertEquals(1, buf[0]);
+            assertEquals((byte) 0xFF, buf[1]);
+            assertEquals(3, buf[2]);
+            assertEquals(-1, first.read(buf, 0, buf.length));
+            first.close();
+
+            BlockModeInputStream second = new BlockModeInputStream(bais, eor, null);
+            assertEquals(7, second.read());
+            assertEquals(-1, second.read());
+            assertEquals(0, bais.available());
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Testcase : end of file marked before the stream is closed.
+     */
+    @Test
+    public void testFinalizeBeforeClose() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            BlockModeOutputStream bmos = new BlockModeOutputStream(baos, 16);
+            bmos.write(new byte[] { 1, 2, 3 });
+            bmos.finalizeRecord(true);
+            int len = baos.size();
+            bmos.close();
+            assertEquals(len, baos.size());
+
+            BlockModeInputStream bmis = new BlockModeInputStream(new ByteArrayInputStream(baos
+                .toByteArray()), new byte[0], null);
+            byte[] buf = new byte[16];
+            assertEquals(3, bmis.read(buf, 0, buf.length));
+            assertEquals(-1, bmis.read(buf, 0, buf.length));
+
+            baos = new ByteArrayOutputStream();
+            bmos = new BlockModeOutputStream(baos, 16);
+            bmos.writeRecord(new byte[] { 1, 2, 3 }, false);
+            bmos.finalizeRecord(true);
+            byte[] data = baos.toByteArray();
+            assertEquals(BlockModeConstants.DESC_CODE_EOF, data[data.length - 3]);
+            assertEquals(0, data[data.length - 1]);
+            bmos.close();
+            assertEquals(data.length, baos.size());
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
     private byte[] createStreamData() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         baos.write(2);
@@ -0,0 +1,98 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool(4);
+        assertEquals(BufferPool.MIN_SIZE, pool.acquire(1).length);
+        assertEquals(8 * 1024, pool.acquire(5000).length);
+        assertEquals(64 * 1024, pool.acquire(64 * 1024).length);
+        assertEquals(BufferPool.MAX_SIZE, pool.acquire(10 * 1024 * 1024).length);
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(1);
+        byte[] b1 = pool.acquire(16 * 1024);
+        byte[] b2 = pool.acquire(16 * 1024);
+        assertNotSame(b1, b2);
+        pool.release(b1);
+        pool.release(b2);
+        assertSame(b1, pool.acquire(16 * 1024));
+        assertNotSame(b2, pool.acquire(16 * 1024));
+
+        /* Foreign sizes are not pooled */
+        pool.release(new byte[1000]);
+        assertEquals(BufferPool.MIN_SIZE, pool.acquire(1000).length);
+    }
+
+    @Test
+    public void testDirectReuse() {
+        BufferPool pool = new BufferPool(2);
+        ByteBuffer b1 = pool.acquireDirect(100);
+        assertTrue(b1.isDirect());
+        b1.put((byte) 1);
+        pool.release(b1);
+        ByteBuffer b2 = pool.acquireDirect(100);
+        assertSame(b1, b2);
+        assertEquals(0, b2.position());
+        assertEquals(BufferPool.MIN_SIZE, b2.limit());
+    }
+
+    @Test
+    public void testSuggestSize() {
+        /* Small files get small buffers */
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.suggestSize(100, 0, 1024));
+        assertEquals(10000, BufferPool.suggestSize(10000, 0, 1024));
+
+        /* Unknown rate: medium buffer */
+        assertEquals(BufferPool.MAX_SIZE / 4, BufferPool.suggestSize(-1, 0, 1024));
+
+        /* Fast clients get large buffers, slow clients small ones */
+        assertEquals(BufferPool.MAX_SIZE, BufferPool.suggestSize(-1, 100 * 1024, 1024));
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.suggestSize(-1, 100, 1024));
+
+        /* Configured size is the lower bound */
+        assertEquals(32 * 1024, BufferPool.suggestSize(-1, 100, 32 * 1024));
+    }
+
+}
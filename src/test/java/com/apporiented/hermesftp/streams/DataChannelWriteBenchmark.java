@@ -0,0 +1,157 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// CHECKSTYLE:OFF
+
+/**
+ * Compares the number of socket writes (one system call each) and the estimated number of TCP
+ * segments per MB of payload for the former flush-per-chunk data channel output and the
+ * coalescing <code>DataChannelOutputStream</code>. The segment estimate assumes that every write
+ * reaching the socket is sent immediately in segments of at most one MSS, which is what happens
+ * with Nagle disabled or with a flush after each write.
+ * 
+ * <pre>
+ * java ... DataChannelWriteBenchmark [MB] [chunk size]
+ * </pre>
+ * 
+ * @author Lars Behnke
+ */
+public final class DataChannelWriteBenchmark implements BlockModeConstants {
+
+    private static final int MB       = 1024 * 1024;
+
+    private static final int MSS      = 1448;
+
+    private static final int BLOCK    = 1024;
+
+    private DataChannelWriteBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        byte[] chunk = new byte[chunkSize];
+        long total = (long) megabytes * MB;
+
+        System.out.println("Payload: " + megabytes + " MB, chunk size " + chunkSize);
+        System.out.println(String.format("%-24s %14s %14s %14s", "scenario", "writes/MB", "segments/MB",
+            "bytes/write"));
+
+        /* Stream mode, before: every chunk is flushed to the socket */
+        CountingOutputStream sock = new CountingOutputStream();
+        for (long n = 0; n < total; n += chunkSize) {
+            sock.write(chunk, 0, chunkSize);
+            sock.flush();
+        }
+        report("stream, before", sock, megabytes);
+
+        /* Stream mode, after */
+        sock = new CountingOutputStream();
+        OutputStream os = new DataChannelOutputStream(sock);
+        for (long n = 0; n < total; n += chunkSize) {
+            os.write(chunk, 0, chunkSize);
+        }
+        os.close();
+        report("stream, after", sock, megabytes);
+
+        /* Block mode, before: descriptor, two length bytes and payload as separate writes */
+        sock = new CountingOutputStream();
+        for (long n = 0; n < total; n += chunkSize) {
+            for (int off = 0; off < chunkSize; off += BLOCK) {
+                int len = Math.min(BLOCK, chunkSize - off);
+                sock.write(0);
+                sock.write((len >>> 8) & 0xFF);
+                sock.write(len & 0xFF);
+                sock.write(chunk, off, len);
+            }
+            sock.flush();
+        }
+        report("block, before", sock, megabytes);
+
+        /* Block mode, after */
+        sock = new CountingOutputStream();
+        os = new BlockModeOutputStream(new DataChannelOutputStream(sock), BLOCK);
+        for (long n = 0; n < total; n += chunkSize) {
+            os.write(chunk, 0, chunkSize);
+        }
+        os.close();
+        report("block, after", sock, megabytes);
+
+        /* Record mode (80 byte records), before: one flush per record */
+        byte[] record = new byte[80];
+        sock = new CountingOutputStream();
+        RecordOutputStream ros = new RecordOutputStream(sock);
+        for (long n = 0; n < total; n += record.length) {
+            ros.writeRecord(record, false);
+            ros.flush();
+        }
+        ros.close();
+        report("record, before", sock, megabytes);
+
+        /* Record mode, after */
+        sock = new CountingOutputStream();
+        ros = new RecordOutputStream(new DataChannelOutputStream(sock));
+        for (long n = 0; n < total; n += record.length) {
+            ros.writeRecord(record, false);
+        }
+        ros.close();
+        report("record, after", sock, megabytes);
+    }
+
+    private static void report(String name, CountingOutputStream sock, int megabytes) {
+        System.out.println(String.format("%-24s %14.1f %14.1f %14d", name, (double) sock.writes / megabytes,
+            (double) sock.segments / megabytes, sock.bytes / Math.max(1, sock.writes)));
+    }
+
+    /**
+     * Stands in for the socket: each call is one system call.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long writes;
+
+        private long segments;
+
+        private long bytes;
+
+        public void write(int b) {
+            count(1);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count(len);
+        }
+
+        private void count(int len) {
+            writes++;
+            bytes += len;
+            segments += (len + MSS - 1) / MSS;
+        }
+    }
+}
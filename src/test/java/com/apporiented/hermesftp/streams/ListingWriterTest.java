@@ -0,0 +1,103 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.streams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * Testcase for the listing writer.
+ * 
+ * @author Lars Behnke
+ */
+public class ListingWriterTest {
+
+    @Test
+    public void testBufferedNames() throws IOException {
+        String sep = System.getProperty("line.separator");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ListingWriter out = new ListingWriter(baos, "UTF-8", 64);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String name = "füle-" + i + (i % 7 == 0 ? "-with-a-rather-long-name-exceeding-the-line-buffer-"
+                    + "of-one-hundred-twenty-eight-characters-to-force-a-larger-char-buffer" : "");
+            out.writeName(name);
+            expected.append(name).append(sep);
+        }
+        out.close();
+        assertEquals(expected.toString(), new String(baos.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testUnmappableName() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ListingWriter out = new ListingWriter(baos, "ISO-8859-1", 1024);
+        out.writeName("a€b");
+        out.flush();
+        assertEquals("a?b" + System.getProperty("line.separator"), new String(baos.toByteArray(), "ISO-8859-1"));
+    }
+
+    @Test
+    public void testFactsEndWithCrlf() throws IOException {
+        Path file = Files.createTempFile("ListingWriterTest", ".txt");
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ListingWriter out = new ListingWriter(baos, "UTF-8", 1024);
+            out.writeFacts("a.txt", new String[] {"type", "size"},
+                Files.readAttributes(file, BasicFileAttributes.class), true, true);
+            out.close();
+            assertEquals("type=file;size=0; a.txt\r\n", new String(baos.toByteArray(), "UTF-8"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFactsWithNonAsciiName() throws IOException {
+        Path file = Files.createTempFile("ListingWriterTest", ".txt");
+        try {
+            String name = "r\u00e9sum\u00e9-\u65e5\u672c.txt";
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ListingWriter out = new ListingWriter(baos, "UTF-8", 1024);
+            out.writeFacts(name, new String[] {"type"}, Files.readAttributes(file, BasicFileAttributes.class),
+                true, true);
+            out.close();
+            assertEquals("type=file; " + name + "\r\n", new String(baos.toByteArray(), "UTF-8"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
+// CHECKSTYLE:ON
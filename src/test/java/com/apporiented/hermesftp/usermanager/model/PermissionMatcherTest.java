@@ -0,0 +1,93 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.usermanager.model;
+
+import static org.junit.Assert.assertEquals;
+
+import com.apporiented.hermesftp.common.FtpConstants;
+
+import org.junit.Test;
+import org.springframework.util.AntPathMatcher;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class PermissionMatcherTest implements FtpConstants {
+
+    private static final String[] PATTERNS = {"/a", "/a/**", "/a/*", "/a/*.txt", "/a/b?", "/a/**/c",
+            "/**/c", "/**", "**", "**/c", "c:/test/**", "/a/**/b/**", "/a/x*y/**", "/a.b/(c)/**"};
+
+    private static final String[] PATHS    = {"/a", "/a/b", "/a/b/c", "/a/f.txt", "/a/b/f.txt", "/a/bc",
+            "/ab", "/c", "/x/y/c", "c", "x/c", "c:/test", "c:/test/user", "/a/b/b", "/a/xzy/q", "/a/xy",
+            "/a.b/(c)/d", "/aXb/c/d", ""};
+
+    @Test
+    public void testSameMatchesAsAntPathMatcher() {
+        AntPathMatcher antMatcher = new AntPathMatcher();
+        for (String pattern : PATTERNS) {
+            java.util.regex.Pattern regex = java.util.regex.Pattern.compile(PermissionMatcher.toRegex(pattern));
+            for (String path : PATHS) {
+                assertEquals(pattern + " " + path, antMatcher.match(pattern, path), regex.matcher(path).matches());
+            }
+        }
+    }
+
+    @Test
+    public void testPermissions() throws Exception {
+        GroupDataList groupList = new GroupDataList();
+        GroupData users = new GroupData();
+        users.getPermissions().add(permission("${ftproot}/${user}/**", PRIV_READ_WRITE));
+        users.getPermissions().add(permission("${ftproot}", PRIV_READ));
+        groupList.addGroup(users);
+        GroupData guests = new GroupData();
+        guests.getPermissions().add(permission("${ftproot}/guest/**", PRIV_READ));
+        guests.getPermissions().add(permission("${ftproot}/guest/upload", PRIV_WRITE));
+        groupList.addGroup(guests);
+
+        String root = "c:/test";
+        String user = "user";
+        PermissionMatcher matcher = PermissionMatcher.compile(groupList, root, user);
+        String[] paths = {"c:\\test", "c:\\test\\user", "c:\\test\\user\\dir1\\dir2", "c:\\test\\admin",
+                "c:\\test\\guest", "c:\\test\\guest\\upload", "c:\\test\\user\\..\\admin", "c:\\test\\users",
+                "c:\\test\\user\\", "c:/test/user/a"};
+        for (String path : paths) {
+            assertEquals(path, groupList.getPermission(path, user, root), matcher.getPermission(path));
+        }
+        assertEquals(PRIV_READ_WRITE, matcher.getPermission("c:\\test\\user\\dir1"));
+        assertEquals(PRIV_NONE, matcher.getPermission("c:\\test\\admin"));
+        assertEquals(PRIV_NONE, matcher.getPermission("..\\.."));
+    }
+
+    private PermissionData permission(String template, int permission) {
+        PermissionData data = new PermissionData();
+        data.setTemplate(template);
+        data.setPermission(permission);
+        return data;
+    }
+
+}
+// CHECKSTYLE:ON
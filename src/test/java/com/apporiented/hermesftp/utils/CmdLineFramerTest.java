@@ -0,0 +1,76 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class CmdLineFramerTest {
+
+    @Test
+    public void testSplitAcrossReads() throws Exception {
+        CmdLineFramer framer = new CmdLineFramer(500);
+        assertNull(framer.nextLine(ByteBuffer.wrap("NO".getBytes("US-ASCII"))));
+        ByteBuffer buf = ByteBuffer.wrap("OP\r\nPWD\r\nCWD /p".getBytes("US-ASCII"));
+        assertEquals("NOOP", framer.nextLine(buf));
+        assertEquals("PWD", framer.nextLine(buf));
+        assertNull(framer.nextLine(buf));
+        assertEquals("CWD /pub", framer.nextLine(ByteBuffer.wrap("ub\n".getBytes("US-ASCII"))));
+    }
+
+    @Test
+    public void testTruncation() throws Exception {
+        CmdLineFramer framer = new CmdLineFramer(8);
+        ByteBuffer buf = ByteBuffer.wrap("STOR abcdefghijk\r\nNOOP\r\n".getBytes("US-ASCII"));
+        assertEquals("STOR abc", framer.nextLine(buf));
+        assertTrue(framer.isTruncated());
+        assertEquals("NOOP", framer.nextLine(buf));
+        assertFalse(framer.isTruncated());
+        buf = ByteBuffer.wrap("12345678\r\n".getBytes("US-ASCII"));
+        assertEquals("12345678", framer.nextLine(buf));
+        assertFalse(framer.isTruncated());
+    }
+
+    @Test
+    public void testDecoding() throws Exception {
+        CmdLineFramer framer = new CmdLineFramer(500);
+        String path = "RETR /däten/日本.txt";
+        assertEquals(path, framer.nextLine(ByteBuffer.wrap((path + "\r\n").getBytes("UTF-8"))));
+        path = "RETR /däten";
+        assertEquals(path, framer.nextLine(ByteBuffer.wrap((path + "\r\n").getBytes("ISO-8859-1"))));
+    }
+
+}
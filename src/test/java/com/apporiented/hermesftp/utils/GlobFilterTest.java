@@ -0,0 +1,82 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class GlobFilterTest {
+
+    @Test
+    public void testIsPattern() {
+        assertTrue(GlobFilter.isPattern("*.csv"));
+        assertTrue(GlobFilter.isPattern("file?.txt"));
+        assertTrue(GlobFilter.isPattern("[abc].txt"));
+        assertTrue(GlobFilter.isPattern("report.{csv,txt}"));
+        assertFalse(GlobFilter.isPattern("file.txt"));
+        assertFalse(GlobFilter.isPattern(""));
+    }
+
+    @Test
+    public void testAccept() throws Exception {
+        GlobFilter filter = new GlobFilter("*.csv");
+        assertTrue(filter.accept(Paths.get("/data/report.csv")));
+        assertTrue(filter.accept(Paths.get("/data/.csv")));
+        assertFalse(filter.accept(Paths.get("/data/report.csv.gz")));
+        assertFalse(filter.accept(Paths.get("/csv/report.txt")));
+
+        filter = new GlobFilter("file-0?[0-4].dat");
+        assertTrue(filter.accept(Paths.get("/data/file-012.dat")));
+        assertFalse(filter.accept(Paths.get("/data/file-015.dat")));
+        assertFalse(filter.accept(Paths.get("/data/file-0012.dat")));
+
+        filter = new GlobFilter("[!a-c]*.{csv,txt}");
+        assertTrue(filter.accept(Paths.get("/data/d.txt")));
+        assertFalse(filter.accept(Paths.get("/data/a.txt")));
+        assertFalse(filter.accept(Paths.get("/data/d.dat")));
+    }
+
+    @Test
+    public void testInvalidPattern() {
+        try {
+            new GlobFilter("[a-");
+            fail("Invalid pattern accepted.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
+// CHECKSTYLE:ON
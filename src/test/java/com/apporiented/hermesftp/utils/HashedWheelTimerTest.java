@@ -0,0 +1,145 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer("test-timer", 10, 64);
+        timer.start();
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong fired = new AtomicLong();
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                fired.set(System.nanoTime());
+                latch.countDown();
+            }
+        }, 100);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(fired.get() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.reset(100));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }
+        }, 50);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        Thread.sleep(200);
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void testResetPostpones() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 100);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            assertTrue(timeout.reset(100));
+        }
+        assertEquals(1, latch.getCount());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    @Test
+    public void testResetAdvances() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 60000);
+        long start = System.nanoTime();
+        assertTrue(timeout.reset(50));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testDeadlinesBeyondOneRound() throws Exception {
+        final int count = 200;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final long delay = 5 + i * 7;
+            final long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            timer.schedule(new Runnable() {
+                public void run() {
+                    if (System.nanoTime() < due) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }, delay);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+    }
+
+}
@@ -5,6 +5,17 @@ import junit.framework.TestCase;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.commons.lang.StringUtils;
 
 public class IOUtilsTest extends TestCase {
 
@@ -21,4 +32,56 @@ public class IOUtilsTest extends TestCase {
         }
         file.delete();
     }
-}
\ No newline at end of file
+
+    public void testFormatUnixFtpFileInfo() throws Exception {
+        File file = File.createTempFile("IOUtilsTest", ".txt");
+        OutputStream os = new RafOutputStream(file);
+        os.write(new byte[1234]);
+        os.close();
+        assertEquals(expectedFileInfo(file, true, false), IOUtils.formatUnixFtpFileInfo(file, true, false));
+        File dir = file.getParentFile();
+        assertEquals(expectedFileInfo(dir, false, true), IOUtils.formatUnixFtpFileInfo(dir, false, true));
+        file.delete();
+    }
+
+    public void testAppendMlsxFacts() throws Exception {
+        File file = File.createTempFile("IOUtilsTest", ".txt");
+        OutputStream os = new RafOutputStream(file);
+        os.write(new byte[1234]);
+        os.close();
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(1396101845000L));
+        GregorianCalendar utc = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.US);
+        String[] facts = {"type", "size", "modify", "perm"};
+
+        BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        StringBuilder sb = new StringBuilder();
+        IOUtils.appendMlsxFacts(sb, "a b.txt", facts, attrs, true, false, utc);
+        assertEquals("type=file;size=1234;modify=20140329140405;perm=r; a b.txt", sb.toString());
+
+        sb.setLength(0);
+        IOUtils.appendMlsxFacts(sb, "a b.txt", new String[] {"perm", "type"}, attrs, true, true, utc);
+        assertEquals("perm=adfwr;type=file; a b.txt", sb.toString());
+
+        attrs = Files.readAttributes(file.getParentFile().toPath(), BasicFileAttributes.class);
+        sb.setLength(0);
+        IOUtils.appendMlsxFacts(sb, "tmp", new String[] {"type", "size", "perm"}, attrs, true, true, utc);
+        assertEquals("type=dir;perm=cdfmpel; tmp", sb.toString());
+
+        sb.setLength(0);
+        IOUtils.appendMlsxFacts(sb, "tmp", new String[] {"unique"}, attrs, false, false, utc);
+        if (attrs.fileKey() != null) {
+            assertTrue(sb.toString(), sb.toString().matches("unique=[0-9A-Za-z-]+; tmp"));
+        }
+        file.delete();
+    }
+
+    private String expectedFileInfo(File file, boolean read, boolean write) {
+        String r = read ? "r" : "-";
+        String w = write ? "w" : "-";
+        String flags = file.isDirectory() ? MessageFormat.format("d{0}{1}x{0}-x{0}-x", r, w) : MessageFormat
+            .format("-{0}{1}-{0}--{0}--", r, w);
+        long size = file.isDirectory() ? 0 : file.length();
+        String date = new SimpleDateFormat("MMM dd HH:mm", Locale.US).format(new Date(file.lastModified()));
+        return flags + " 1 ftp ftp " + StringUtils.leftPad("" + size, 11) + " " + date + " " + file.getName();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.MessageFormat;
+import java.util.Enumeration;
+import java.util.ResourceBundle;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class ReplyTemplateTest {
+
+    @Test
+    public void testResourceBundle() {
+        ResourceBundle bundle = ResourceBundle.getBundle("hermesftp-resources");
+        ReplyCatalog catalog = ReplyCatalog.getInstance(bundle);
+        Object[] args = new Object[] {"a", "b", "c", "d", "e"};
+        for (Enumeration<String> keys = bundle.getKeys(); keys.hasMoreElements();) {
+            String key = keys.nextElement();
+            String pattern = bundle.getString(key);
+            if (pattern.matches("(?s).*\\{\\d+,.*")) {
+                continue;
+            }
+            assertEquals(key, MessageFormat.format(pattern, args), catalog.format(key, args));
+        }
+    }
+
+    @Test
+    public void testQuoting() {
+        String[] patterns = new String[] {"550 Can''t open {0}.", "200 '{0}' is {1}", "'", "''{0}''",
+                "227 Entering passive mode ({0})", "{1}{0}{1}", "no slots"};
+        for (String pattern : patterns) {
+            assertEquals(pattern, MessageFormat.format(pattern, "x", "y"),
+                ReplyTemplate.compile(pattern).format("x", "y"));
+        }
+    }
+
+    @Test
+    public void testMissingArgument() {
+        String pattern = "213 {0} {1}";
+        assertEquals(MessageFormat.format(pattern, "a"), ReplyTemplate.compile(pattern).format("a"));
+    }
+
+    @Test
+    public void testFallback() {
+        String pattern = "226 Transferred {0} bytes in {1,number,#.##} seconds";
+        Object[] args = new Object[] {Long.valueOf(123456), Double.valueOf(1.5)};
+        assertEquals(MessageFormat.format(pattern, args), ReplyTemplate.compile(pattern).format(args));
+        pattern = "213 {0}";
+        args = new Object[] {Integer.valueOf(1000000)};
+        assertEquals(MessageFormat.format(pattern, args), ReplyTemplate.compile(pattern).format(args));
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class SpscQueueTest {
+
+    @Test
+    public void testOrder() throws Exception {
+        SpscQueue<String> queue = new SpscQueue<String>();
+        assertNull(queue.poll());
+        queue.offer("NOOP");
+        queue.offer("bogus line");
+        queue.offer("PWD");
+        assertEquals("NOOP", queue.poll());
+        assertEquals("bogus line", queue.take(0));
+        assertEquals("PWD", queue.take(TimeUnit.SECONDS.toNanos(1)));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        SpscQueue<String> queue = new SpscQueue<String>();
+        long start = System.nanoTime();
+        assertNull(queue.take(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testCloseWakesConsumer() throws Exception {
+        final SpscQueue<String> queue = new SpscQueue<String>();
+        queue.offer("QUIT");
+        Thread closer = new Thread() {
+
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.close();
+            }
+        };
+        closer.start();
+        assertEquals("QUIT", queue.take(TimeUnit.SECONDS.toNanos(10)));
+        long start = System.nanoTime();
+        assertNull(queue.take(TimeUnit.SECONDS.toNanos(10)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(queue.isClosed());
+        closer.join();
+    }
+
+    @Test
+    public void testHandoff() throws Exception {
+        final int count = 200000;
+        final SpscQueue<Integer> queue = new SpscQueue<Integer>();
+        Thread producer = new Thread() {
+
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    queue.offer(i);
+                    if (i % 1000 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            assertEquals(Integer.valueOf(i), queue.take(TimeUnit.SECONDS.toNanos(10)));
+        }
+        assertNull(queue.poll());
+        producer.join();
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class TlsSessionTrackerTest {
+
+    @Test
+    public void testResumptionRatio() {
+        TlsSessionTracker tracker = new TlsSessionTracker(false);
+        assertEquals(0.0, tracker.getResumptionRatio(), 0.0);
+        tracker.recordDataHandshake(true);
+        tracker.recordDataHandshake(true);
+        tracker.recordDataHandshake(true);
+        tracker.recordDataHandshake(false);
+        assertEquals(4, tracker.getDataHandshakeCount());
+        assertEquals(3, tracker.getResumedCount());
+        assertEquals(0, tracker.getRejectedCount());
+        assertEquals(0.75, tracker.getResumptionRatio(), 0.0);
+    }
+
+    @Test
+    public void testPlainControlConnection() {
+        assertFalse(TlsSessionTracker.isResumed(null, null, System.currentTimeMillis()));
+    }
+
+}
+// CHECKSTYLE:ON
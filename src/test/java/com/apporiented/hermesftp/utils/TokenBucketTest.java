@@ -0,0 +1,96 @@
+/*
+ * ------------------------------------------------------------------------------
+ * Hermes FTP Server
+ * Copyright (c) 2005-2014 Lars Behnke
+ * ------------------------------------------------------------------------------
+ * 
+ * This file is part of Hermes FTP Server.
+ * 
+ * Hermes FTP Server is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hermes FTP Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hermes FTP Server; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ * ------------------------------------------------------------------------------
+ */
+
+package com.apporiented.hermesftp.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// CHECKSTYLE:OFF
+
+/**
+ * @author Lars Behnke
+ */
+public class TokenBucketTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testUnlimited() {
+        TokenBucket bucket = new TokenBucket(null, TokenBucket.UNLIMITED);
+        assertEquals(0, bucket.consume(Integer.MAX_VALUE, 0));
+        assertEquals(TokenBucket.UNLIMITED, bucket.getEffectiveRate());
+    }
+
+    @Test
+    public void testBlocked() {
+        TokenBucket bucket = new TokenBucket(null, 0);
+        assertEquals(Long.MAX_VALUE, bucket.consume(1, 0));
+    }
+
+    @Test
+    public void testPacing() {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(null, 1000000);
+
+        /* 10 KB at 1 MB/s: 10 ms */
+        long delay = bucket.consume(10000, now);
+        assertTrue(Math.abs(delay - 10 * MS) < MS);
+
+        /* Debt is paid back after the delay */
+        assertEquals(0, bucket.consume(0, now + delay));
+
+        /* Idle time accumulates at most 10 ms worth of tokens */
+        assertEquals(0, bucket.consume(10000, now + delay + 1000 * MS));
+        assertTrue(bucket.consume(10000, now + delay + 1000 * MS) > 9 * MS);
+    }
+
+    @Test
+    public void testSharedParent() {
+        long now = System.nanoTime();
+        TokenBucket user = new TokenBucket(null, 1000000);
+        TokenBucket session1 = new TokenBucket(user, TokenBucket.UNLIMITED);
+        TokenBucket session2 = new TokenBucket(user, 100000000);
+        assertEquals(1000000, session2.getEffectiveRate());
+
+        /* Two sessions share the user's rate: the second waits for both */
+        long delay1 = session1.consume(10000, now);
+        long delay2 = session2.consume(10000, now);
+        assertTrue(Math.abs(delay1 - 10 * MS) < MS);
+        assertTrue(Math.abs(delay2 - 20 * MS) < MS);
+    }
+
+    @Test
+    public void testChildLimits() {
+        long now = System.nanoTime();
+        TokenBucket server = new TokenBucket(null, 10000000);
+        TokenBucket session = new TokenBucket(server, 1000000);
+        long delay = session.consume(10000, now);
+        assertTrue(Math.abs(delay - 10 * MS) < MS);
+        assertEquals(1000000, session.getEffectiveRate());
+    }
+
+}